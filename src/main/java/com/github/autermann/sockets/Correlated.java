@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets;
+
+import com.google.common.base.Objects;
+
+/**
+ * A message tagged with a correlation id. Multiplexing clients send requests
+ * with unique ids and match responses by their id, so that a server may
+ * answer the requests of a connection in any order.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <T> the message type
+ * @see com.github.autermann.sockets.client.SocketClientBuilder#buildMultiplexed
+ * @see com.github.autermann.sockets.server.SocketServerBuilder#withOutOfOrderResponses()
+ */
+public final class Correlated<T> {
+    private final long id;
+    private final T message;
+
+    private Correlated(long id, T message) {
+        this.id = id;
+        this.message = message;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public T getMessage() {
+        return message;
+    }
+
+    /**
+     * @param <U>     the response type
+     * @param message the response
+     *
+     * @return the response tagged with the id of this message
+     */
+    public <U> Correlated<U> reply(U message) {
+        return new Correlated<U>(id, message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id, message);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof Correlated) {
+            Correlated<?> other = (Correlated<?>) obj;
+            return id == other.id && Objects.equal(message, other.message);
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .add("message", message)
+                .toString();
+    }
+
+    public static <T> Correlated<T> of(long id, T message) {
+        return new Correlated<T>(id, message);
+    }
+}
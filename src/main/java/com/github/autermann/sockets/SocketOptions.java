@@ -0,0 +1,350 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import com.google.common.base.Objects;
+
+/**
+ * A profile of socket options that is applied to listening, accepted and
+ * connected sockets by the socket factories of servers and clients. Options
+ * that are not set keep the defaults of the operating system.
+ * <p/>
+ * The receive buffer size is applied to listening sockets before they are
+ * bound, so that accepted sockets can negotiate a matching TCP window scale.
+ * For the same reason, the options are applied to client sockets before they
+ * are connected.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class SocketOptions {
+    private static final SocketOptions DEFAULTS = builder().build();
+    private static final SocketOptions LOW_LATENCY = builder()
+            .withTcpNoDelay(true)
+            .withKeepAlive(true)
+            .withBacklog(1024)
+            .build();
+    private static final SocketOptions BULK_THROUGHPUT = builder()
+            .withTcpNoDelay(false)
+            .withKeepAlive(true)
+            .withReceiveBufferSize(1024 * 1024)
+            .withSendBufferSize(1024 * 1024)
+            .withBacklog(1024)
+            .build();
+    private final Boolean tcpNoDelay;
+    private final Boolean keepAlive;
+    private final Boolean reuseAddress;
+    private final int receiveBufferSize;
+    private final int sendBufferSize;
+    private final Integer linger;
+    private final int backlog;
+    private final InetAddress bindAddress;
+
+    private SocketOptions(Builder builder) {
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.keepAlive = builder.keepAlive;
+        this.reuseAddress = builder.reuseAddress;
+        this.receiveBufferSize = builder.receiveBufferSize;
+        this.sendBufferSize = builder.sendBufferSize;
+        this.linger = builder.linger;
+        this.backlog = builder.backlog;
+        this.bindAddress = builder.bindAddress;
+    }
+
+    /**
+     * @return the options that leave every socket option at the default of
+     *         the operating system
+     */
+    public static SocketOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Options for request/response traffic: disables Nagle's algorithm, so
+     * that small responses are not delayed until the previous segment is
+     * acknowledged, enables keep-alive probes and raises the accept backlog.
+     *
+     * @return the low latency profile
+     */
+    public static SocketOptions lowLatency() {
+        return LOW_LATENCY;
+    }
+
+    /**
+     * Options for large transfers: keeps Nagle's algorithm enabled, uses
+     * 1 MiB send and receive buffers, enables keep-alive probes and raises
+     * the accept backlog.
+     *
+     * @return the bulk throughput profile
+     */
+    public static SocketOptions bulkThroughput() {
+        return BULK_THROUGHPUT;
+    }
+
+    /**
+     * @return {@code TCP_NODELAY}, or {@code null} if not set
+     */
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @return {@code SO_KEEPALIVE}, or {@code null} if not set
+     */
+    public Boolean getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @return {@code SO_REUSEADDR} of listening sockets, or {@code null} if
+     *         not set
+     */
+    public Boolean getReuseAddress() {
+        return reuseAddress;
+    }
+
+    /**
+     * @return {@code SO_RCVBUF} in bytes, or {@code -1} if not set
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * @return {@code SO_SNDBUF} in bytes, or {@code -1} if not set
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * @return {@code SO_LINGER} in seconds, {@code -1} if lingering is
+     *         disabled, or {@code null} if not set
+     */
+    public Integer getLinger() {
+        return linger;
+    }
+
+    /**
+     * @return the accept backlog of listening sockets, or {@code 0} for the
+     *         default of the JVM
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * @return the local address to bind to, or {@code null} for the wildcard
+     *         address
+     */
+    public InetAddress getBindAddress() {
+        return bindAddress;
+    }
+
+    /**
+     * Applies the options to an accepted socket or to a client socket that
+     * is not yet connected.
+     *
+     * @param socket the socket
+     *
+     * @throws SocketException if an option can not be set
+     */
+    public void configure(Socket socket) throws SocketException {
+        if (tcpNoDelay != null) {
+            socket.setTcpNoDelay(tcpNoDelay);
+        }
+        if (keepAlive != null) {
+            socket.setKeepAlive(keepAlive);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+        if (linger != null) {
+            socket.setSoLinger(linger >= 0, Math.max(0, linger));
+        }
+    }
+
+    /**
+     * Applies the options to an unbound listening socket and binds it.
+     *
+     * @param socket the unbound socket
+     * @param port   the port
+     *
+     * @throws IOException if an option can not be set or the socket can not
+     *                     be bound
+     */
+    public void bind(ServerSocket socket, int port) throws IOException {
+        if (reuseAddress != null) {
+            socket.setReuseAddress(reuseAddress);
+        }
+        if (receiveBufferSize > 0) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        socket.bind(new InetSocketAddress(bindAddress, port), backlog);
+    }
+
+    /**
+     * Applies the options to an unconnected client socket and connects it.
+     * The socket is closed if this fails.
+     *
+     * @param <T>     the socket type
+     * @param socket  the unconnected socket
+     * @param address the address to connect to
+     * @param timeout the connection timeout in milliseconds
+     *
+     * @return the socket
+     *
+     * @throws IOException if an option can not be set or the socket can not
+     *                     be connected
+     */
+    public <T extends Socket> T connect(T socket, InetSocketAddress address,
+                                        int timeout) throws IOException {
+        try {
+            configure(socket);
+            if (bindAddress != null) {
+                socket.bind(new InetSocketAddress(bindAddress, 0));
+            }
+            socket.connect(address, timeout);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).omitNullValues()
+                .add("tcpNoDelay", tcpNoDelay)
+                .add("keepAlive", keepAlive)
+                .add("reuseAddress", reuseAddress)
+                .add("receiveBufferSize",
+                     receiveBufferSize > 0 ? receiveBufferSize : null)
+                .add("sendBufferSize",
+                     sendBufferSize > 0 ? sendBufferSize : null)
+                .add("linger", linger)
+                .add("backlog", backlog > 0 ? backlog : null)
+                .add("bindAddress", bindAddress)
+                .toString();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param options the options to start with
+     *
+     * @return a builder initialized with the specified options
+     */
+    public static Builder builder(SocketOptions options) {
+        Builder builder = new Builder();
+        builder.tcpNoDelay = options.tcpNoDelay;
+        builder.keepAlive = options.keepAlive;
+        builder.reuseAddress = options.reuseAddress;
+        builder.receiveBufferSize = options.receiveBufferSize;
+        builder.sendBufferSize = options.sendBufferSize;
+        builder.linger = options.linger;
+        builder.backlog = options.backlog;
+        builder.bindAddress = options.bindAddress;
+        return builder;
+    }
+
+    public static class Builder {
+        private Boolean tcpNoDelay;
+        private Boolean keepAlive;
+        private Boolean reuseAddress;
+        private int receiveBufferSize = -1;
+        private int sendBufferSize = -1;
+        private Integer linger;
+        private int backlog = 0;
+        private InetAddress bindAddress;
+
+        private Builder() {
+        }
+
+        public Builder withTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        public Builder withKeepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        public Builder withReuseAddress(boolean reuseAddress) {
+            this.reuseAddress = reuseAddress;
+            return this;
+        }
+
+        public Builder withReceiveBufferSize(int size) {
+            checkArgument(size > 0);
+            this.receiveBufferSize = size;
+            return this;
+        }
+
+        public Builder withSendBufferSize(int size) {
+            checkArgument(size > 0);
+            this.sendBufferSize = size;
+            return this;
+        }
+
+        /**
+         * @param seconds the linger timeout, {@code -1} to disable lingering
+         *
+         * @return this
+         */
+        public Builder withLinger(int seconds) {
+            checkArgument(seconds >= -1);
+            this.linger = seconds;
+            return this;
+        }
+
+        public Builder withBacklog(int backlog) {
+            checkArgument(backlog > 0);
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * @param address the local address listening sockets are bound to;
+         *                client sockets are bound to it with an ephemeral
+         *                port
+         *
+         * @return this
+         */
+        public Builder withBindAddress(InetAddress address) {
+            this.bindAddress = address;
+            return this;
+        }
+
+        public SocketOptions build() {
+            return new SocketOptions(this);
+        }
+    }
+}
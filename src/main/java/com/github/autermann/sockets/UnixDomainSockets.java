@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Unix domain socket transport for clients on the same host as the server.
+ * The sockets are adapted to {@link ServerSocket} and {@link Socket}, so
+ * that the same handlers run over a socket file as over TCP. Unix domain
+ * socket channels are only available in Java 16 and later; this class is the
+ * fallback for older runtimes. The actual implementation is located in the
+ * multi-release part of the jar ({@code src/main/java16}).
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class UnixDomainSockets {
+    private UnixDomainSockets() {
+    }
+
+    /**
+     * @return if the running JVM and platform support Unix domain sockets
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates a server socket bound to the specified socket file. The file
+     * is deleted when the server socket is closed.
+     *
+     * @param path    the socket file
+     * @param options the options to apply; only the buffer sizes and the
+     *                backlog are applicable
+     *
+     * @return the bound server socket
+     *
+     * @throws IOException if the socket could not be bound
+     */
+    public static ServerSocket bind(File path, SocketOptions options)
+            throws IOException {
+        throw new UnsupportedOperationException(
+                "Unix domain sockets require Java 16");
+    }
+
+    /**
+     * Connects to the server socket bound to the specified socket file.
+     *
+     * @param path    the socket file
+     * @param options the options to apply; only the buffer sizes are
+     *                applicable
+     *
+     * @return the connected socket
+     *
+     * @throws IOException if the socket could not be connected
+     */
+    public static Socket connect(File path, SocketOptions options)
+            throws IOException {
+        throw new UnsupportedOperationException(
+                "Unix domain sockets require Java 16");
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server of a {@link LoadBalancingSocketClient}. It has its own client and
+ * thus its own connection pool, and tracks the load and health of the
+ * server: after a number of consecutive failures the server is ejected, i.e.
+ * not chosen, for the ejection time. After that a single further failure
+ * ejects it again, while a success restores it.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+public final class Backend<I, O> {
+    /**
+     * The weight of a new latency sample in the moving average, as a shift:
+     * each sample accounts for 1/8 of the average.
+     */
+    private static final int EWMA_SHIFT = 3;
+    private final RequestSocketClient<I, O> client;
+    private final int ejectionThreshold;
+    private final long ejectionTime;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong latency = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger ejections = new AtomicInteger();
+    private volatile long ejectedUntil = 0;
+
+    /**
+     * @param client            the client of the server
+     * @param ejectionThreshold the number of consecutive failures after which
+     *                          the server is ejected, or {@code 0} to never
+     *                          eject it
+     * @param ejectionTime      the time the server is ejected in nanoseconds
+     */
+    Backend(RequestSocketClient<I, O> client, int ejectionThreshold,
+            long ejectionTime) {
+        checkArgument(ejectionThreshold >= 0);
+        checkArgument(ejectionTime >= 0);
+        this.client = checkNotNull(client);
+        this.ejectionThreshold = ejectionThreshold;
+        this.ejectionTime = ejectionTime;
+    }
+
+    public InetSocketAddress getAddress() {
+        return client.getAddress();
+    }
+
+    /**
+     * @return the client connected to this server
+     */
+    public RequestSocketClient<I, O> getClient() {
+        return client;
+    }
+
+    /**
+     * @return the number of requests currently sent to this server
+     */
+    public int getOutstandingRequests() {
+        return outstanding.get();
+    }
+
+    /**
+     * @param unit the unit of the returned latency
+     *
+     * @return the moving average of the request latency, or {@code 0} if no
+     *         request was answered yet
+     */
+    public long getLatency(TimeUnit unit) {
+        return unit.convert(getLatency(), TimeUnit.NANOSECONDS);
+    }
+
+    long getLatency() {
+        return latency.get();
+    }
+
+    /**
+     * @return the number of failed requests since the last successful one
+     */
+    public int getConsecutiveFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of times this server was ejected
+     */
+    public int getEjections() {
+        return ejections.get();
+    }
+
+    /**
+     * @return if this server is currently not chosen
+     */
+    public boolean isEjected() {
+        return isEjected(System.nanoTime());
+    }
+
+    boolean isEjected(long now) {
+        long until = ejectedUntil;
+        return until != 0 && until - now > 0;
+    }
+
+    void started() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * @param nanos the latency of the request
+     */
+    void succeeded(long nanos) {
+        outstanding.decrementAndGet();
+        failures.set(0);
+        ejectedUntil = 0;
+        long average;
+        long updated;
+        do {
+            average = latency.get();
+            updated = average == 0 ? Math.max(1, nanos)
+                      : average + ((nanos - average) >> EWMA_SHIFT);
+        } while (!latency.compareAndSet(average, updated));
+    }
+
+    void failed() {
+        outstanding.decrementAndGet();
+        int failed = failures.incrementAndGet();
+        if (ejectionThreshold > 0 && failed >= ejectionThreshold) {
+            ejectedUntil = System.nanoTime() + ejectionTime;
+            ejections.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(getAddress());
+    }
+}
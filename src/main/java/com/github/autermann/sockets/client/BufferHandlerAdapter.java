@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.google.common.io.InputSupplier;
+import com.google.common.io.OutputSupplier;
+
+/**
+ * Adapts a {@link RequestSocketClientBufferHandler} to the stream based
+ * {@link RequestSocketClientHandler}. The adapter keeps its buffers between
+ * requests, including bytes received after a response, and thus must not be
+ * shared between connections; a {@link RequestSocketClient} uses a
+ * {@link #copy() copy} for each of its connections. Closing the adapter
+ * discards the buffers.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+public class BufferHandlerAdapter<I, O>
+        implements RequestSocketClientHandler<I, O>, Idempotency<I>,
+                   Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_BUFFER_SIZE = 1 << 30;
+    private final RequestSocketClientBufferHandler<I, O> handler;
+    private ByteBuffer input;
+    private ByteBuffer output;
+
+    /**
+     * @param handler the handler to adapt
+     */
+    public BufferHandlerAdapter(
+            RequestSocketClientBufferHandler<I, O> handler) {
+        this.handler = checkNotNull(handler);
+    }
+
+    public RequestSocketClientBufferHandler<I, O> getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return an adapter of the same handler with its own buffers
+     */
+    public BufferHandlerAdapter<I, O> copy() {
+        return new BufferHandlerAdapter<I, O>(handler);
+    }
+
+    /**
+     * @return if the adapted handler declares the request idempotent
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean isIdempotent(I request) {
+        return handler instanceof Idempotency &&
+               ((Idempotency<I>) handler).isIdempotent(request);
+    }
+
+    @Override
+    public void encode(I request, OutputSupplier<OutputStream> out)
+            throws IOException {
+        if (output == null) {
+            output = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+        output.clear();
+        while (!handler.encode(request, output)) {
+            output = ByteBuffer.allocate(grow(output.capacity()));
+        }
+        output.flip();
+        OutputStream os = out.getOutput();
+        os.write(output.array(), output.arrayOffset(), output.limit());
+        os.flush();
+    }
+
+    @Override
+    public O decode(InputSupplier<InputStream> in) throws IOException {
+        if (input == null) {
+            input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            input.flip();
+        }
+        InputStream is = null;
+        while (true) {
+            if (input.hasRemaining()) {
+                int position = input.position();
+                O response = handler.decode(input);
+                if (response != null) {
+                    return response;
+                }
+                input.position(position);
+            }
+            if (is == null) {
+                is = in.getInput();
+            }
+            if (!fill(is)) {
+                input.clear().flip();
+                throw new EOFException("Connection closed before response");
+            }
+        }
+    }
+
+    private boolean fill(InputStream is) throws IOException {
+        input.compact();
+        try {
+            if (!input.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer
+                        .allocate(grow(input.capacity()));
+                input.flip();
+                larger.put(input);
+                input = larger;
+            }
+            int read = is.read(input.array(),
+                               input.arrayOffset() + input.position(),
+                               input.remaining());
+            if (read < 0) {
+                return false;
+            }
+            input.position(input.position() + read);
+            return true;
+        } finally {
+            input.flip();
+        }
+    }
+
+    private static int grow(int capacity) throws IOException {
+        if (capacity >= MAX_BUFFER_SIZE) {
+            throw new IOException("Message exceeds " + MAX_BUFFER_SIZE +
+                                  " bytes");
+        }
+        return capacity * 2;
+    }
+
+    /**
+     * Discards the buffers including any buffered input.
+     */
+    @Override
+    public void close() {
+        input = null;
+        output = null;
+    }
+}
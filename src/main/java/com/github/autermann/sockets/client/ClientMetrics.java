@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import com.github.autermann.sockets.metrics.Counter;
+import com.github.autermann.sockets.metrics.Histogram;
+import com.github.autermann.sockets.metrics.MetricRegistry;
+
+/**
+ * Metrics of a {@link StreamingSocketClient}. All metrics are always
+ * recorded; recording does not allocate. Latencies are in nanoseconds.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ClientMetrics {
+    private final MetricRegistry registry = new MetricRegistry();
+    private final Counter opened = registry.counter("connections.opened");
+    private final Counter closed = registry.counter("connections.closed");
+    private final Counter bytesRead = registry.counter("bytes.read");
+    private final Counter bytesWritten = registry.counter("bytes.written");
+    private final Counter requests = registry.counter("requests");
+    private final Counter errors = registry.counter("errors");
+    private final Counter retries = registry.counter("retries");
+    private final Counter stale = registry.counter("connections.stale");
+    private final Histogram encode = registry.histogram("latency.encode");
+    private final Histogram response = registry.histogram("latency.response");
+    private final Histogram request = registry.histogram("latency.request");
+
+    ClientMetrics() {
+    }
+
+    /**
+     * @return the registry containing all metrics of the client
+     */
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public Counter getOpenedConnections() {
+        return opened;
+    }
+
+    public Counter getClosedConnections() {
+        return closed;
+    }
+
+    public Counter getBytesRead() {
+        return bytesRead;
+    }
+
+    public Counter getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the number of requests sent by a {@link RequestSocketClient}
+     */
+    public Counter getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the number of failed exchanges
+     */
+    public Counter getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of exchanges retried on a new connection
+     */
+    public Counter getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the number of idle connections that were closed by the server
+     *         or exceeded their maximum idle time or lifetime
+     */
+    public Counter getStaleConnections() {
+        return stale;
+    }
+
+    /**
+     * @return the time spent encoding and sending a request
+     */
+    public Histogram getEncodeLatency() {
+        return encode;
+    }
+
+    /**
+     * @return the time between sending a request and decoding its response
+     */
+    public Histogram getResponseLatency() {
+        return response;
+    }
+
+    /**
+     * @return the total time of a request
+     */
+    public Histogram getRequestLatency() {
+        return request;
+    }
+
+    @Override
+    public String toString() {
+        return registry.toString();
+    }
+}
@@ -19,11 +19,17 @@
  */
 package com.github.autermann.sockets.client;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.UnixDomainSockets;
+
 /**
  * TODO JavaDoc
  *
@@ -36,15 +42,80 @@ public abstract class ClientSocketFactory {
     public abstract Socket createSocket(String host, int port, int timeout)
             throws IOException, SocketException;
 
+    /**
+     * Creates a socket connected to the specified address with the specified
+     * options applied. Factories that do not override this method apply the
+     * options after the socket is connected.
+     *
+     * @param address the address to connect to
+     * @param timeout the connection timeout in milliseconds
+     * @param options the socket options
+     *
+     * @return the connected socket
+     *
+     * @throws IOException if the socket could not be created or connected
+     */
+    public Socket createSocket(InetSocketAddress address, int timeout,
+                               SocketOptions options)
+            throws IOException, SocketException {
+        Socket socket = createSocket(address, timeout);
+        try {
+            options.configure(socket);
+        } catch (SocketException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Creates a factory connecting to a Unix domain socket file instead of a
+     * TCP address. The address passed to the factory is ignored.
+     *
+     * @param path the socket file
+     *
+     * @return the factory
+     *
+     * @see UnixDomainSockets
+     */
+    public static ClientSocketFactory forUnixDomainSocket(final File path) {
+        checkNotNull(path);
+        return new ClientSocketFactory() {
+            @Override
+            public Socket createSocket(InetSocketAddress address, int timeout)
+                    throws IOException, SocketException {
+                return createSocket(address, timeout, SocketOptions.defaults());
+            }
+
+            @Override
+            public Socket createSocket(String host, int port, int timeout)
+                    throws IOException, SocketException {
+                return createSocket(null, timeout);
+            }
+
+            @Override
+            public Socket createSocket(InetSocketAddress address, int timeout,
+                                       SocketOptions options)
+                    throws IOException, SocketException {
+                return UnixDomainSockets.connect(path, options);
+            }
+        };
+    }
+
     public static ClientSocketFactory getDefault() {
         return new ClientSocketFactory() {
 
             @Override
             public Socket createSocket(InetSocketAddress address, int timeout)
                     throws IOException, SocketException {
-                Socket socket = new Socket();
-                socket.connect(address, timeout);
-                return socket;
+                return createSocket(address, timeout, SocketOptions.defaults());
+            }
+
+            @Override
+            public Socket createSocket(InetSocketAddress address, int timeout,
+                                       SocketOptions options)
+                    throws IOException, SocketException {
+                return options.connect(new Socket(), address, timeout);
             }
 
             @Override
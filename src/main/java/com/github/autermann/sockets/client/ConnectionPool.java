@@ -0,0 +1,445 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of connections to a single address. Borrowing an idle
+ * connection and returning a connection nobody waits for only touch
+ * concurrent queues and counters. If all connections are borrowed, threads
+ * wait in a FIFO queue and returned connections are handed to the longest
+ * waiting thread.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <T> the connection type
+ */
+public abstract class ConnectionPool<T> {
+    private static final Logger log = LoggerFactory
+            .getLogger(ConnectionPool.class);
+    /**
+     * Handed to a waiter to retry, as the number of connections dropped below
+     * the maximum.
+     */
+    private static final Object RETRY = new Object();
+    private static final Object CANCELLED = new Object();
+    private final int minIdle;
+    private final int maxConnections;
+    private final long acquireTimeout;
+    private final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+    private final Set<T> borrowed = Collections
+            .newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger timeouts = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /**
+     * @param minIdle        the number of idle connections to keep open
+     * @param maxConnections the maximum number of open connections
+     * @param acquireTimeout the time to wait for a connection in nanoseconds
+     */
+    ConnectionPool(int minIdle, int maxConnections, long acquireTimeout) {
+        checkArgument(maxConnections > 0);
+        checkArgument(minIdle >= 0 && minIdle <= maxConnections);
+        checkArgument(acquireTimeout > 0);
+        this.minIdle = minIdle;
+        this.maxConnections = maxConnections;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    /**
+     * Opens a new connection.
+     *
+     * @return the connection
+     *
+     * @throws IOException if the connection can not be opened
+     */
+    abstract T open() throws IOException;
+
+    /**
+     * @param connection an idle connection
+     *
+     * @return if the connection can be reused
+     */
+    abstract boolean isReusable(T connection);
+
+    /**
+     * Closes a connection that is discarded by the pool.
+     *
+     * @param connection the connection
+     */
+    abstract void close(T connection);
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param unit the unit of the returned timeout
+     *
+     * @return the time a thread waits for a connection if all are borrowed
+     */
+    public long getAcquireTimeout(TimeUnit unit) {
+        return unit.convert(acquireTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of open connections, idle or borrowed
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return the number of idle connections
+     */
+    public int getIdleConnections() {
+        return idleCount.get();
+    }
+
+    /**
+     * @return the number of threads waiting for a connection
+     */
+    public int getWaiters() {
+        return waiters.size();
+    }
+
+    /**
+     * @return the number of threads that gave up waiting for a connection
+     */
+    public int getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Borrows a connection, opening a new one if none is idle and the maximum
+     * is not reached, or waiting for one to be returned.
+     *
+     * @return the connection
+     *
+     * @throws SocketTimeoutException  if no connection was returned in time
+     * @throws InterruptedIOException if the thread was interrupted while
+     *                                waiting
+     * @throws IOException            if a new connection could not be
+     *                                opened or the pool is closed
+     */
+    public T borrow() throws IOException {
+        T connection = acquire();
+        borrowed.add(connection);
+        return connection;
+    }
+
+    private T acquire() throws IOException {
+        long deadline = System.nanoTime() + acquireTimeout;
+        for (;;) {
+            T connection = tryBorrow();
+            if (connection != null) {
+                return connection;
+            }
+            Waiter waiter = new Waiter();
+            waiters.offer(waiter);
+            // a connection may have been returned before we were enqueued
+            connection = tryBorrow();
+            if (connection != null) {
+                if (waiter.cancel()) {
+                    waiters.remove(waiter);
+                } else {
+                    handOn(waiter.take());
+                }
+                return connection;
+            }
+            Object handed;
+            try {
+                handed = waiter.await(deadline);
+            } catch (InterruptedIOException e) {
+                waiters.remove(waiter);
+                throw e;
+            }
+            if (handed == CANCELLED) {
+                waiters.remove(waiter);
+                timeouts.incrementAndGet();
+                throw new SocketTimeoutException(
+                        "Timed out waiting for a pooled connection");
+            }
+            if (handed != RETRY) {
+                @SuppressWarnings("unchecked")
+                T borrowed = (T) handed;
+                return borrowed;
+            }
+        }
+    }
+
+    /**
+     * Returns a borrowed connection. Returning a connection that is not
+     * borrowed, e.g. a second time, is ignored.
+     *
+     * @param connection the connection
+     * @param reusable   if the connection is in a consistent state and may be
+     *                   borrowed again
+     */
+    public void giveBack(T connection, boolean reusable) {
+        if (!borrowed.remove(connection)) {
+            log.warn("Ignoring connection that is not borrowed: {}",
+                     connection);
+            return;
+        }
+        release(connection, reusable);
+    }
+
+    private void release(T connection, boolean reusable) {
+        if (!reusable || closed) {
+            discard(connection);
+            fill();
+            return;
+        }
+        for (;;) {
+            Waiter waiter = waiters.poll();
+            if (waiter != null) {
+                if (waiter.offer(connection)) {
+                    return;
+                }
+                continue;
+            }
+            idleCount.incrementAndGet();
+            idle.offer(connection);
+            // a waiter may have been enqueued before we offered the connection
+            if (waiters.isEmpty() || closed) {
+                break;
+            }
+            connection = pollIdle();
+            if (connection == null) {
+                break;
+            }
+        }
+        if (closed) {
+            clear();
+        }
+    }
+
+    /**
+     * Opens connections until there are {@link #getMinIdle()} idle
+     * connections. Failures are logged, as the connections are opened again
+     * on demand.
+     */
+    public void fill() {
+        while (!closed && idleCount.get() < minIdle && reserve()) {
+            T connection;
+            try {
+                connection = open();
+            } catch (IOException e) {
+                unreserve();
+                log.warn("Could not open idle connection: {}", e.getMessage());
+                return;
+            }
+            release(connection, true);
+        }
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed once they
+     * are returned, waiting threads time out.
+     */
+    public void close() {
+        closed = true;
+        clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes all idle connections, e.g. after the server was restarted.
+     */
+    public void evictIdle() {
+        clear();
+    }
+
+    private void clear() {
+        T connection;
+        while ((connection = pollIdle()) != null) {
+            discard(connection);
+        }
+    }
+
+    /**
+     * Passes a value handed to a waiter that no longer needs it on to the
+     * next waiter.
+     *
+     * @param handed the connection or {@link #RETRY}
+     */
+    private void handOn(Object handed) {
+        if (handed == RETRY) {
+            signal();
+        } else {
+            @SuppressWarnings("unchecked")
+            T connection = (T) handed;
+            release(connection, true);
+        }
+    }
+
+    private T tryBorrow() throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        T connection;
+        while ((connection = pollIdle()) != null) {
+            if (isReusable(connection)) {
+                return connection;
+            }
+            discard(connection);
+        }
+        if (!reserve()) {
+            return null;
+        }
+        try {
+            return open();
+        } catch (IOException e) {
+            unreserve();
+            throw e;
+        } catch (RuntimeException e) {
+            unreserve();
+            throw e;
+        }
+    }
+
+    private T pollIdle() {
+        T connection = idle.poll();
+        if (connection != null) {
+            idleCount.decrementAndGet();
+        }
+        return connection;
+    }
+
+    private boolean reserve() {
+        for (;;) {
+            int current = connections.get();
+            if (current >= maxConnections) {
+                return false;
+            }
+            if (connections.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void unreserve() {
+        connections.decrementAndGet();
+        signal();
+    }
+
+    private void discard(T connection) {
+        try {
+            close(connection);
+        } finally {
+            unreserve();
+        }
+    }
+
+    /**
+     * Wakes the longest waiting thread to open a new connection.
+     */
+    private void signal() {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.offer(RETRY)) {
+                return;
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final Thread thread = Thread.currentThread();
+        private final AtomicReference<Object> slot
+                = new AtomicReference<Object>();
+
+        boolean offer(Object value) {
+            if (slot.compareAndSet(null, value)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        boolean cancel() {
+            return slot.compareAndSet(null, CANCELLED);
+        }
+
+        /**
+         * @return the value handed to a cancelled waiter
+         */
+        Object take() {
+            return slot.get();
+        }
+
+        /**
+         * @param deadline the deadline as of {@link System#nanoTime()}
+         *
+         * @return the handed value, or {@link #CANCELLED} if the deadline
+         *         expired
+         *
+         * @throws InterruptedIOException if the thread was interrupted
+         */
+        Object await(long deadline) throws InterruptedIOException {
+            for (;;) {
+                Object value = slot.get();
+                if (value != null) {
+                    return value;
+                }
+                long remaining = deadline - System.nanoTime();
+                boolean interrupted = Thread.interrupted();
+                if (remaining <= 0 || interrupted) {
+                    boolean cancelled = cancel();
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (!cancelled) {
+                        // handed a value concurrently
+                        continue;
+                    }
+                    if (interrupted) {
+                        throw new InterruptedIOException(
+                                "Interrupted waiting for a connection");
+                    }
+                    return CANCELLED;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A client routing requests by a key, so that requests with the same key
+ * are sent to the same server, e.g. to make use of its caches. The servers
+ * are placed on a hash ring at multiple points each ("virtual nodes");
+ * a request is sent to the first server following the hash of its key.
+ * If a server is added or removed, only the keys of the neighbouring ring
+ * segments change their server.
+ * <p>
+ * To bound the load of popular keys, a server is skipped if its outstanding
+ * requests exceed the load factor times the average number of outstanding
+ * requests per server; the request then goes to the next server on the ring.
+ * Ejected servers are skipped as well. Requests without a key are load
+ * balanced like in a {@link LoadBalancingSocketClient}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ *
+ * @see SocketClientBuilder#buildConsistentHash(RequestSocketClientHandler,
+ * Function)
+ */
+public class ConsistentHashSocketClient<I, O>
+        extends LoadBalancingSocketClient<I, O> {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private final Function<? super I, String> keyFunction;
+    private final int virtualNodes;
+    private final double loadFactor;
+    private volatile Ring<I, O> ring;
+
+    /**
+     * @param addresses     the addresses of the servers
+     * @param factory       the factory creating the server of an address
+     * @param loadBalancing the load measure for requests without key
+     * @param keyFunction   the function extracting the key of a request,
+     *                      returning {@code null} for requests without key
+     * @param virtualNodes  the number of points of each server on the ring
+     * @param loadFactor    the factor by which the outstanding requests of a
+     *                      server may exceed the average
+     */
+    ConsistentHashSocketClient(Iterable<InetSocketAddress> addresses,
+                               Function<InetSocketAddress, Backend<I, O>> factory,
+                               LoadBalancing loadBalancing,
+                               Function<? super I, String> keyFunction,
+                               int virtualNodes, double loadFactor) {
+        super(addresses, factory, loadBalancing);
+        checkArgument(virtualNodes > 0);
+        checkArgument(loadFactor >= 1);
+        this.keyFunction = checkNotNull(keyFunction);
+        this.virtualNodes = virtualNodes;
+        this.loadFactor = loadFactor;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public double getLoadFactor() {
+        return loadFactor;
+    }
+
+    @Override
+    Backend<I, O> select(I request, Set<Backend<I, O>> excluded) {
+        String key = keyFunction.apply(request);
+        if (key == null) {
+            return selectLeastLoaded(excluded);
+        }
+        Ring<I, O> r = getRing();
+        int points = r.points.length;
+        if (points == 0) {
+            return null;
+        }
+        long capacity = getCapacity(r.backends);
+        long now = System.nanoTime();
+        Backend<I, O> owner = null;
+        int i = r.indexOf(hash(key));
+        for (int n = 0; n < points; ++n, ++i) {
+            Backend<I, O> backend = r.owners.get(i % points);
+            if (excluded != null && excluded.contains(backend)) {
+                continue;
+            }
+            if (!backend.isEjected(now) &&
+                backend.getOutstandingRequests() < capacity) {
+                return backend;
+            }
+            if (owner == null) {
+                owner = backend;
+            }
+        }
+        // better an overloaded or possibly failing server than none at all
+        return owner;
+    }
+
+    /**
+     * @param backends the servers
+     *
+     * @return the number of outstanding requests a server may have to accept
+     *         another one
+     */
+    private long getCapacity(List<Backend<I, O>> backends) {
+        long outstanding = 1;
+        for (Backend<I, O> backend : backends) {
+            outstanding += backend.getOutstandingRequests();
+        }
+        return (long) Math.ceil(loadFactor * outstanding / backends.size());
+    }
+
+    private Ring<I, O> getRing() {
+        List<Backend<I, O>> backends = getBackends();
+        Ring<I, O> r = this.ring;
+        if (r == null || r.backends != backends) {
+            // a concurrently built ring of the same servers is identical
+            r = new Ring<I, O>(backends, virtualNodes);
+            this.ring = r;
+        }
+        return r;
+    }
+
+    private static long hash(String s) {
+        return HASH.hashString(s, Charsets.UTF_8).asLong();
+    }
+
+    /**
+     * @param address the address of a server
+     *
+     * @return the name the server is placed on the ring by
+     */
+    private static String getName(InetSocketAddress address) {
+        String host = address.getAddress() == null ? address.getHostName()
+                      : address.getAddress().getHostAddress();
+        return host + ":" + address.getPort();
+    }
+
+    /**
+     * The sorted points of the servers on the hash ring.
+     */
+    private static class Ring<I, O> {
+        private final List<Backend<I, O>> backends;
+        private final long[] points;
+        private final List<Backend<I, O>> owners;
+
+        Ring(List<Backend<I, O>> backends, int virtualNodes) {
+            this.backends = backends;
+            // sorted by point; on collisions the first server keeps the point
+            Map<Long, Backend<I, O>> ring = Maps.newTreeMap();
+            for (Backend<I, O> backend : backends) {
+                String name = getName(backend.getAddress());
+                for (int i = 0; i < virtualNodes; ++i) {
+                    Long point = hash(name + "#" + i);
+                    if (!ring.containsKey(point)) {
+                        ring.put(point, backend);
+                    }
+                }
+            }
+            this.points = new long[ring.size()];
+            int i = 0;
+            for (Long point : ring.keySet()) {
+                this.points[i++] = point;
+            }
+            this.owners = ImmutableList.copyOf(ring.values());
+        }
+
+        /**
+         * @param hash the hash of a key
+         *
+         * @return the index of the first point not less than the hash
+         */
+        int indexOf(long hash) {
+            int i = Arrays.binarySearch(points, hash);
+            return i < 0 ? -i - 1 : i;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+/**
+ * Optional interface of request handlers that declares which requests can
+ * safely be sent twice. If a request fails on a reused connection, e.g.
+ * because the server closed it in the meantime, a {@link RequestSocketClient}
+ * retries it once on a new connection: requests that were not sent at all are
+ * always retried, idempotent requests also after they were sent.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ *
+ * @see SocketClientBuilder#withoutRetries()
+ */
+public interface Idempotency<I> {
+    /**
+     * @param request the request
+     *
+     * @return if executing the request twice has the same effect as
+     *         executing it once
+     */
+    boolean isIdempotent(I request);
+}
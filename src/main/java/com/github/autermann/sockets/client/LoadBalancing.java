@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+/**
+ * The load measures a {@link LoadBalancingSocketClient} compares to choose
+ * a server. For every request two servers are picked at random and the
+ * request is sent to the one with the lower load ("power of two choices").
+ * This avoids both the herd behaviour of always choosing the least loaded
+ * server based on stale information and the imbalance of random choices.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public enum LoadBalancing {
+    /**
+     * Prefers the server with fewer outstanding requests.
+     */
+    LEAST_OUTSTANDING {
+        @Override
+        long getLoad(Backend<?, ?> backend) {
+            return backend.getOutstandingRequests();
+        }
+    },
+    /**
+     * Prefers the server with the lower exponentially weighted moving
+     * average of the request latency, multiplied by the number of its
+     * outstanding requests plus one. Servers that did not yet answer a
+     * request have no load, so that they are probed.
+     */
+    EWMA_LATENCY {
+        @Override
+        long getLoad(Backend<?, ?> backend) {
+            return backend.getLatency() *
+                   (backend.getOutstandingRequests() + 1);
+        }
+    };
+
+    /**
+     * @param backend the server
+     *
+     * @return the current load of the server
+     */
+    abstract long getLoad(Backend<?, ?> backend);
+}
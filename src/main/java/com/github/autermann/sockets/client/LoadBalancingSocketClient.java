@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A client spreading requests over multiple servers. Every server has its
+ * own {@link RequestSocketClient} with its own connection pool. Requests
+ * are sent to the less loaded of two randomly chosen servers, skipping
+ * servers that are ejected after consecutive failures; if all servers are
+ * ejected, all are chosen from. Requests failing because a server can not
+ * be connected to are sent to another server, as nothing was sent yet.
+ * Servers can be added and removed while the client is used.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ *
+ * @see SocketClientBuilder#buildLoadBalanced(RequestSocketClientHandler)
+ */
+public class LoadBalancingSocketClient<I, O> {
+    private static final Logger log = LoggerFactory
+            .getLogger(LoadBalancingSocketClient.class);
+    private final Function<InetSocketAddress, Backend<I, O>> factory;
+    private final LoadBalancing loadBalancing;
+    private final Random random = new Random();
+    private volatile List<Backend<I, O>> backends;
+
+    /**
+     * @param addresses     the addresses of the servers
+     * @param factory       the factory creating the server of an address
+     * @param loadBalancing the load measure
+     */
+    LoadBalancingSocketClient(Iterable<InetSocketAddress> addresses,
+                              Function<InetSocketAddress, Backend<I, O>> factory,
+                              LoadBalancing loadBalancing) {
+        this.factory = checkNotNull(factory);
+        this.loadBalancing = checkNotNull(loadBalancing);
+        ImmutableList.Builder<Backend<I, O>> b = ImmutableList.builder();
+        for (InetSocketAddress address : addresses) {
+            b.add(factory.apply(address));
+        }
+        this.backends = b.build();
+        checkArgument(!this.backends.isEmpty());
+    }
+
+    /**
+     * @return the current servers
+     */
+    public List<Backend<I, O>> getBackends() {
+        return backends;
+    }
+
+    /**
+     * Adds a server, if it is not already known.
+     *
+     * @param address the address of the server
+     */
+    public synchronized void addServer(InetSocketAddress address) {
+        checkNotNull(address);
+        if (getBackend(address) == null) {
+            this.backends = ImmutableList.<Backend<I, O>>builder()
+                    .addAll(backends).add(factory.apply(address)).build();
+        }
+    }
+
+    /**
+     * Removes a server and closes its client. Requests currently sent to
+     * the server are completed, but their connections are closed
+     * afterwards.
+     *
+     * @param address the address of the server
+     *
+     * @return if the server was known
+     */
+    public boolean removeServer(InetSocketAddress address) {
+        Backend<I, O> removed;
+        synchronized (this) {
+            removed = getBackend(address);
+            if (removed == null) {
+                return false;
+            }
+            List<Backend<I, O>> remaining = Lists.newArrayList(backends);
+            remaining.remove(removed);
+            this.backends = ImmutableList.copyOf(remaining);
+        }
+        removed.getClient().close();
+        return true;
+    }
+
+    private Backend<I, O> getBackend(InetSocketAddress address) {
+        for (Backend<I, O> backend : backends) {
+            if (backend.getAddress().equals(address)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    public LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * Sends a request to one of the servers. This method may be called by
+     * multiple threads concurrently.
+     *
+     * @param request the request to send
+     *
+     * @return the response
+     *
+     * @throws IOException if the request failed or no server is available
+     */
+    public O exec(I request) throws IOException {
+        Set<Backend<I, O>> unreachable = null;
+        ConnectException failure = null;
+        while (true) {
+            Backend<I, O> backend = select(request, unreachable);
+            if (backend == null) {
+                if (failure != null) {
+                    throw failure;
+                }
+                throw new IOException("No server available");
+            }
+            backend.started();
+            long start = System.nanoTime();
+            try {
+                O response = backend.getClient().exec(request);
+                backend.succeeded(System.nanoTime() - start);
+                return response;
+            } catch (ConnectException e) {
+                backend.failed();
+                failure = e;
+                if (unreachable == null) {
+                    unreachable = Sets.newHashSet();
+                }
+                unreachable.add(backend);
+                log.debug("Can not connect to {}: {}", backend,
+                          e.getMessage());
+            } catch (IOException e) {
+                backend.failed();
+                throw e;
+            } catch (RuntimeException e) {
+                backend.failed();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Chooses the server to send a request to.
+     *
+     * @param request  the request
+     * @param excluded the servers not to choose, may be {@code null}
+     *
+     * @return the server, or {@code null} if all servers are excluded
+     */
+    Backend<I, O> select(I request, Set<Backend<I, O>> excluded) {
+        return selectLeastLoaded(excluded);
+    }
+
+    /**
+     * Chooses the less loaded of two random servers.
+     *
+     * @param excluded the servers not to choose, may be {@code null}
+     *
+     * @return the server, or {@code null} if all servers are excluded
+     */
+    final Backend<I, O> selectLeastLoaded(Set<Backend<I, O>> excluded) {
+        List<Backend<I, O>> backends = this.backends;
+        long now = System.nanoTime();
+        List<Backend<I, O>> candidates = Lists
+                .newArrayListWithCapacity(backends.size());
+        for (Backend<I, O> backend : backends) {
+            if (!backend.isEjected(now) &&
+                (excluded == null || !excluded.contains(backend))) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            // better a possibly failing server than none at all
+            for (Backend<I, O> backend : backends) {
+                if (excluded == null || !excluded.contains(backend)) {
+                    candidates.add(backend);
+                }
+            }
+        }
+        int n = candidates.size();
+        if (n == 0) {
+            return null;
+        } else if (n == 1) {
+            return candidates.get(0);
+        }
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) {
+            ++j;
+        }
+        Backend<I, O> a = candidates.get(i);
+        Backend<I, O> b = candidates.get(j);
+        return loadBalancing.getLoad(b) < loadBalancing.getLoad(a) ? b : a;
+    }
+
+    /**
+     * Closes the clients of all servers.
+     */
+    public void close() {
+        for (Backend<I, O> backend : backends) {
+            backend.getClient().close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + backends;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.autermann.sockets.Correlated;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A connection carrying multiple outstanding requests. Requests are encoded
+ * by the submitting threads one after another, while a reader thread decodes
+ * the responses and completes their futures. Once the connection fails, all
+ * outstanding requests fail and the connection is closed.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+abstract class PipelinedConnection<I, O> implements Runnable {
+    private static final ThreadFactory THREAD_FACTORY
+            = new ThreadFactoryBuilder()
+            .setNameFormat("socket-client-reader-%d")
+            .setDaemon(true).build();
+    private final StreamingSocketClient.SocketConnection connection;
+    private final ClientMetrics metrics;
+    private final Semaphore outstanding;
+    private final Object writeLock = new Object();
+    private volatile IOException failure;
+
+    /**
+     * @param connection the connection
+     * @param depth      the maximum number of outstanding requests
+     * @param metrics    the metrics to update
+     */
+    PipelinedConnection(StreamingSocketClient.SocketConnection connection,
+                        int depth, ClientMetrics metrics) {
+        checkArgument(depth > 0);
+        this.connection = checkNotNull(connection);
+        this.outstanding = new Semaphore(depth);
+        this.metrics = checkNotNull(metrics);
+    }
+
+    /**
+     * Creates a connection matching responses to requests by their order.
+     *
+     * @param <I>        the request type
+     * @param <O>        the response type
+     * @param connection the connection
+     * @param handler    the handler
+     * @param depth      the maximum number of outstanding requests
+     * @param metrics    the metrics to update
+     *
+     * @return the started connection
+     */
+    static <I, O> PipelinedConnection<I, O> ordered(
+            StreamingSocketClient.SocketConnection connection,
+            RequestSocketClientHandler<I, O> handler, int depth,
+            ClientMetrics metrics) {
+        return new Ordered<I, O>(connection, handler, depth, metrics).start();
+    }
+
+    /**
+     * Creates a connection matching responses to requests by their
+     * correlation id.
+     *
+     * @param <I>        the request type
+     * @param <O>        the response type
+     * @param connection the connection
+     * @param handler    the handler of the correlated messages
+     * @param depth      the maximum number of outstanding requests
+     * @param metrics    the metrics to update
+     *
+     * @return the started connection
+     */
+    static <I, O> PipelinedConnection<I, O> multiplexed(
+            StreamingSocketClient.SocketConnection connection,
+            RequestSocketClientHandler<Correlated<I>, Correlated<O>> handler,
+            int depth, ClientMetrics metrics) {
+        return new Multiplexed<I, O>(connection, handler, depth, metrics)
+                .start();
+    }
+
+    /**
+     * Encodes a request. Called by one thread at a time.
+     *
+     * @param request the request
+     * @param pending the pending response
+     *
+     * @throws IOException if the request could not be sent
+     */
+    abstract void send(I request, Pending<O> pending) throws IOException;
+
+    /**
+     * Decodes the next response and completes its pending response.
+     *
+     * @throws IOException if the response could not be decoded
+     */
+    abstract void receive() throws IOException;
+
+    /**
+     * @return if no response is outstanding
+     */
+    abstract boolean isIdle();
+
+    /**
+     * Removes all pending responses.
+     *
+     * @return the removed responses
+     */
+    abstract Collection<Pending<O>> removePending();
+
+    StreamingSocketClient.SocketConnection getConnection() {
+        return connection;
+    }
+
+    PipelinedConnection<I, O> start() {
+        THREAD_FACTORY.newThread(this).start();
+        return this;
+    }
+
+    /**
+     * Sends a request, waiting while the maximum number of requests is
+     * outstanding.
+     *
+     * @param request the request
+     *
+     * @return the future response
+     */
+    ListenableFuture<O> submit(I request) {
+        Pending<O> pending = new Pending<O>();
+        try {
+            outstanding.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.setException(new InterruptedIOException());
+            return pending.future;
+        }
+        metrics.getRequests().increment();
+        synchronized (writeLock) {
+            try {
+                checkFailure();
+                long start = System.nanoTime();
+                send(request, pending);
+                metrics.getEncodeLatency().recordSince(start);
+            } catch (IOException e) {
+                fail(e);
+                // not registered if the connection failed before
+                pending.future.setException(e);
+                release(pending);
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * @return if the connection failed or was closed
+     */
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Closes the connection, failing all outstanding requests.
+     */
+    void close() {
+        fail(new IOException("Client closed"));
+    }
+
+    void complete(Pending<O> pending, O response) {
+        if (pending.future.set(response)) {
+            metrics.getRequestLatency().recordSince(pending.start);
+        }
+        // also if the caller cancelled the future
+        release(pending);
+    }
+
+    /**
+     * Returns the permit of a request that is no longer outstanding.
+     *
+     * @param pending the pending response
+     */
+    private void release(Pending<O> pending) {
+        if (pending.released.compareAndSet(false, true)) {
+            outstanding.release();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (failure == null) {
+                try {
+                    receive();
+                } catch (SocketTimeoutException e) {
+                    if (!isIdle()) {
+                        throw e;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            fail(new IOException("Could not decode response", e));
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = e;
+        }
+        // unblocks a thread writing a request
+        connection.close();
+        Collection<Pending<O>> pending;
+        synchronized (writeLock) {
+            // no request can be registered after this
+            pending = removePending();
+        }
+        if (!pending.isEmpty()) {
+            metrics.getErrors().increment();
+        }
+        for (Pending<O> p : pending) {
+            p.future.setException(e);
+            release(p);
+        }
+    }
+
+    static class Pending<O> {
+        private final SettableFuture<O> future = SettableFuture.create();
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+    }
+
+    private static class Ordered<I, O> extends PipelinedConnection<I, O> {
+        private final RequestSocketClientHandler<I, O> handler;
+        private final Queue<Pending<O>> pending
+                = new ConcurrentLinkedQueue<Pending<O>>();
+
+        Ordered(StreamingSocketClient.SocketConnection connection,
+                RequestSocketClientHandler<I, O> handler, int depth,
+                ClientMetrics metrics) {
+            super(connection, depth, metrics);
+            this.handler = checkNotNull(handler);
+        }
+
+        @Override
+        void send(I request, Pending<O> p) throws IOException {
+            // registered first, the response may arrive before encode returns
+            pending.offer(p);
+            handler.encode(request, getConnection());
+        }
+
+        @Override
+        void receive() throws IOException {
+            O response = handler.decode(getConnection());
+            Pending<O> p = pending.poll();
+            if (p == null) {
+                throw new IOException("Received an unexpected response");
+            }
+            complete(p, response);
+        }
+
+        @Override
+        boolean isIdle() {
+            return pending.isEmpty();
+        }
+
+        @Override
+        Collection<Pending<O>> removePending() {
+            List<Pending<O>> removed = Lists.newLinkedList();
+            Pending<O> p;
+            while ((p = pending.poll()) != null) {
+                removed.add(p);
+            }
+            return removed;
+        }
+    }
+
+    private static class Multiplexed<I, O> extends PipelinedConnection<I, O> {
+        private final RequestSocketClientHandler<Correlated<I>, Correlated<O>> handler;
+        private final ConcurrentMap<Long, Pending<O>> pending
+                = Maps.newConcurrentMap();
+        private long nextId = 0;
+
+        Multiplexed(StreamingSocketClient.SocketConnection connection,
+                    RequestSocketClientHandler<Correlated<I>, Correlated<O>> handler,
+                    int depth, ClientMetrics metrics) {
+            super(connection, depth, metrics);
+            this.handler = checkNotNull(handler);
+        }
+
+        @Override
+        void send(I request, Pending<O> p) throws IOException {
+            long id = nextId++;
+            pending.put(id, p);
+            handler.encode(Correlated.of(id, request), getConnection());
+        }
+
+        @Override
+        void receive() throws IOException {
+            Correlated<O> response = handler.decode(getConnection());
+            Pending<O> p = pending.remove(response.getId());
+            if (p == null) {
+                throw new IOException("Received a response with unknown " +
+                                      "correlation id " + response.getId());
+            }
+            complete(p, response.getMessage());
+        }
+
+        @Override
+        boolean isIdle() {
+            return pending.isEmpty();
+        }
+
+        @Override
+        Collection<Pending<O>> removePending() {
+            List<Pending<O>> removed = Lists.newLinkedList();
+            for (Map.Entry<Long, Pending<O>> e : pending.entrySet()) {
+                if (pending.remove(e.getKey(), e.getValue())) {
+                    removed.add(e.getValue());
+                }
+            }
+            return removed;
+        }
+    }
+}
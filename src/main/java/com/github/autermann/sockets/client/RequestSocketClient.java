@@ -15,15 +15,25 @@
  */
 package com.github.autermann.sockets.client;
 
-import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.autermann.sockets.Correlated;
+import com.google.common.base.Throwables;
 import com.google.common.io.InputSupplier;
 import com.google.common.io.OutputSupplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * TODO JavaDoc
@@ -33,23 +43,72 @@ import com.google.common.io.OutputSupplier;
  * @param <O>
  */
 public class RequestSocketClient<I, O> extends StreamingSocketClient {
+    private static final Logger log = LoggerFactory
+            .getLogger(RequestSocketClient.class);
     private final RequestSocketClientHandler<I, O> requestHandler;
+    private final RequestSocketClientHandler<Correlated<I>, Correlated<O>> multiplexedHandler;
+    private final int pipelineDepth;
+    private PipelinedConnection<I, O> pipeline;
 
-    RequestSocketClient(RequestSocketClientHandler<I, O> requestHandler,
+    /**
+     * Exactly one of {@code requestHandler} and {@code multiplexedHandler}
+     * has to be set.
+     *
+     * @param builder            the builder
+     * @param address            the address of the server
+     * @param requestHandler     the handler, or {@code null} if the client is
+     *                           multiplexed
+     * @param multiplexedHandler the handler of a multiplexed client, or
+     *                           {@code null}
+     * @param pipelineDepth      the maximum number of outstanding requests,
+     *                           or {@code 0} to disable pipelining
+     */
+    RequestSocketClient(SocketClientBuilder builder,
                      InetSocketAddress address,
-                     ClientSocketFactory socketFactory,
-                     int timeout) {
-        super(address, socketFactory, timeout);
-        this.requestHandler = checkNotNull(requestHandler);
+                     RequestSocketClientHandler<I, O> requestHandler,
+                     RequestSocketClientHandler<Correlated<I>, Correlated<O>> multiplexedHandler,
+                     int pipelineDepth) {
+        super(builder, address);
+        checkArgument((requestHandler == null) != (multiplexedHandler == null));
+        checkArgument(multiplexedHandler == null || pipelineDepth > 0);
+        this.requestHandler = requestHandler;
+        this.multiplexedHandler = multiplexedHandler;
+        this.pipelineDepth = pipelineDepth;
     }
 
+    /**
+     * @return the handler, or {@code null} if this client is multiplexed
+     */
     public RequestSocketClientHandler<I, O> getRequestHandler() {
         return requestHandler;
     }
 
+    /**
+     * @return the maximum number of outstanding requests, or {@code 1} if
+     *         requests are not pipelined
+     *
+     * @see SocketClientBuilder#withPipelining(int)
+     */
+    public int getPipelineDepth() {
+        return Math.max(1, pipelineDepth);
+    }
+
+    /**
+     * @return if responses are matched to requests by correlation ids
+     *
+     * @see SocketClientBuilder#buildMultiplexed(RequestSocketClientHandler)
+     */
+    public boolean isMultiplexed() {
+        return multiplexedHandler != null;
+    }
+
     /**
      * Sends a request to a socket server. The server must be connections on the
-     * specified port.
+     * specified port. With a connection pool this method may be called by
+     * multiple threads concurrently. If the request fails on a reused
+     * connection before it was sent, or if the handler declares it
+     * {@link Idempotency idempotent}, it is retried once on a new
+     * connection.
      *
      * @param request the request to send
      *
@@ -58,11 +117,125 @@ public class RequestSocketClient<I, O> extends StreamingSocketClient {
      * @throws IOException if the connection to the socket server failed
      */
     public O exec(I request) throws IOException {
+        if (pipelineDepth > 0) {
+            try {
+                return Uninterruptibles.getUninterruptibly(execAsync(request));
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), IOException.class);
+                throw new IOException(e.getCause());
+            }
+        }
         StreamingHandlerImpl h = new StreamingHandlerImpl(request);
-        exec(h);
+        exec(h, isIdempotent(request));
         return h.getResponse();
     }
 
+    @SuppressWarnings("unchecked")
+    private boolean isIdempotent(I request) {
+        return requestHandler instanceof Idempotency &&
+               ((Idempotency<I>) requestHandler).isIdempotent(request);
+    }
+
+    /**
+     * Sends a request without waiting for the response. If the client
+     * pipelines requests, the request is sent over a shared connection on
+     * which up to {@link #getPipelineDepth()} requests are outstanding; the
+     * calling thread blocks while this limit is reached. Otherwise the
+     * request is executed synchronously. A multiplexed client matches
+     * responses by correlation id and thus supports servers answering out
+     * of order; other clients expect responses in request order. If the
+     * connection fails, all outstanding requests fail and the next request
+     * opens a new connection.
+     *
+     * @param request the request to send
+     *
+     * @return the future response
+     */
+    public ListenableFuture<O> execAsync(I request) {
+        if (pipelineDepth <= 0) {
+            try {
+                return Futures.immediateFuture(exec(request));
+            } catch (IOException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+        PipelinedConnection<I, O> p;
+        try {
+            p = getPipeline();
+        } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        return p.submit(request);
+    }
+
+    private synchronized PipelinedConnection<I, O> getPipeline()
+            throws IOException {
+        if (pipeline == null || pipeline.isFailed()) {
+            SocketConnection con = new SocketConnection();
+            if (multiplexedHandler != null) {
+                pipeline = PipelinedConnection.multiplexed(
+                        con, forConnection(multiplexedHandler), pipelineDepth,
+                        getMetrics());
+            } else {
+                pipeline = PipelinedConnection.ordered(
+                        con, forConnection(requestHandler), pipelineDepth,
+                        getMetrics());
+            }
+        }
+        return pipeline;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (pipeline != null) {
+                pipeline.close();
+                pipeline = null;
+            }
+        }
+        super.close();
+        close(requestHandler);
+        close(multiplexedHandler);
+    }
+
+    /**
+     * @param <T>     the handler type
+     * @param handler the handler of this client
+     *
+     * @return the handler to use for a new connection: buffer handler
+     *         adapters keep input between requests, so every connection
+     *         gets its own
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends RequestSocketClientHandler<?, ?>> T forConnection(
+            T handler) {
+        if (handler instanceof BufferHandlerAdapter) {
+            return (T) ((BufferHandlerAdapter<?, ?>) handler).copy();
+        }
+        return handler;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RequestSocketClientHandler<I, O> getRequestHandler(
+            SocketConnection connection) {
+        Object handler = connection.getAttachment();
+        if (handler == null) {
+            handler = forConnection(requestHandler);
+            connection.attach(handler);
+        }
+        return (RequestSocketClientHandler<I, O>) handler;
+    }
+
+    private static void close(Object handler) {
+        if (handler instanceof Closeable) {
+            try {
+                ((Closeable) handler).close();
+            } catch (IOException e) {
+                log.error("Error closing request handler", e);
+            }
+        }
+    }
+
     private class StreamingHandlerImpl implements StreamingSocketClientHandler {
         private O response;
         final I request;
@@ -75,8 +248,19 @@ public class RequestSocketClient<I, O> extends StreamingSocketClient {
         public void handle(InputSupplier<InputStream> in,
                            OutputSupplier<OutputStream> out)
                 throws IOException {
-            getRequestHandler().encode(request, out);
-            response = getRequestHandler().decode(in);
+            // the client passes the connection as both suppliers
+            RequestSocketClientHandler<I, O> handler
+                    = getRequestHandler((SocketConnection) in);
+            ClientMetrics metrics = getMetrics();
+            metrics.getRequests().increment();
+            long start = System.nanoTime();
+            handler.encode(request, out);
+            long sent = System.nanoTime();
+            response = handler.decode(in);
+            long end = System.nanoTime();
+            metrics.getEncodeLatency().record(sent - start);
+            metrics.getResponseLatency().record(end - sent);
+            metrics.getRequestLatency().record(end - start);
         }
 
         public O getResponse() {
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Client side counterpart of the
+ * {@link com.github.autermann.sockets.server.RequestSocketServerBufferCoder}:
+ * encodes requests into and decodes responses from {@link ByteBuffer}s. Use a
+ * {@link BufferHandlerAdapter} to pass a buffer handler where a
+ * {@link RequestSocketClientHandler} is expected.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+public interface RequestSocketClientBufferHandler<I, O> {
+    /**
+     * Encodes the request into {@code out}. If the remaining space of the
+     * buffer is too small, {@code false} is returned and the handler will be
+     * invoked again with a larger, empty buffer.
+     *
+     * @param request the request to encode
+     * @param out     the buffer to encode to
+     *
+     * @return if the request was completely encoded
+     *
+     * @throws IOException if the request could not be encoded
+     */
+    boolean encode(I request, ByteBuffer out) throws IOException;
+
+    /**
+     * Decodes the response from the remaining bytes of {@code in}. If the
+     * buffer does not contain a complete response, {@code null} is returned
+     * and the handler will be invoked again once more bytes are available;
+     * the position of the buffer is reset in this case. A response must not
+     * reference the buffer, as it is reused for the following responses.
+     *
+     * @param in the buffer to decode from
+     *
+     * @return the response or {@code null} if more bytes are needed
+     *
+     * @throws IOException if the input is malformed
+     */
+    O decode(ByteBuffer in) throws IOException;
+}
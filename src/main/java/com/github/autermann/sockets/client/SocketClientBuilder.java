@@ -19,10 +19,19 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.File;
 import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import com.github.autermann.sockets.Correlated;
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.UnixDomainSockets;
 import com.github.autermann.sockets.ssl.SSLClientSocketFactory;
 import com.github.autermann.sockets.ssl.SSLConfiguration;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * TODO JavaDoc
@@ -31,9 +40,35 @@ import com.github.autermann.sockets.ssl.SSLConfiguration;
  */
 public class SocketClientBuilder {
     private static final int DEFAULT_TIMEOUT = 10 * 1000;
+    private static final int DEFAULT_PIPELINE_DEPTH = 64;
+    private static final long DEFAULT_VALIDATION_INTERVAL_MS = 2000;
+    private static final int DEFAULT_EJECTION_THRESHOLD = 5;
+    private static final long DEFAULT_EJECTION_TIME_MS = 30 * 1000;
+    private static final int DEFAULT_VIRTUAL_NODES = 100;
+    private static final double DEFAULT_LOAD_FACTOR = 1.25;
     private InetSocketAddress address;
+    private final Set<InetSocketAddress> addresses = Sets.newLinkedHashSet();
+    private LoadBalancing loadBalancing = LoadBalancing.LEAST_OUTSTANDING;
+    private int ejectionThreshold = DEFAULT_EJECTION_THRESHOLD;
+    private long ejectionTime = TimeUnit.MILLISECONDS
+            .toNanos(DEFAULT_EJECTION_TIME_MS);
+    private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+    private double loadFactor = DEFAULT_LOAD_FACTOR;
     private ClientSocketFactory socketFactory;
+    private File unixDomainSocket;
+    private SocketOptions socketOptions = SocketOptions.defaults();
     private int timeout = DEFAULT_TIMEOUT;
+    private int readTimeout = 0;
+    private int minIdle = 0;
+    private int maxConnections = 0;
+    private long acquireTimeout = 0;
+    private int pipelineDepth = 0;
+    private long maxIdleTime = 0;
+    private long maxLifetime = 0;
+    private long validationInterval = TimeUnit.MILLISECONDS
+            .toNanos(DEFAULT_VALIDATION_INTERVAL_MS);
+    private boolean retry = true;
+    private String jmxName;
 
     public SocketClientBuilder withAddress(InetSocketAddress address) {
         this.address = checkNotNull(address);
@@ -46,15 +81,140 @@ public class SocketClientBuilder {
         return withAddress(new InetSocketAddress(host, port));
     }
 
+    /**
+     * Adds servers a {@link LoadBalancingSocketClient} spreads its requests
+     * over. An address set by {@link #withAddress(InetSocketAddress)} is
+     * one of them.
+     *
+     * @param addresses the addresses of the servers
+     *
+     * @return this
+     *
+     * @see #buildLoadBalanced(RequestSocketClientHandler)
+     */
+    public SocketClientBuilder withAddresses(
+            Iterable<InetSocketAddress> addresses) {
+        for (InetSocketAddress a : addresses) {
+            this.addresses.add(checkNotNull(a));
+        }
+        return this;
+    }
+
+    /**
+     * @param addresses the addresses of the servers
+     *
+     * @return this
+     *
+     * @see #withAddresses(Iterable)
+     */
+    public SocketClientBuilder withAddresses(InetSocketAddress... addresses) {
+        return withAddresses(Lists.newArrayList(addresses));
+    }
+
+    /**
+     * Sets the load measure a {@link LoadBalancingSocketClient} chooses
+     * servers by. Defaults to {@link LoadBalancing#LEAST_OUTSTANDING}.
+     *
+     * @param loadBalancing the load measure
+     *
+     * @return this
+     */
+    public SocketClientBuilder withLoadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = checkNotNull(loadBalancing);
+        return this;
+    }
+
+    /**
+     * Sets when a {@link LoadBalancingSocketClient} stops choosing a failing
+     * server. Defaults to 5 consecutive failures and 30 seconds.
+     *
+     * @param failures the number of consecutive failures after which a
+     *                 server is ejected, {@code 0} to never eject servers
+     * @param time     the time a server is ejected
+     * @param unit     the unit of {@code time}
+     *
+     * @return this
+     */
+    public SocketClientBuilder withEjection(int failures, long time,
+                                           TimeUnit unit) {
+        checkArgument(failures >= 0);
+        checkArgument(time >= 0);
+        this.ejectionThreshold = failures;
+        this.ejectionTime = unit.toNanos(time);
+        return this;
+    }
+
+    /**
+     * Configures the hash ring of a {@link ConsistentHashSocketClient}.
+     * More points per server spread the keys more evenly; a lower load
+     * factor spreads the load of popular keys at the cost of locality.
+     * Defaults to 100 points and a load factor of 1.25.
+     *
+     * @param virtualNodes the number of points of each server on the ring
+     * @param loadFactor   the factor by which the outstanding requests of a
+     *                     server may exceed the average before requests are
+     *                     sent to the next server, at least {@code 1}
+     *
+     * @return this
+     */
+    public SocketClientBuilder withHashRing(int virtualNodes,
+                                           double loadFactor) {
+        checkArgument(virtualNodes > 0);
+        checkArgument(loadFactor >= 1);
+        this.virtualNodes = virtualNodes;
+        this.loadFactor = loadFactor;
+        return this;
+    }
+
     public SocketClientBuilder withSocketFactory(
             ClientSocketFactory socketFactory) {
         this.socketFactory = checkNotNull(socketFactory);
+        this.unixDomainSocket = null;
+        return this;
+    }
+
+    /**
+     * Sets the options applied to every connection of the client, e.g.
+     * {@link SocketOptions#lowLatency()}.
+     *
+     * @param options the socket options
+     *
+     * @return this
+     */
+    public SocketClientBuilder withSocketOptions(SocketOptions options) {
+        this.socketOptions = checkNotNull(options);
+        return this;
+    }
+
+    /**
+     * Connects to a server listening on a Unix domain socket file instead of
+     * a TCP address. If no address is set, the address of the client is an
+     * unresolved address named after the file. Requires Java 16 and can not
+     * be combined with read timeouts; setting a socket factory or SSL
+     * configuration afterwards replaces the Unix domain socket.
+     *
+     * @param path the socket file
+     *
+     * @return this
+     *
+     * @throws UnsupportedOperationException if the running JVM does not
+     *                                       support Unix domain sockets
+     * @see UnixDomainSockets
+     */
+    public SocketClientBuilder withUnixDomainSocket(File path) {
+        if (!UnixDomainSockets.isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Unix domain sockets require Java 16");
+        }
+        this.socketFactory = ClientSocketFactory.forUnixDomainSocket(path);
+        this.unixDomainSocket = path;
         return this;
     }
 
     public SocketClientBuilder withSSL(SSLConfiguration config) {
         if (config == null) {
             this.socketFactory = null;
+            this.unixDomainSocket = null;
             return this;
         } else {
             return withSocketFactory(new SSLClientSocketFactory(config));
@@ -67,26 +227,496 @@ public class SocketClientBuilder {
         return this;
     }
 
+    /**
+     * Sets the time a client waits for data from the server before the
+     * request fails with a {@link java.net.SocketTimeoutException} and the
+     * connection is closed.
+     *
+     * @param readTimeout the timeout in milliseconds, {@code 0} to wait
+     *                    forever
+     *
+     * @return this
+     */
+    public SocketClientBuilder withReadTimeout(int readTimeout) {
+        checkArgument(readTimeout >= 0);
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Pools connections, so that a single client can be used by many threads
+     * concurrently. Threads wait up to the connection timeout for a
+     * connection if all are borrowed.
+     *
+     * @param maxConnections the maximum number of open connections
+     *
+     * @return this
+     *
+     * @see #withConnectionPool(int, int, long, TimeUnit)
+     */
+    public SocketClientBuilder withConnectionPool(int maxConnections) {
+        checkArgument(maxConnections > 0);
+        this.minIdle = 0;
+        this.maxConnections = maxConnections;
+        this.acquireTimeout = 0;
+        return this;
+    }
+
+    /**
+     * Pools connections, so that a single client can be used by many threads
+     * concurrently. Every exchange borrows a connection and returns it once
+     * it completed; connections are discarded if the exchange failed.
+     * Threads waiting for a connection are served in FIFO order. The
+     * {@code minIdle} connections are opened when the client is built.
+     *
+     * @param minIdle        the number of idle connections to keep open
+     * @param maxConnections the maximum number of open connections
+     * @param acquireTimeout the time to wait for a connection if all are
+     *                       borrowed
+     * @param unit           the unit of {@code acquireTimeout}
+     *
+     * @return this
+     *
+     * @see StreamingSocketClient#getConnectionPool()
+     */
+    public SocketClientBuilder withConnectionPool(int minIdle,
+                                                  int maxConnections,
+                                                  long acquireTimeout,
+                                                  TimeUnit unit) {
+        checkArgument(maxConnections > 0);
+        checkArgument(minIdle >= 0 && minIdle <= maxConnections);
+        checkArgument(acquireTimeout > 0);
+        this.minIdle = minIdle;
+        this.maxConnections = maxConnections;
+        this.acquireTimeout = unit.toNanos(acquireTimeout);
+        return this;
+    }
+
+    /**
+     * Closes connections that were idle longer than the specified time
+     * instead of using them, e.g. to stay below the idle timeout of the
+     * server.
+     *
+     * @param maxIdleTime the maximum idle time, {@code 0} for no limit
+     * @param unit        the unit of {@code maxIdleTime}
+     *
+     * @return this
+     */
+    public SocketClientBuilder withMaxIdleTime(long maxIdleTime,
+                                               TimeUnit unit) {
+        checkArgument(maxIdleTime >= 0);
+        this.maxIdleTime = unit.toNanos(maxIdleTime);
+        return this;
+    }
+
+    /**
+     * Replaces connections older than the specified time once they are
+     * idle, e.g. to spread connections over the instances behind a load
+     * balancer.
+     *
+     * @param maxLifetime the maximum lifetime, {@code 0} for no limit
+     * @param unit        the unit of {@code maxLifetime}
+     *
+     * @return this
+     */
+    public SocketClientBuilder withMaxConnectionLifetime(long maxLifetime,
+                                                        TimeUnit unit) {
+        checkArgument(maxLifetime >= 0);
+        this.maxLifetime = unit.toNanos(maxLifetime);
+        return this;
+    }
+
+    /**
+     * Sets the idle time after which a connection is checked for having been
+     * closed by the server before it is used. The check reads from the
+     * connection with a timeout of 1 ms, or without blocking if the socket
+     * has a channel. Connections with unexpected input are never used.
+     * Defaults to 2 seconds.
+     *
+     * @param interval the idle time, {@code 0} to check before every use
+     * @param unit     the unit of {@code interval}
+     *
+     * @return this
+     *
+     * @see #withoutConnectionValidation()
+     */
+    public SocketClientBuilder withValidationAfterInactivity(long interval,
+                                                            TimeUnit unit) {
+        checkArgument(interval >= 0);
+        this.validationInterval = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Disables checking idle connections for having been closed by the
+     * server.
+     *
+     * @return this
+     *
+     * @see #withValidationAfterInactivity(long, TimeUnit)
+     */
+    public SocketClientBuilder withoutConnectionValidation() {
+        this.validationInterval = -1;
+        return this;
+    }
+
+    /**
+     * Disables retrying failed exchanges. By default an exchange failing on a
+     * reused connection is retried once on a new connection if nothing was
+     * sent, or if the request is declared {@link Idempotency idempotent}.
+     * Pipelined requests are never retried.
+     *
+     * @return this
+     */
+    public SocketClientBuilder withoutRetries() {
+        this.retry = false;
+        return this;
+    }
+
+    /**
+     * Pipelines the requests of a {@link RequestSocketClient}: requests of
+     * all threads are sent over a single connection without waiting for the
+     * previous responses, up to {@code depth} outstanding requests. A reader
+     * thread decodes the responses, which the server has to send in request
+     * order unless the client is
+     * {@link #buildMultiplexed(RequestSocketClientHandler) multiplexed}. The
+     * handler has to support concurrent calls to {@code encode} and
+     * {@code decode}. Can not be combined with a connection pool.
+     *
+     * @param depth the maximum number of outstanding requests
+     *
+     * @return this
+     *
+     * @see RequestSocketClient#execAsync(Object)
+     */
+    public SocketClientBuilder withPipelining(int depth) {
+        checkArgument(depth > 0);
+        this.pipelineDepth = depth;
+        return this;
+    }
+
+    /**
+     * Exports the metrics of the client as an MBean named
+     * {@code com.github.autermann.sockets:type=SocketClient,name=<name>}
+     * until it is closed.
+     *
+     * @param name the name of the client
+     *
+     * @return this
+     *
+     * @see StreamingSocketClient#getMetrics()
+     */
+    public SocketClientBuilder withJmx(String name) {
+        this.jmxName = checkNotNull(name);
+        return this;
+    }
+
+    private <T extends StreamingSocketClient> T initialize(T client) {
+        return initialize(client, jmxName);
+    }
+
+    private <T extends StreamingSocketClient> T initialize(T client,
+                                                            String name) {
+        if (name != null) {
+            client.exportMetrics(name);
+        }
+        if (client.getConnectionPool() != null) {
+            client.getConnectionPool().fill();
+        }
+        return client;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    ClientSocketFactory getSocketFactory() {
+        return socketFactory;
+    }
+
+    SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    int getTimeout() {
+        return timeout;
+    }
+
+    int getReadTimeout() {
+        return readTimeout;
+    }
+
+    int getMinIdle() {
+        return minIdle;
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * @return the idle time in nanoseconds after which connections are
+     *         validated, or a negative value if they are not
+     */
+    long getValidationInterval() {
+        return validationInterval;
+    }
+
+    boolean isRetry() {
+        return retry;
+    }
+
+    long getAcquireTimeout() {
+        if (acquireTimeout > 0) {
+            return acquireTimeout;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
     private void validate() {
+        if (unixDomainSocket != null) {
+            checkState(readTimeout == 0,
+                       "Unix domain sockets do not support read timeouts");
+            if (address == null) {
+                address = InetSocketAddress
+                        .createUnresolved(unixDomainSocket.getPath(), 0);
+            }
+        }
         checkState(address != null);
+        validateConnections();
+    }
+
+    private void validateConnections() {
+        checkState(pipelineDepth <= 0 || maxConnections <= 0,
+                   "Pipelining can not be combined with a connection pool");
         if (socketFactory == null) {
             socketFactory = ClientSocketFactory.getDefault();
         }
     }
 
+    private void validateLoadBalanced() {
+        checkState(unixDomainSocket == null,
+                   "Unix domain sockets can not be load balanced");
+        checkState(address != null || !addresses.isEmpty());
+        checkState(pipelineDepth > 0 || maxConnections > 0,
+                   "Load balancing requires a connection pool or pipelining");
+        validateConnections();
+    }
+
     public <I, O> RequestSocketClient<I, O> build(
             RequestSocketClientHandler<I, O> handler) {
         checkNotNull(handler);
         validate();
-        return new RequestSocketClient<I, O>(handler, address, socketFactory, timeout);
+        return initialize(new RequestSocketClient<I, O>(
+                this, address, handler, null, pipelineDepth));
+    }
+
+    /**
+     * Builds a client spreading its requests over all configured servers.
+     * Each server gets its own connection pool or pipelined connection, so
+     * either has to be configured.
+     *
+     * @param <I>     the request type
+     * @param <O>     the response type
+     * @param handler the handler
+     *
+     * @return the client
+     *
+     * @see #withAddresses(Iterable)
+     * @see #withLoadBalancing(LoadBalancing)
+     * @see #withEjection(int, long, TimeUnit)
+     */
+    public <I, O> LoadBalancingSocketClient<I, O> buildLoadBalanced(
+            RequestSocketClientHandler<I, O> handler) {
+        checkNotNull(handler);
+        validateLoadBalanced();
+        return new LoadBalancingSocketClient<I, O>(
+                getAddresses(), new BackendFactory<I, O>(handler),
+                loadBalancing);
+    }
+
+    /**
+     * Builds a client routing requests with the same key to the same server
+     * using a consistent hash ring of all configured servers. Each server
+     * gets its own connection pool or pipelined connection, so either has to
+     * be configured.
+     *
+     * @param <I>         the request type
+     * @param <O>         the response type
+     * @param handler     the handler
+     * @param keyFunction the function extracting the key of a request,
+     *                    returning {@code null} for requests that can be
+     *                    sent to any server
+     *
+     * @return the client
+     *
+     * @see #withAddresses(Iterable)
+     * @see #withHashRing(int, double)
+     * @see #withEjection(int, long, TimeUnit)
+     */
+    public <I, O> ConsistentHashSocketClient<I, O> buildConsistentHash(
+            RequestSocketClientHandler<I, O> handler,
+            Function<? super I, String> keyFunction) {
+        checkNotNull(handler);
+        checkNotNull(keyFunction);
+        validateLoadBalanced();
+        return new ConsistentHashSocketClient<I, O>(
+                getAddresses(), new BackendFactory<I, O>(handler),
+                loadBalancing, keyFunction, virtualNodes, loadFactor);
+    }
+
+    /**
+     * Builds a consistent hash client using a
+     * {@link RequestSocketClientBufferHandler} through a
+     * {@link BufferHandlerAdapter}.
+     *
+     * @param <I>         the request type
+     * @param <O>         the response type
+     * @param handler     the handler
+     * @param keyFunction the function extracting the key of a request
+     *
+     * @return the client
+     *
+     * @see #buildConsistentHash(RequestSocketClientHandler, Function)
+     */
+    public <I, O> ConsistentHashSocketClient<I, O> buildConsistentHash(
+            RequestSocketClientBufferHandler<I, O> handler,
+            Function<? super I, String> keyFunction) {
+        return buildConsistentHash(new BufferHandlerAdapter<I, O>(handler),
+                                   keyFunction);
+    }
+
+    private Set<InetSocketAddress> getAddresses() {
+        Set<InetSocketAddress> all = Sets.newLinkedHashSet();
+        if (address != null) {
+            all.add(address);
+        }
+        all.addAll(addresses);
+        return all;
+    }
+
+    /**
+     * Builds a load balancing client using a
+     * {@link RequestSocketClientBufferHandler} through a
+     * {@link BufferHandlerAdapter}.
+     *
+     * @param <I>     the request type
+     * @param <O>     the response type
+     * @param handler the handler
+     *
+     * @return the client
+     *
+     * @see #buildLoadBalanced(RequestSocketClientHandler)
+     */
+    public <I, O> LoadBalancingSocketClient<I, O> buildLoadBalanced(
+            RequestSocketClientBufferHandler<I, O> handler) {
+        return buildLoadBalanced(new BufferHandlerAdapter<I, O>(handler));
+    }
+
+    /**
+     * Builds a multiplexed client: every request is tagged with a unique
+     * correlation id and responses are matched by their id, so that many
+     * requests can be outstanding on a single connection and the server may
+     * answer them in any order. Enables pipelining with a depth of
+     * {@value #DEFAULT_PIPELINE_DEPTH} unless configured otherwise.
+     *
+     * @param <I>     the request type
+     * @param <O>     the response type
+     * @param handler the handler encoding and decoding the tagged messages,
+     *                e.g. a
+     *                {@link com.github.autermann.sockets.framing.FrameCodec#asCorrelatedClientHandler()
+     *                correlated frame codec}
+     *
+     * @return the client
+     *
+     * @see #withPipelining(int)
+     * @see com.github.autermann.sockets.server.SocketServerBuilder#withOutOfOrderResponses()
+     */
+    public <I, O> RequestSocketClient<I, O> buildMultiplexed(
+            RequestSocketClientHandler<Correlated<I>, Correlated<O>> handler) {
+        checkNotNull(handler);
+        validate();
+        return initialize(new RequestSocketClient<I, O>(
+                this, address, null, handler, pipelineDepth > 0 ? pipelineDepth
+                                     : DEFAULT_PIPELINE_DEPTH));
+    }
+
+    /**
+     * Builds a multiplexed client using a
+     * {@link RequestSocketClientBufferHandler} through a
+     * {@link BufferHandlerAdapter}.
+     *
+     * @param <I>     the request type
+     * @param <O>     the response type
+     * @param handler the handler encoding and decoding the tagged messages
+     *
+     * @return the client
+     *
+     * @see #buildMultiplexed(RequestSocketClientHandler)
+     */
+    public <I, O> RequestSocketClient<I, O> buildMultiplexed(
+            RequestSocketClientBufferHandler<Correlated<I>, Correlated<O>> handler) {
+        return buildMultiplexed(
+                new BufferHandlerAdapter<Correlated<I>, Correlated<O>>(handler));
+    }
+
+    /**
+     * Builds a client using a {@link RequestSocketClientBufferHandler}
+     * through a {@link BufferHandlerAdapter}.
+     *
+     * @param <I>     the request type
+     * @param <O>     the response type
+     * @param handler the handler
+     *
+     * @return the client
+     */
+    public <I, O> RequestSocketClient<I, O> build(
+            RequestSocketClientBufferHandler<I, O> handler) {
+        return build(new BufferHandlerAdapter<I, O>(handler));
     }
 
     public StreamingSocketClient build() {
         validate();
-        return new StreamingSocketClient(address, socketFactory, timeout);
+        return initialize(new StreamingSocketClient(this, address));
     }
 
     public static SocketClientBuilder create() {
         return new SocketClientBuilder();
     }
+
+    /**
+     * Creates the servers of a load balancing client, also those added
+     * later, with the configuration of this builder.
+     */
+    private class BackendFactory<I, O>
+            implements Function<InetSocketAddress, Backend<I, O>> {
+        private final RequestSocketClientHandler<I, O> handler;
+
+        BackendFactory(RequestSocketClientHandler<I, O> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public Backend<I, O> apply(InetSocketAddress address) {
+            RequestSocketClientHandler<I, O> h = handler;
+            if (h instanceof BufferHandlerAdapter) {
+                // stateful, and closed with the client of the server
+                h = ((BufferHandlerAdapter<I, O>) h).copy();
+            }
+            RequestSocketClient<I, O> client = initialize(
+                    new RequestSocketClient<I, O>(
+                            SocketClientBuilder.this, address, h, null,
+                            pipelineDepth),
+                    jmxName == null ? null : jmxName + "-" + address);
+            return new Backend<I, O>(client, ejectionThreshold, ejectionTime);
+        }
+    }
 }
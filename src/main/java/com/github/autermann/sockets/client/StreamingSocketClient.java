@@ -18,20 +18,36 @@ package com.github.autermann.sockets.client;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.metrics.Gauge;
+import com.github.autermann.sockets.metrics.JfrEvents;
+import com.github.autermann.sockets.metrics.JmxMetrics;
+import com.github.autermann.sockets.ssl.SSLUtils;
 import com.google.common.io.InputSupplier;
 import com.google.common.io.OutputSupplier;
 
 /**
- * TODO JavaDoc
+ * A client exchanging data with a socket server. Without a connection pool a
+ * client holds a single connection and must not be used by multiple threads
+ * concurrently; with a pool every exchange borrows a connection of its own.
  *
  * @author Christian Autermann <autermann@uni-muenster.de>
  */
@@ -40,22 +56,105 @@ public class StreamingSocketClient {
     private static final Logger log = LoggerFactory
             .getLogger(SocketClientBuilder.class);
     private final ClientSocketFactory socketFactory;
+    private final SocketOptions socketOptions;
     private final InetSocketAddress address;
     private final int timeOut;
+    private final int readTimeout;
+    private final long maxIdleTime;
+    private final long maxLifetime;
+    private final long validationInterval;
+    private final boolean retry;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final ConnectionPool<SocketConnection> pool;
+    private ObjectName mbean;
     private SocketConnection con;
-    StreamingSocketClient(InetSocketAddress address,
-                          ClientSocketFactory socketFactory,
-                          int timeout) {
+
+    /**
+     * @param builder the builder holding the configuration
+     * @param address the address of the server
+     */
+    StreamingSocketClient(SocketClientBuilder builder,
+                          InetSocketAddress address) {
         this.address = checkNotNull(address);
-        this.socketFactory = checkNotNull(socketFactory);
-        checkArgument(timeout > 0);
-        this.timeOut = timeout;
+        this.socketFactory = checkNotNull(builder.getSocketFactory());
+        this.socketOptions = checkNotNull(builder.getSocketOptions());
+        checkArgument(builder.getTimeout() > 0);
+        checkArgument(builder.getReadTimeout() >= 0);
+        this.timeOut = builder.getTimeout();
+        this.readTimeout = builder.getReadTimeout();
+        this.maxIdleTime = builder.getMaxIdleTime();
+        this.maxLifetime = builder.getMaxLifetime();
+        this.validationInterval = builder.getValidationInterval();
+        this.retry = builder.isRetry();
+        if (builder.getMaxConnections() > 0) {
+            this.pool = new Pool(builder.getMinIdle(),
+                                 builder.getMaxConnections(),
+                                 builder.getAcquireTimeout());
+            registerPoolMetrics();
+        } else {
+            this.pool = null;
+        }
+    }
+
+    private void registerPoolMetrics() {
+        metrics.getRegistry().register("pool.connections", new Gauge() {
+            @Override
+            public long getValue() {
+                return pool.getConnections();
+            }
+        });
+        metrics.getRegistry().register("pool.idle", new Gauge() {
+            @Override
+            public long getValue() {
+                return pool.getIdleConnections();
+            }
+        });
+        metrics.getRegistry().register("pool.waiters", new Gauge() {
+            @Override
+            public long getValue() {
+                return pool.getWaiters();
+            }
+        });
+        metrics.getRegistry().register("pool.timeouts", new Gauge() {
+            @Override
+            public long getValue() {
+                return pool.getTimeouts();
+            }
+        });
     }
 
     public int getConnectionTimeout() {
         return timeOut;
     }
 
+    /**
+     * @return the metrics of this client
+     *
+     * @see SocketClientBuilder#withJmx(String)
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Exports the metrics as an MBean until the client is closed.
+     *
+     * @param name the name of the client
+     */
+    synchronized void exportMetrics(String name) {
+        JmxMetrics.unregister(mbean);
+        this.mbean = JmxMetrics.register("SocketClient", name,
+                                         metrics.getRegistry());
+    }
+
+    /**
+     * @return the read timeout in milliseconds, {@code 0} if reads wait
+     *         forever
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
     public InetSocketAddress getAddress() {
         return address;
     }
@@ -64,48 +163,325 @@ public class StreamingSocketClient {
         return socketFactory;
     }
 
+    public SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    /**
+     * @return the connection pool, or {@code null} if this client uses a
+     *         single connection
+     *
+     * @see SocketClientBuilder#withConnectionPool(int, int, long, TimeUnit)
+     */
+    public ConnectionPool<?> getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * @param unit the unit of the returned time
+     *
+     * @return the time after which an idle connection is closed, or
+     *         {@code 0} if idle connections are kept
+     */
+    public long getMaxIdleTime(TimeUnit unit) {
+        return unit.convert(maxIdleTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit of the returned time
+     *
+     * @return the time after which a connection is replaced, or {@code 0} if
+     *         connections live forever
+     */
+    public long getMaxLifetime(TimeUnit unit) {
+        return unit.convert(maxLifetime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return if failed requests are retried on a new connection
+     *
+     * @see SocketClientBuilder#withoutRetries()
+     */
+    public boolean isRetrying() {
+        return retry;
+    }
+
+    /**
+     * Executes an exchange. If the exchange fails on a reused connection
+     * without sending anything, e.g. because the server closed the idle
+     * connection, it is retried once on a new connection.
+     *
+     * @param handler the handler
+     *
+     * @throws IOException if the exchange failed
+     */
     public void exec(StreamingSocketClientHandler handler) throws IOException {
+        exec(handler, false);
+    }
+
+    /**
+     * Executes an exchange.
+     *
+     * @param handler    the handler
+     * @param idempotent if the exchange may be retried even if it was
+     *                   partially sent
+     *
+     * @throws IOException if the exchange failed
+     */
+    void exec(StreamingSocketClientHandler handler, boolean idempotent)
+            throws IOException {
+        Object event = JfrEvents.beginExec();
+        try {
+            SocketConnection connection = acquire();
+            boolean completed = false;
+            try {
+                long read = connection.bytesRead;
+                long written = connection.bytesWritten;
+                try {
+                    exec(connection, handler);
+                    completed = true;
+                } catch (IOException e) {
+                    boolean sent = connection.bytesRead != read ||
+                                   connection.bytesWritten != written;
+                    if (!isRetryable(connection, idempotent || !sent, e)) {
+                        throw e;
+                    }
+                    log.debug("Retrying on a new connection: {}",
+                              e.getMessage());
+                    metrics.getRetries().increment();
+                    connection.close();
+                    release(connection, false);
+                    // must not be released again if no new one is acquired
+                    connection = null;
+                    if (pool != null) {
+                        // the other idle connections are likely stale, too
+                        pool.evictIdle();
+                    }
+                    connection = acquire();
+                    exec(connection, handler);
+                    completed = true;
+                }
+            } finally {
+                if (connection != null) {
+                    release(connection, completed);
+                }
+            }
+        } finally {
+            JfrEvents.endExec(event, getAddress());
+        }
+    }
+
+    /**
+     * @param connection the connection the exchange failed on
+     * @param safe       if the exchange can be repeated
+     * @param e          the failure
+     *
+     * @return if the exchange should be retried on a new connection
+     */
+    private boolean isRetryable(SocketConnection connection, boolean safe,
+                                IOException e) {
+        // a new connection or a slow server are not stale connections
+        return retry && safe && connection.isReused() &&
+               !(e instanceof SocketTimeoutException);
+    }
+
+    private SocketConnection acquire() throws IOException {
+        if (pool != null) {
+            return pool.borrow();
+        }
+        if (con != null && !con.isClosed() && !con.isUsable()) {
+            metrics.getStaleConnections().increment();
+            con.close();
+        }
         if (con == null || con.isClosed()) {
             con = new SocketConnection();
         }
-        handler.handle(con, con);
+        return con;
+    }
+
+    private void release(SocketConnection connection, boolean completed) {
+        if (pool != null) {
+            // a failed exchange may leave unread data on the connection
+            pool.giveBack(connection, completed && !connection.isClosed());
+        }
+    }
+
+    private void exec(SocketConnection con,
+                      StreamingSocketClientHandler handler)
+            throws IOException {
+        try {
+            handler.handle(con, con);
+            con.completed();
+        } catch (SocketTimeoutException e) {
+            metrics.getErrors().increment();
+            // the rest of the response may still arrive
+            con.close();
+            throw e;
+        } catch (IOException e) {
+            metrics.getErrors().increment();
+            throw e;
+        }
     }
 
     public void close() {
         if (con != null) {
             con.close();
         }
+        if (pool != null) {
+            pool.close();
+        }
+        synchronized (this) {
+            if (mbean != null) {
+                JmxMetrics.unregister(mbean);
+                mbean = null;
+            }
+        }
     }
 
     protected class SocketConnection implements InputSupplier<InputStream>,
                                                 OutputSupplier<OutputStream> {
         private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final long created = System.nanoTime();
+        private long lastUsed = created;
+        private int exchanges = 0;
+        private long bytesRead = 0;
+        private long bytesWritten = 0;
+        private Object attachment;
 
         SocketConnection() throws IOException {
             this.socket = getSocketConnection()
-                    .createSocket(getAddress(), getConnectionTimeout());
+                    .createSocket(getAddress(), getConnectionTimeout(),
+                                  getSocketOptions());
+            metrics.getOpenedConnections().increment();
+            try {
+                this.socket.setSoTimeout(getReadTimeout());
+                SSLUtils.handshake(this.socket);
+                this.in = new MeteredInputStream(socket.getInputStream(),
+                                                 this);
+                this.out = new MeteredOutputStream(socket.getOutputStream(),
+                                                   this);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return if an exchange was completed on this connection before
+         */
+        boolean isReused() {
+            return exchanges > 0;
+        }
+
+        void completed() {
+            ++exchanges;
+            lastUsed = System.nanoTime();
+        }
+
+        /**
+         * Checks if an idle connection can be used for the next exchange.
+         * Connections exceeding their maximum idle time or lifetime are not
+         * used. Unexpected input, e.g. a close notification, or the end of the
+         * stream show that the server closed the connection. To check for
+         * the latter, a connection idle longer than the validation interval is
+         * read with a timeout of 1 ms, or without blocking if the socket has a
+         * channel.
+         *
+         * @return if the connection is usable
+         */
+        boolean isUsable() {
+            if (isClosed()) {
+                return false;
+            }
+            long now = System.nanoTime();
+            long idle = now - lastUsed;
+            if ((maxLifetime > 0 && now - created > maxLifetime) ||
+                (maxIdleTime > 0 && idle > maxIdleTime)) {
+                return false;
+            }
+            try {
+                if (in.available() > 0) {
+                    return false;
+                }
+                if (validationInterval < 0 || idle < validationInterval) {
+                    return true;
+                }
+                return !isEndOfStream();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return if the server closed the connection or sent unexpected
+         *         data
+         *
+         * @throws IOException if the connection is broken
+         */
+        private boolean isEndOfStream() throws IOException {
+            SocketChannel channel = socket.getChannel();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                try {
+                    return channel.read(ByteBuffer.allocate(1)) != 0;
+                } finally {
+                    channel.configureBlocking(true);
+                }
+            }
+            try {
+                socket.setSoTimeout(1);
+            } catch (SocketException e) {
+                // can not be checked
+                return false;
+            }
+            try {
+                socket.getInputStream().read();
+                return true;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } finally {
+                socket.setSoTimeout(getReadTimeout());
+            }
         }
 
         private Socket getSocket() {
             return socket;
         }
 
+        /**
+         * @return the state a client keeps for this connection, or
+         *         {@code null}
+         */
+        Object getAttachment() {
+            return attachment;
+        }
+
+        void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
         @Override
         public InputStream getInput() throws IOException {
-            return getSocket().getInputStream();
+            return in;
         }
 
         @Override
         public OutputStream getOutput() throws IOException {
-            return getSocket().getOutputStream();
+            return out;
         }
 
         public void close() {
+            if (getSocket().isClosed()) {
+                return;
+            }
             try {
                 getSocket().close();
             } catch (IOException e) {
                 log.error("Error closing socket", e);
             }
+            metrics.getClosedConnections().increment();
         }
 
         public boolean isClosed() {
@@ -117,4 +493,83 @@ public class StreamingSocketClient {
         }
     }
 
+    private class Pool extends ConnectionPool<SocketConnection> {
+        Pool(int minIdle, int maxConnections, long acquireTimeout) {
+            super(minIdle, maxConnections, acquireTimeout);
+        }
+
+        @Override
+        SocketConnection open() throws IOException {
+            return new SocketConnection();
+        }
+
+        @Override
+        boolean isReusable(SocketConnection connection) {
+            if (connection.isUsable()) {
+                return true;
+            }
+            if (!connection.isClosed()) {
+                metrics.getStaleConnections().increment();
+            }
+            return false;
+        }
+
+        @Override
+        void close(SocketConnection connection) {
+            connection.close();
+        }
+    }
+
+    private class MeteredInputStream extends FilterInputStream {
+        private final SocketConnection connection;
+
+        MeteredInputStream(InputStream in, SocketConnection connection) {
+            super(in);
+            this.connection = connection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                metrics.getBytesRead().increment();
+                ++connection.bytesRead;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                metrics.getBytesRead().add(read);
+                connection.bytesRead += read;
+            }
+            return read;
+        }
+    }
+
+    private class MeteredOutputStream extends FilterOutputStream {
+        private final SocketConnection connection;
+
+        MeteredOutputStream(OutputStream out, SocketConnection connection) {
+            super(out);
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            metrics.getBytesWritten().increment();
+            ++connection.bytesWritten;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            metrics.getBytesWritten().add(len);
+            connection.bytesWritten += len;
+        }
+    }
+
 }
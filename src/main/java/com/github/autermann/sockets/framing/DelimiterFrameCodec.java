@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.framing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Frames terminated by a delimiter, e.g. a line feed. The delimiter is not
+ * part of the decoded payload and must not occur in an encoded payload.
+ * Correlation ids are written as decimal digits followed by a space, as a
+ * binary id could contain the delimiter.
+ * <p/>
+ * As codecs are stateless, an incomplete frame is scanned again once more
+ * input is available; the maximum frame size also bounds this effort.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class DelimiterFrameCodec extends FrameCodec {
+    private static final byte ID_SEPARATOR = ' ';
+    private final byte[] delimiter;
+
+    public DelimiterFrameCodec(byte[] delimiter) {
+        this(delimiter, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public DelimiterFrameCodec(byte[] delimiter, int maxFrameSize) {
+        super(maxFrameSize);
+        checkArgument(checkNotNull(delimiter).length > 0);
+        this.delimiter = delimiter.clone();
+    }
+
+    /**
+     * @return a codec for frames terminated by a line feed
+     */
+    public static DelimiterFrameCodec lines() {
+        return new DelimiterFrameCodec(new byte[] { '\n' });
+    }
+
+    @Override
+    public ByteBuffer decodeFrame(ByteBuffer in) throws IOException {
+        int start = in.position();
+        int end = in.limit() - delimiter.length;
+        int maxEnd = start + getMaxFrameSize();
+        byte first = delimiter[0];
+        for (int i = start; i <= end; ++i) {
+            if (in.get(i) == first && matches(in, i)) {
+                ByteBuffer frame = slice(in, i - start);
+                in.position(in.position() + delimiter.length);
+                return frame;
+            }
+            if (i == maxEnd) {
+                break;
+            }
+        }
+        checkFrameSize(Math.max(0, in.remaining() - delimiter.length + 1));
+        return null;
+    }
+
+    private boolean matches(ByteBuffer in, int index) {
+        for (int j = 1; j < delimiter.length; ++j) {
+            if (in.get(index + j) != delimiter[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean encodeFrame(ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        int length = payload.remaining();
+        checkFrameSize(length);
+        if (out.remaining() < length + delimiter.length) {
+            return false;
+        }
+        out.put(payload.duplicate());
+        out.put(delimiter);
+        return true;
+    }
+
+    @Override
+    public boolean encodeFrame(long id, ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        checkArgument(id >= 0, "Negative correlation id: %s", id);
+        int digits = 1;
+        for (long value = id / 10; value > 0; value /= 10) {
+            ++digits;
+        }
+        int length = digits + 1 + payload.remaining();
+        checkFrameSize(length);
+        if (out.remaining() < length + delimiter.length) {
+            return false;
+        }
+        int position = out.position();
+        long value = id;
+        for (int i = digits - 1; i >= 0; --i) {
+            out.put(position + i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(position + digits);
+        out.put(ID_SEPARATOR);
+        out.put(payload.duplicate());
+        out.put(delimiter);
+        return true;
+    }
+
+    @Override
+    public long decodeCorrelationId(ByteBuffer frame) throws IOException {
+        long id = 0;
+        int digits = 0;
+        while (frame.hasRemaining()) {
+            byte b = frame.get();
+            if (b == ID_SEPARATOR && digits > 0) {
+                return id;
+            }
+            if (b < '0' || b > '9' ||
+                id > (Long.MAX_VALUE - (b - '0')) / 10) {
+                break;
+            }
+            id = id * 10 + (b - '0');
+            ++digits;
+        }
+        throw new IOException("Frame does not start with a correlation id");
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.framing;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.github.autermann.sockets.Correlated;
+import com.github.autermann.sockets.client.RequestSocketClientBufferHandler;
+import com.github.autermann.sockets.server.RequestSocketServerBufferCoder;
+
+/**
+ * Base class of codecs that split a byte stream into frames. The payload of
+ * a frame is represented as a {@link ByteBuffer}; frames larger than the
+ * maximum frame size are rejected with a {@link FrameTooLongException} as soon
+ * as their size is known, before they are buffered.
+ * <p/>
+ * A codec is stateless and can be shared. It is used through one of its
+ * views: {@link #asServerCoder()} decodes requests as slices of the
+ * connection's (pooled) input buffer without copying, which pipelining
+ * servers retain until the requests are handled, while
+ * {@link #asClientHandler()} copies responses, as they outlive the buffer.
+ * The correlated views prefix every payload with a correlation id, for
+ * multiplexing clients and servers answering requests out of order.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public abstract class FrameCodec {
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    /**
+     * The length of a binary correlation id.
+     */
+    protected static final int CORRELATION_ID_LENGTH = 8;
+    private final int maxFrameSize;
+    private final ServerCoder serverCoder = new ServerCoder();
+    private final ClientHandler clientHandler = new ClientHandler();
+    private final CorrelatedServerCoder correlatedServerCoder
+            = new CorrelatedServerCoder();
+    private final CorrelatedClientHandler correlatedClientHandler
+            = new CorrelatedClientHandler();
+
+    protected FrameCodec(int maxFrameSize) {
+        checkArgument(maxFrameSize > 0);
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * Decodes the next frame from the remaining bytes of {@code in}.
+     *
+     * @param in the buffer
+     *
+     * @return the payload as a slice of {@code in}, or {@code null} if the
+     *         frame is not complete
+     *
+     * @throws IOException if the frame is malformed or too long
+     */
+    public abstract ByteBuffer decodeFrame(ByteBuffer in) throws IOException;
+
+    /**
+     * Encodes the remaining bytes of {@code payload} as a frame. The position
+     * of {@code payload} is not modified.
+     *
+     * @param payload the payload
+     * @param out     the buffer to encode to
+     *
+     * @return {@code false} if the remaining space of {@code out} is too small
+     *
+     * @throws IOException if the payload is too long
+     */
+    public abstract boolean encodeFrame(ByteBuffer payload, ByteBuffer out)
+            throws IOException;
+
+    /**
+     * Encodes a frame containing a correlation id followed by the remaining
+     * bytes of {@code payload}. The default implementation prepends the id
+     * as 8 bytes in network byte order by copying the payload; subclasses
+     * should write the id directly.
+     *
+     * @param id      the correlation id
+     * @param payload the payload
+     * @param out     the buffer to encode to
+     *
+     * @return {@code false} if the remaining space of {@code out} is too small
+     *
+     * @throws IOException if the payload is too long
+     * @see #decodeCorrelationId(ByteBuffer)
+     */
+    public boolean encodeFrame(long id, ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        ByteBuffer frame = ByteBuffer
+                .allocate(CORRELATION_ID_LENGTH + payload.remaining());
+        frame.putLong(id).put(payload.duplicate()).flip();
+        return encodeFrame(frame, out);
+    }
+
+    /**
+     * Reads the correlation id from the start of a frame written by
+     * {@link #encodeFrame(long, ByteBuffer, ByteBuffer)} and advances the
+     * position of the frame to the payload.
+     *
+     * @param frame the frame as returned by {@link #decodeFrame(ByteBuffer)}
+     *
+     * @return the correlation id
+     *
+     * @throws IOException if the frame does not start with a correlation id
+     */
+    public long decodeCorrelationId(ByteBuffer frame) throws IOException {
+        if (frame.remaining() < CORRELATION_ID_LENGTH) {
+            throw new IOException("Frame is too short for a correlation id");
+        }
+        return frame.getLong();
+    }
+
+    /**
+     * @return a server coder decoding requests as slices of the input buffer
+     */
+    public RequestSocketServerBufferCoder<ByteBuffer, ByteBuffer> asServerCoder() {
+        return serverCoder;
+    }
+
+    /**
+     * @return a client handler decoding responses into new buffers, as the
+     *         input buffer of the client is compacted after every response
+     */
+    public RequestSocketClientBufferHandler<ByteBuffer, ByteBuffer> asClientHandler() {
+        return clientHandler;
+    }
+
+    /**
+     * @return a server coder for frames with correlation ids; requests are
+     *         copied, so that the coder can be used by pipelining servers
+     */
+    public RequestSocketServerBufferCoder<Correlated<ByteBuffer>, Correlated<ByteBuffer>> asCorrelatedServerCoder() {
+        return correlatedServerCoder;
+    }
+
+    /**
+     * @return a client handler for frames with correlation ids, decoding
+     *         responses into new buffers
+     */
+    public RequestSocketClientBufferHandler<Correlated<ByteBuffer>, Correlated<ByteBuffer>> asCorrelatedClientHandler() {
+        return correlatedClientHandler;
+    }
+
+    /**
+     * Checks the length of a frame.
+     *
+     * @param length the length
+     *
+     * @throws FrameTooLongException if the length exceeds the maximum frame
+     *                               size
+     */
+    protected void checkFrameSize(long length) throws FrameTooLongException {
+        if (length > maxFrameSize) {
+            throw new FrameTooLongException(length, maxFrameSize);
+        }
+    }
+
+    /**
+     * Returns a slice of {@code in} of the specified length starting at the
+     * current position and advances the position past the slice.
+     *
+     * @param in     the buffer
+     * @param length the length of the slice
+     *
+     * @return the slice
+     */
+    protected static ByteBuffer slice(ByteBuffer in, int length) {
+        ByteBuffer slice = in.slice();
+        slice.limit(length);
+        in.position(in.position() + length);
+        return slice;
+    }
+
+    private static ByteBuffer copy(ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame);
+        copy.flip();
+        return copy;
+    }
+
+    private Correlated<ByteBuffer> decodeCorrelated(ByteBuffer in)
+            throws IOException {
+        ByteBuffer frame = decodeFrame(in);
+        if (frame == null) {
+            return null;
+        }
+        long id = decodeCorrelationId(frame);
+        return Correlated.of(id, copy(frame));
+    }
+
+    private class ServerCoder
+            implements RequestSocketServerBufferCoder<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer decode(ByteBuffer in) throws IOException {
+            return decodeFrame(in);
+        }
+
+        @Override
+        public boolean encode(ByteBuffer response, ByteBuffer out)
+                throws IOException {
+            return encodeFrame(response, out);
+        }
+    }
+
+    private class ClientHandler
+            implements RequestSocketClientBufferHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public boolean encode(ByteBuffer request, ByteBuffer out)
+                throws IOException {
+            return encodeFrame(request, out);
+        }
+
+        @Override
+        public ByteBuffer decode(ByteBuffer in) throws IOException {
+            ByteBuffer frame = decodeFrame(in);
+            if (frame == null) {
+                return null;
+            }
+            return copy(frame);
+        }
+    }
+
+    private class CorrelatedServerCoder implements
+            RequestSocketServerBufferCoder<Correlated<ByteBuffer>, Correlated<ByteBuffer>> {
+        @Override
+        public Correlated<ByteBuffer> decode(ByteBuffer in) throws IOException {
+            return decodeCorrelated(in);
+        }
+
+        @Override
+        public boolean encode(Correlated<ByteBuffer> response, ByteBuffer out)
+                throws IOException {
+            return encodeFrame(response.getId(), response.getMessage(), out);
+        }
+    }
+
+    private class CorrelatedClientHandler implements
+            RequestSocketClientBufferHandler<Correlated<ByteBuffer>, Correlated<ByteBuffer>> {
+        @Override
+        public boolean encode(Correlated<ByteBuffer> request, ByteBuffer out)
+                throws IOException {
+            return encodeFrame(request.getId(), request.getMessage(), out);
+        }
+
+        @Override
+        public Correlated<ByteBuffer> decode(ByteBuffer in) throws IOException {
+            return decodeCorrelated(in);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.framing;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a frame exceeds the maximum frame size of a {@link FrameCodec}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class FrameTooLongException extends IOException {
+    private static final long serialVersionUID = 1L;
+    private final long length;
+    private final int maxFrameSize;
+
+    public FrameTooLongException(long length, int maxFrameSize) {
+        super("Frame of " + length + " bytes exceeds the maximum of " +
+              maxFrameSize + " bytes");
+        this.length = length;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * @return the length of the frame, or a lower bound if the frame is not
+     *         complete
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+}
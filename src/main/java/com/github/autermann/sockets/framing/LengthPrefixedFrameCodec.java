@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.framing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Frames prefixed by their length as a 4 byte big endian integer.
+ * <p/>
+ * The server coder decodes requests as slices of the input buffer, while
+ * the client handler copies every response into a new buffer: the client
+ * compacts its input buffer after each response, which would overwrite a
+ * slice. Large responses thus cost an additional copy on the client.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class LengthPrefixedFrameCodec extends FrameCodec {
+    private static final int HEADER_LENGTH = 4;
+
+    public LengthPrefixedFrameCodec() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public LengthPrefixedFrameCodec(int maxFrameSize) {
+        super(maxFrameSize);
+    }
+
+    @Override
+    public ByteBuffer decodeFrame(ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_LENGTH) {
+            return null;
+        }
+        int length = in.getInt(in.position());
+        if (length < 0) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        checkFrameSize(length);
+        if (in.remaining() - HEADER_LENGTH < length) {
+            return null;
+        }
+        in.position(in.position() + HEADER_LENGTH);
+        return slice(in, length);
+    }
+
+    @Override
+    public boolean encodeFrame(ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        int length = payload.remaining();
+        checkFrameSize(length);
+        if (out.remaining() < HEADER_LENGTH + length) {
+            return false;
+        }
+        out.putInt(length);
+        out.put(payload.duplicate());
+        return true;
+    }
+
+    @Override
+    public boolean encodeFrame(long id, ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        int length = CORRELATION_ID_LENGTH + payload.remaining();
+        checkFrameSize(length);
+        if (out.remaining() < HEADER_LENGTH + length) {
+            return false;
+        }
+        out.putInt(length);
+        out.putLong(id);
+        out.put(payload.duplicate());
+        return true;
+    }
+}
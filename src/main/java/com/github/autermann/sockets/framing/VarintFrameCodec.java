@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.framing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Frames prefixed by their length as an unsigned base 128 varint, i.e. seven
+ * bits per byte, least significant group first, with the most significant bit
+ * of every byte but the last set (as used by Protocol Buffers). Small frames
+ * thus only need a single byte of overhead.
+ * <p/>
+ * The server coder decodes requests as slices of the input buffer, while
+ * the client handler copies every response into a new buffer: the client
+ * compacts its input buffer after each response, which would overwrite a
+ * slice. Large responses thus cost an additional copy on the client.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class VarintFrameCodec extends FrameCodec {
+    private static final int MAX_HEADER_LENGTH = 5;
+
+    public VarintFrameCodec() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public VarintFrameCodec(int maxFrameSize) {
+        super(maxFrameSize);
+    }
+
+    @Override
+    public ByteBuffer decodeFrame(ByteBuffer in) throws IOException {
+        int position = in.position();
+        long length = 0;
+        int headerLength = 0;
+        while (true) {
+            if (headerLength == in.remaining()) {
+                return null;
+            }
+            if (headerLength == MAX_HEADER_LENGTH) {
+                throw new IOException("Malformed varint frame length");
+            }
+            byte b = in.get(position + headerLength);
+            length |= (long) (b & 0x7f) << (7 * headerLength++);
+            if (b >= 0) {
+                break;
+            }
+        }
+        checkFrameSize(length);
+        if (in.remaining() - headerLength < length) {
+            return null;
+        }
+        in.position(position + headerLength);
+        return slice(in, (int) length);
+    }
+
+    @Override
+    public boolean encodeFrame(ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        int length = payload.remaining();
+        checkFrameSize(length);
+        if (out.remaining() < headerLength(length) + length) {
+            return false;
+        }
+        putHeader(length, out);
+        out.put(payload.duplicate());
+        return true;
+    }
+
+    @Override
+    public boolean encodeFrame(long id, ByteBuffer payload, ByteBuffer out)
+            throws IOException {
+        int length = CORRELATION_ID_LENGTH + payload.remaining();
+        checkFrameSize(length);
+        if (out.remaining() < headerLength(length) + length) {
+            return false;
+        }
+        putHeader(length, out);
+        out.putLong(id);
+        out.put(payload.duplicate());
+        return true;
+    }
+
+    private static void putHeader(int length, ByteBuffer out) {
+        int value = length;
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int headerLength(int length) {
+        int headerLength = 1;
+        while ((length >>>= 7) != 0) {
+            ++headerLength;
+        }
+        return headerLength;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+/**
+ * The reason a connection was closed.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public enum CloseReason {
+    /**
+     * The connection reached the end of its input or was closed by the
+     * handler.
+     */
+    CLOSED,
+    /**
+     * Reading, writing or handling a request failed.
+     */
+    ERROR,
+    /**
+     * The connection was idle for too long.
+     */
+    TIMEOUT,
+    /**
+     * The server was stopped.
+     */
+    SHUTDOWN
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+import java.net.SocketAddress;
+
+/**
+ * A connection lifecycle event. Events are preallocated slots of the ring
+ * buffer of a {@link ConnectionJournal} and are reused once they are
+ * drained, so they must not be retained by a {@link ConnectionEventSink}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class ConnectionEvent {
+    /**
+     * The sequence number of the event, published after all other fields are
+     * written.
+     */
+    private volatile long sequence = -1;
+    private Type type;
+    private long connectionId;
+    private long timestamp;
+    private SocketAddress remoteAddress;
+    private long bytesRead;
+    private long bytesWritten;
+    private long duration;
+    private CloseReason closeReason;
+
+    ConnectionEvent() {
+    }
+
+    void set(Type type, long connectionId, SocketAddress remoteAddress,
+             long bytesRead, long bytesWritten, long duration,
+             CloseReason closeReason) {
+        this.type = type;
+        this.connectionId = connectionId;
+        this.timestamp = System.currentTimeMillis();
+        this.remoteAddress = remoteAddress;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.duration = duration;
+        this.closeReason = closeReason;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void publish(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the number of the connection, counting all connections of the
+     *         journal including the ones not sampled
+     */
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * @return the time of the event in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the address of the client, or {@code null} if it is unknown
+     */
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * @return the number of bytes read from the connection; {@code 0} for
+     *         {@link Type#OPENED} events
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of bytes written to the connection; {@code 0} for
+     *         {@link Type#OPENED} events
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the lifetime of the connection in nanoseconds; {@code 0} for
+     *         {@link Type#OPENED} events
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the reason the connection was closed; {@code null} for
+     *         {@link Type#OPENED} events
+     */
+    public CloseReason getCloseReason() {
+        return closeReason;
+    }
+
+    public enum Type {
+        OPENED,
+        CLOSED
+    }
+}
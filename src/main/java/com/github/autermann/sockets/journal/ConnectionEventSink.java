@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+import java.io.IOException;
+
+/**
+ * Receives the events drained from a {@link ConnectionJournal}. Sinks are
+ * called from a single thread.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public interface ConnectionEventSink {
+    /**
+     * Writes an event. The event is reused afterwards and must not be
+     * retained.
+     *
+     * @param event the event
+     *
+     * @throws IOException if the event can not be written
+     */
+    void write(ConnectionEvent event) throws IOException;
+
+    /**
+     * Called after a batch of events was written.
+     *
+     * @throws IOException if the events can not be flushed
+     */
+    void flush() throws IOException;
+}
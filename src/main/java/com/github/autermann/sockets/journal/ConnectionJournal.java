@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.autermann.sockets.metrics.Counter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Records connection lifecycle events without formatting or locking on the
+ * connection threads. Events are written to a preallocated ring buffer by
+ * any number of threads and drained asynchronously to a
+ * {@link ConnectionEventSink} by a single daemon thread. If the buffer is
+ * full, new events are dropped and counted instead of blocking the producer.
+ * <p/>
+ * With a sample rate of {@code n}, only every {@code n}-th connection is
+ * recorded; both the open and the close event of a sampled connection are
+ * recorded.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ConnectionJournal {
+    private static final Logger log = LoggerFactory
+            .getLogger(ConnectionJournal.class);
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final long DRAIN_PERIOD = TimeUnit.MILLISECONDS
+            .toNanos(100);
+    private final ConnectionEventSink sink;
+    private final ConnectionEvent[] ring;
+    private final int mask;
+    private final int sampleRate;
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The sequence of the next event to drain, only written by the draining
+     * thread.
+     */
+    private volatile long tail = 0;
+    private final AtomicLong connections = new AtomicLong();
+    private final Counter dropped = new Counter();
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a journal recording every connection.
+     *
+     * @param sink the sink to drain to
+     */
+    public ConnectionJournal(ConnectionEventSink sink) {
+        this(sink, DEFAULT_CAPACITY, 1);
+    }
+
+    /**
+     * @param sink       the sink to drain to
+     * @param capacity   the number of events to buffer; rounded up to a power
+     *                   of two
+     * @param sampleRate record only every {@code sampleRate}-th connection
+     */
+    public ConnectionJournal(ConnectionEventSink sink, int capacity,
+                             int sampleRate) {
+        checkArgument(capacity > 0 && capacity <= 1 << 30);
+        checkArgument(sampleRate > 0);
+        this.sink = checkNotNull(sink);
+        this.sampleRate = sampleRate;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new ConnectionEvent[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; ++i) {
+            this.ring[i] = new ConnectionEvent();
+        }
+    }
+
+    /**
+     * Records the opening of a connection.
+     *
+     * @param socket the connection
+     *
+     * @return the handle to pass to
+     *         {@link #closed(Connection, long, long, CloseReason)}, or
+     *         {@code null} if the connection is not sampled
+     */
+    public Connection opened(Socket socket) {
+        long id = connections.getAndIncrement();
+        if (id % sampleRate != 0) {
+            return null;
+        }
+        Connection connection = new Connection(
+                id, socket.getRemoteSocketAddress());
+        publish(ConnectionEvent.Type.OPENED, connection, 0, 0, 0, null);
+        return connection;
+    }
+
+    /**
+     * Records the closing of a connection.
+     *
+     * @param connection   the handle returned by {@link #opened(Socket)}, may
+     *                     be {@code null}
+     * @param bytesRead    the number of bytes read from the connection
+     * @param bytesWritten the number of bytes written to the connection
+     * @param reason       the reason the connection was closed
+     */
+    public void closed(Connection connection, long bytesRead,
+                       long bytesWritten, CloseReason reason) {
+        if (connection != null) {
+            publish(ConnectionEvent.Type.CLOSED, connection, bytesRead,
+                    bytesWritten, System.nanoTime() - connection.openedAt,
+                    reason);
+        }
+    }
+
+    private void publish(ConnectionEvent.Type type, Connection connection,
+                         long bytesRead, long bytesWritten, long duration,
+                         CloseReason reason) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        ConnectionEvent event = ring[(int) sequence & mask];
+        event.set(type, connection.id, connection.remoteAddress,
+                  bytesRead, bytesWritten, duration, reason);
+        event.publish(sequence);
+    }
+
+    /**
+     * Writes all published events to the sink.
+     */
+    public synchronized void drain() {
+        long next = tail;
+        boolean written = false;
+        try {
+            ConnectionEvent event;
+            while ((event = ring[(int) next & mask]).getSequence() == next) {
+                try {
+                    sink.write(event);
+                    written = true;
+                } catch (IOException e) {
+                    log.error("Couldn't write connection event", e);
+                } catch (RuntimeException e) {
+                    log.error("Couldn't write connection event", e);
+                }
+                tail = ++next;
+            }
+            if (written) {
+                sink.flush();
+            }
+        } catch (IOException e) {
+            log.error("Couldn't flush connection events", e);
+        }
+    }
+
+    /**
+     * Starts draining the journal periodically on a daemon thread.
+     */
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                    .setNameFormat("connection-journal-%d").setDaemon(true)
+                    .build());
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, DRAIN_PERIOD, DRAIN_PERIOD, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops draining periodically and drains the remaining events.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        drain();
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * A sampled connection.
+     */
+    public static final class Connection {
+        private final long id;
+        private final SocketAddress remoteAddress;
+        private final long openedAt = System.nanoTime();
+
+        Connection(long id, SocketAddress remoteAddress) {
+            this.id = id;
+            this.remoteAddress = remoteAddress;
+        }
+    }
+}
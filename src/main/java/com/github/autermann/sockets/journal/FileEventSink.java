@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Appends connection events to a file, one tab separated line per event:
+ * timestamp, type, connection id, remote address, bytes read, bytes written,
+ * duration in nanoseconds and close reason.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class FileEventSink implements ConnectionEventSink, Closeable {
+    private final Writer writer;
+
+    /**
+     * @param file the file to append to
+     *
+     * @throws IOException if the file can not be opened
+     */
+    public FileEventSink(File file) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), Charsets.UTF_8));
+    }
+
+    @Override
+    public void write(ConnectionEvent event) throws IOException {
+        writer.append(String.valueOf(event.getTimestamp())).append('\t')
+                .append(event.getType().name()).append('\t')
+                .append(String.valueOf(event.getConnectionId())).append('\t')
+                .append(String.valueOf(event.getRemoteAddress())).append('\t')
+                .append(String.valueOf(event.getBytesRead())).append('\t')
+                .append(String.valueOf(event.getBytesWritten())).append('\t')
+                .append(String.valueOf(event.getDuration())).append('\t')
+                .append(String.valueOf(event.getCloseReason())).append('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
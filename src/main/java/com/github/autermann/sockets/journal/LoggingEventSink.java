@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs connection events at {@code INFO} level.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class LoggingEventSink implements ConnectionEventSink {
+    private static final Logger log = LoggerFactory
+            .getLogger(LoggingEventSink.class);
+
+    @Override
+    public void write(ConnectionEvent event) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        switch (event.getType()) {
+            case OPENED:
+                log.info("Client {} connected.", event.getRemoteAddress());
+                break;
+            case CLOSED:
+                log.info("Client {} disconnected ({}) after {} ms, " +
+                         "{} bytes read, {} bytes written.", new Object[] {
+                             event.getRemoteAddress(), event.getCloseReason(),
+                             TimeUnit.NANOSECONDS.toMillis(event.getDuration()),
+                             event.getBytesRead(), event.getBytesWritten() });
+                break;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+}
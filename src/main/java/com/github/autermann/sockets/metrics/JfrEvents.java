@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Emits Java Flight Recorder events for the hot paths of servers and
+ * clients, so that latency outliers can be correlated with garbage
+ * collections and safepoints. Flight Recorder is only available on Java 11
+ * and later; this class is the no-op fallback for older runtimes. The actual
+ * implementation is located in the multi-release part of the jar
+ * ({@code src/main/java11}).
+ * <p/>
+ * Events are started with one of the {@code begin} methods, which return
+ * {@code null} if the event type is not enabled in any recording, and are
+ * passed to the matching {@code end} method. Only events longer than their
+ * threshold (10 ms by default, configurable in the recording settings) are
+ * recorded.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class JfrEvents {
+    private JfrEvents() {
+    }
+
+    /**
+     * @return if the running JVM supports Flight Recorder events
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @return the started event, or {@code null}
+     */
+    public static Object beginAccept() {
+        return null;
+    }
+
+    /**
+     * @param event  the event returned by {@link #beginAccept()}
+     * @param socket the accepted socket, or {@code null} if no connection was
+     *               accepted; its address is only looked up if the event is
+     *               recorded
+     */
+    public static void endAccept(Object event, Socket socket) {
+    }
+
+    /**
+     * @return the started event, or {@code null}
+     */
+    public static Object beginHandshake() {
+        return null;
+    }
+
+    /**
+     * @param event   the event returned by {@link #beginHandshake()}
+     * @param remote  the address of the peer
+     * @param session the negotiated session
+     */
+    public static void endHandshake(Object event, SocketAddress remote,
+                                    SSLSession session) {
+    }
+
+    /**
+     * @return the started event, or {@code null}
+     */
+    public static Object beginDecode() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginDecode()}
+     */
+    public static void endDecode(Object event) {
+    }
+
+    /**
+     * @return the started event, or {@code null}
+     */
+    public static Object beginHandle() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginHandle()}
+     */
+    public static void endHandle(Object event) {
+    }
+
+    /**
+     * @return the started event, or {@code null}
+     */
+    public static Object beginEncode() {
+        return null;
+    }
+
+    /**
+     * @param event the event returned by {@link #beginEncode()}
+     */
+    public static void endEncode(Object event) {
+    }
+
+    /**
+     * @return the started event, or {@code null}
+     */
+    public static Object beginExec() {
+        return null;
+    }
+
+    /**
+     * @param event  the event returned by {@link #beginExec()}
+     * @param remote the address of the server
+     */
+    public static void endExec(Object event, SocketAddress remote) {
+    }
+}
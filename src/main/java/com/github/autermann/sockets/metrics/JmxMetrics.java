@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports a {@link MetricRegistry} to the platform MBean server.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class JmxMetrics {
+    private static final Logger log = LoggerFactory
+            .getLogger(JmxMetrics.class);
+    public static final String DOMAIN = "com.github.autermann.sockets";
+
+    private JmxMetrics() {
+    }
+
+    /**
+     * Registers an MBean named
+     * {@code com.github.autermann.sockets:type=<type>,name=<name>}.
+     *
+     * @param type     the type of the component, e.g. {@code SocketServer}
+     * @param name     the name of the component
+     * @param registry the metrics of the component
+     *
+     * @return the name of the MBean, or {@code null} if it could not be
+     *         registered
+     */
+    public static ObjectName register(String type, String name,
+                                      MetricRegistry registry) {
+        try {
+            ObjectName objectName = new ObjectName(
+                    DOMAIN + ":type=" + type +
+                    ",name=" + ObjectName.quote(name));
+            getServer().registerMBean(new MetricsMBean(registry, type + " " +
+                                                                 name),
+                                      objectName);
+            return objectName;
+        } catch (JMException e) {
+            log.error("Could not register metrics MBean: " + e.getMessage(),
+                      e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters an MBean.
+     *
+     * @param objectName the name returned by {@link #register}; may be
+     *                   {@code null}
+     */
+    public static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            getServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.warn("Could not unregister metrics MBean: {}",
+                     e.getMessage());
+        }
+    }
+
+    private static MBeanServer getServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+}
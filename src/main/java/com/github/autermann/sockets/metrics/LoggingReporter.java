@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the metrics at {@code INFO} level.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class LoggingReporter implements MetricsReporter {
+    private static final Logger log = LoggerFactory
+            .getLogger(LoggingReporter.class);
+
+    @Override
+    public void report(String name, MetricRegistry registry) {
+        log.info("{}: {}", name, registry);
+    }
+}
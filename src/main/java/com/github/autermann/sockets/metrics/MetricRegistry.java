@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.base.Objects;
+
+/**
+ * Named metrics of a server or client. Metrics are registered once, when the
+ * component is created; the hot path only touches the metric objects.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class MetricRegistry {
+    private final ConcurrentSkipListMap<String, Counter> counters
+            = new ConcurrentSkipListMap<String, Counter>();
+    private final ConcurrentSkipListMap<String, Histogram> histograms
+            = new ConcurrentSkipListMap<String, Histogram>();
+    private final ConcurrentSkipListMap<String, Gauge> gauges
+            = new ConcurrentSkipListMap<String, Gauge>();
+
+    /**
+     * @param name the name of the counter
+     *
+     * @return the counter, created if it does not exist
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(checkNotNull(name));
+        if (counter == null) {
+            counter = putIfAbsent(counters, name, new Counter());
+        }
+        return counter;
+    }
+
+    /**
+     * @param name the name of the histogram
+     *
+     * @return the histogram, created if it does not exist
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(checkNotNull(name));
+        if (histogram == null) {
+            histogram = putIfAbsent(histograms, name, new Histogram());
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers a gauge.
+     *
+     * @param name  the name of the gauge
+     * @param gauge the gauge
+     *
+     * @throws IllegalArgumentException if a gauge with this name exists
+     */
+    public void register(String name, Gauge gauge) {
+        checkArgument(gauges.putIfAbsent(checkNotNull(name),
+                                         checkNotNull(gauge)) == null,
+                      "Gauge %s already registered", name);
+    }
+
+    public SortedMap<String, Counter> getCounters() {
+        return Collections.unmodifiableSortedMap(counters);
+    }
+
+    public SortedMap<String, Histogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(histograms);
+    }
+
+    public SortedMap<String, Gauge> getGauges() {
+        return Collections.unmodifiableSortedMap(gauges);
+    }
+
+    private static <T> T putIfAbsent(ConcurrentMap<String, T> map,
+                                     String name, T metric) {
+        T existing = map.putIfAbsent(name, metric);
+        return existing == null ? metric : existing;
+    }
+
+    @Override
+    public String toString() {
+        Objects.ToStringHelper helper = Objects.toStringHelper(this);
+        for (String name : gauges.keySet()) {
+            helper.add(name, gauges.get(name).getValue());
+        }
+        for (String name : counters.keySet()) {
+            helper.add(name, counters.get(name).get());
+        }
+        for (String name : histograms.keySet()) {
+            helper.add(name, histograms.get(name).getSnapshot());
+        }
+        return helper.toString();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Read-only MBean exposing the metrics of a {@link MetricRegistry}. Counters
+ * and gauges become {@code long} attributes; every histogram is exposed as
+ * its count, mean, median, 99th and 99.9th percentile and maximum.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class MetricsMBean implements DynamicMBean {
+    private static final String COUNT = ".count";
+    private static final String MEAN = ".mean";
+    private static final String P50 = ".p50";
+    private static final String P99 = ".p99";
+    private static final String P999 = ".p999";
+    private static final String MAX = ".max";
+    private final MetricRegistry registry;
+    private final String description;
+
+    MetricsMBean(MetricRegistry registry, String description) {
+        this.registry = checkNotNull(registry);
+        this.description = description;
+    }
+
+    @Override
+    public Object getAttribute(String attribute)
+            throws AttributeNotFoundException {
+        Map<String, Object> values = getValues();
+        if (!values.containsKey(attribute)) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return values.get(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Object> values = getValues();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            if (values.containsKey(attribute)) {
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute)
+            throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params,
+                         String[] signature)
+            throws MBeanException, ReflectionException {
+        throw new ReflectionException(
+                new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+        for (Map.Entry<String, Object> e : getValues().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(
+                    e.getKey(), e.getValue().getClass().getName(),
+                    e.getKey(), true, false, false));
+        }
+        return new MBeanInfo(
+                getClass().getName(), description,
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[0],
+                new MBeanNotificationInfo[0]);
+    }
+
+    private Map<String, Object> getValues() {
+        Map<String, Object> values = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Gauge> e : registry.getGauges().entrySet()) {
+            values.put(e.getKey(), e.getValue().getValue());
+        }
+        for (Map.Entry<String, Counter> e : registry.getCounters()
+                .entrySet()) {
+            values.put(e.getKey(), e.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> e : registry.getHistograms()
+                .entrySet()) {
+            HistogramSnapshot s = e.getValue().getSnapshot();
+            values.put(e.getKey() + COUNT, s.getCount());
+            values.put(e.getKey() + MEAN, s.getMean());
+            values.put(e.getKey() + P50, s.getValueAtPercentile(50));
+            values.put(e.getKey() + P99, s.getValueAtPercentile(99));
+            values.put(e.getKey() + P999, s.getValueAtPercentile(99.9));
+            values.put(e.getKey() + MAX, s.getMax());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+/**
+ * Publishes the metrics of a server or client, e.g. to a log or a monitoring
+ * system. Reporters are called periodically by a {@link ScheduledReporter}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public interface MetricsReporter {
+    /**
+     * @param name     the name of the reported component
+     * @param registry the metrics of the component
+     */
+    void report(String name, MetricRegistry registry);
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Calls a {@link MetricsReporter} periodically on a daemon thread.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ScheduledReporter {
+    private static final Logger log = LoggerFactory
+            .getLogger(ScheduledReporter.class);
+    private final String name;
+    private final MetricRegistry registry;
+    private final MetricsReporter reporter;
+    private final long period;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param name     the name of the reported component
+     * @param registry the metrics
+     * @param reporter the reporter
+     * @param period   the reporting period
+     * @param unit     the unit of {@code period}
+     */
+    public ScheduledReporter(String name, MetricRegistry registry,
+                             MetricsReporter reporter, long period,
+                             TimeUnit unit) {
+        checkArgument(period > 0);
+        this.name = checkNotNull(name);
+        this.registry = checkNotNull(registry);
+        this.reporter = checkNotNull(reporter);
+        this.period = unit.toNanos(period);
+    }
+
+    public synchronized void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                    .setNameFormat("metrics-reporter-%d").setDaemon(true)
+                    .build());
+            executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic reports and reports a last time.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            report();
+        }
+    }
+
+    /**
+     * Reports the current metrics.
+     */
+    public void report() {
+        try {
+            reporter.report(name, registry);
+        } catch (RuntimeException e) {
+            log.error("Error reporting metrics", e);
+        }
+    }
+}
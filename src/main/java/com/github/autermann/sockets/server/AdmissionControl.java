@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent connections of a server and applies the
+ * {@link RejectionPolicy} to connections exceeding the limit. Rejections
+ * happen on the accepting thread, so they must not block: the busy response
+ * is only written if it can be written without waiting for the client, and
+ * rejections are logged as a periodic summary.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class AdmissionControl {
+    private static final Logger log = LoggerFactory
+            .getLogger(AdmissionControl.class);
+    private static final long AWAIT_INTERVAL = 100;
+    private static final int BUSY_RESPONSE_TIMEOUT = 100;
+    private static final long WARNING_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private final int maxConnections;
+    private final Semaphore permits;
+    private final RejectionPolicy policy;
+    private final byte[] busyResponse;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong lastWarning = new AtomicLong(System.nanoTime() -
+                                                          WARNING_INTERVAL);
+    private final AtomicLong warned = new AtomicLong();
+
+    /**
+     * @param maxConnections the maximum number of concurrent connections
+     * @param policy         the rejection policy
+     * @param busyResponse   the response written to rejected connections if
+     *                       the policy is
+     *                       {@link RejectionPolicy#BUSY_RESPONSE}
+     */
+    AdmissionControl(int maxConnections, RejectionPolicy policy,
+                     byte[] busyResponse) {
+        checkArgument(maxConnections > 0);
+        this.maxConnections = maxConnections;
+        this.permits = new Semaphore(maxConnections);
+        this.policy = checkNotNull(policy);
+        this.busyResponse = busyResponse;
+    }
+
+    /**
+     * Blocks until a connection can be admitted if the server should stop
+     * accepting connections while at the limit. The acquired capacity is
+     * used for the next accepted connection instead of {@link #tryAdmit()}.
+     *
+     * @param serverSocket the listening socket; waiting stops once it is
+     *                     closed
+     *
+     * @return if capacity was acquired in advance
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitCapacity(ServerSocket serverSocket)
+            throws InterruptedException {
+        if (policy != RejectionPolicy.STOP_ACCEPTING) {
+            return false;
+        }
+        while (!permits.tryAcquire(AWAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+            if (serverSocket.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return if a newly accepted connection may be processed
+     */
+    boolean tryAdmit() {
+        return permits.tryAcquire();
+    }
+
+    /**
+     * Releases the capacity of a closed (or rejected) connection.
+     */
+    void release() {
+        permits.release();
+    }
+
+    /**
+     * Rejects a connection according to the rejection policy. The capacity
+     * must have been released before.
+     *
+     * @param socket the connection
+     */
+    void reject(Socket socket) {
+        rejected.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Rejecting client {}.", socket.getRemoteSocketAddress());
+        }
+        warnRejected();
+        try {
+            // writing to an SSL socket would run the handshake
+            if (policy == RejectionPolicy.BUSY_RESPONSE &&
+                busyResponse != null && !(socket instanceof SSLSocket)) {
+                writeBusyResponse(socket);
+            }
+        } catch (IOException e) {
+            log.debug("Couldn't send busy response", e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.error("Couldn't close socket: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Writes the busy response without waiting for the client: a channel is
+     * written to in non-blocking mode, discarding what does not fit into the
+     * send buffer, while a plain socket only gets a response that fits into
+     * the send buffer. Reads time out quickly.
+     */
+    private void writeBusyResponse(Socket socket) throws IOException {
+        socket.setSoTimeout(BUSY_RESPONSE_TIMEOUT);
+        SocketChannel channel = socket.getChannel();
+        if (channel != null) {
+            channel.configureBlocking(false);
+            channel.write(ByteBuffer.wrap(busyResponse));
+        } else if (busyResponse.length <= socket.getSendBufferSize()) {
+            OutputStream out = socket.getOutputStream();
+            out.write(busyResponse);
+            out.flush();
+        } else if (log.isDebugEnabled()) {
+            log.debug("Busy response exceeds the send buffer of client {}",
+                      socket.getRemoteSocketAddress());
+        }
+    }
+
+    /**
+     * Logs the number of rejected connections at most once per interval.
+     */
+    private void warnRejected() {
+        long now = System.nanoTime();
+        long last = lastWarning.get();
+        if (now - last >= WARNING_INTERVAL &&
+            lastWarning.compareAndSet(last, now)) {
+            long total = rejected.get();
+            log.warn("Rejected {} connections at the limit of {} connections.",
+                     total - warned.getAndSet(total), maxConnections);
+        }
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    int getConnections() {
+        return maxConnections - permits.availablePermits();
+    }
+
+    long getRejected() {
+        return rejected.get();
+    }
+
+    RejectionPolicy getPolicy() {
+        return policy;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous variant of the {@link RequestSocketServerHandler}. The handler
+ * returns a future instead of blocking until the response is available, e.g.
+ * while waiting for a downstream service. The server keeps decoding the
+ * following requests of the connection and writes every response in request
+ * order once its future completes, or immediately if the server writes
+ * responses out of order.
+ * <p/>
+ * {@link #handle(Object)} is called by the thread decoding the connection and
+ * should return quickly. The response is encoded and written by the thread
+ * completing the future, without occupying a thread of the server while
+ * waiting. A failed future closes the connection.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ *
+ * @see SocketServerBuilder#withPipelining(int)
+ */
+public interface AsyncRequestSocketServerHandler<I, O> {
+    /**
+     * Handles a request.
+     *
+     * @param request the request
+     *
+     * @return the future response
+     */
+    ListenableFuture<O> handle(I request);
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Adapts a {@link RequestSocketServerBufferCoder} to the stream based
+ * {@link RequestSocketServerCoder}. Input is read in bulk into a buffer that
+ * grows until it holds a complete request; bytes following the request are
+ * kept for the next call. An adapter therefore keeps per connection state and
+ * must not be shared between connections. Buffers are taken from a
+ * {@link BufferPool}; the input buffer is returned when the adapter is
+ * closed, which servers do when the connection is closed.
+ * <p/>
+ * Non-blocking servers let the adapter decode the input that is available
+ * first (see {@link #poll(InputStream)}) and hand the connection back to the
+ * selector while a request is incomplete, so that a partially received
+ * request does not occupy a worker thread.
+ * <p/>
+ * Requests may reference the input buffer, e.g. as a slice, which is reused
+ * once the request is decoded. If requests are still referenced after the
+ * next call to {@link #decode(InputStream)}, as with pipelining servers or
+ * asynchronous handlers, the adapter has to retain them: the bytes of decoded
+ * requests are then never overwritten, and a buffer holding them is left to
+ * the requests instead of being compacted or returned to the pool.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+public class BufferCoderAdapter<I, O>
+        implements RequestSocketServerCoder<I, O>, Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_BUFFER_SIZE = 1 << 30;
+    private final RequestSocketServerBufferCoder<I, O> coder;
+    private final BufferPool pool;
+    private final boolean retaining;
+    private ByteBuffer input;
+    /**
+     * If a request referencing the input buffer was decoded.
+     */
+    private boolean referenced = false;
+    /**
+     * A request decoded ahead of a call to {@link #decode(InputStream)}.
+     */
+    private I next;
+
+    /**
+     * @param coder the coder to adapt
+     * @param pool  the pool to take buffers from
+     */
+    public BufferCoderAdapter(RequestSocketServerBufferCoder<I, O> coder,
+                              BufferPool pool) {
+        this(coder, pool, false);
+    }
+
+    /**
+     * @param coder     the coder to adapt
+     * @param pool      the pool to take buffers from
+     * @param retaining if decoded requests may be referenced while the
+     *                  following requests are decoded
+     */
+    public BufferCoderAdapter(RequestSocketServerBufferCoder<I, O> coder,
+                              BufferPool pool, boolean retaining) {
+        this.coder = checkNotNull(coder);
+        this.pool = checkNotNull(pool);
+        this.retaining = retaining;
+    }
+
+    public RequestSocketServerBufferCoder<I, O> getCoder() {
+        return coder;
+    }
+
+    @Override
+    public I decode(InputStream in) throws IOException {
+        while (!decodeBuffered()) {
+            if (!fill(in)) {
+                if (input.hasRemaining()) {
+                    throw new EOFException(
+                            "Connection closed within a request");
+                }
+                return null;
+            }
+        }
+        I request = next;
+        next = null;
+        return request;
+    }
+
+    /**
+     * Reads the input that is available without blocking and decodes the
+     * next request, if it is complete.
+     *
+     * @param in the input stream
+     *
+     * @return if a request is complete, so that the next call to
+     *         {@link #decode(InputStream)} does not block
+     *
+     * @throws IOException if the input could not be read or is malformed
+     */
+    boolean poll(InputStream in) throws IOException {
+        while (!decodeBuffered()) {
+            if (in.available() <= 0 || !fill(in)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return if a complete request was read ahead of the decoded requests
+     *
+     * @throws IOException if the input is malformed
+     */
+    boolean hasBufferedRequest() throws IOException {
+        return input != null && decodeBuffered();
+    }
+
+    /**
+     * @param coder the coder of a connection
+     * @param in    the input stream of the connection
+     *
+     * @return if {@code coder} is an adapter holding an incomplete request
+     *         that can not be completed without blocking
+     *
+     * @throws IOException if the input could not be read or is malformed
+     */
+    static boolean awaitsInput(RequestSocketServerCoder<?, ?> coder,
+                               InputStream in) throws IOException {
+        return coder instanceof BufferCoderAdapter && in.available() > 0 &&
+               !((BufferCoderAdapter<?, ?>) coder).poll(in);
+    }
+
+    /**
+     * @param coder the coder of a connection
+     *
+     * @return if {@code coder} is an adapter holding a complete request
+     *
+     * @throws IOException if the input is malformed
+     */
+    static boolean hasBufferedRequest(RequestSocketServerCoder<?, ?> coder)
+            throws IOException {
+        return coder instanceof BufferCoderAdapter &&
+               ((BufferCoderAdapter<?, ?>) coder).hasBufferedRequest();
+    }
+
+    private boolean decodeBuffered() throws IOException {
+        if (input == null) {
+            input = pool.acquireHeap(INITIAL_BUFFER_SIZE);
+            input.flip();
+        }
+        if (next == null && input.hasRemaining()) {
+            int position = input.position();
+            next = coder.decode(input);
+            if (next == null) {
+                input.position(position);
+            } else {
+                referenced = retaining;
+            }
+        }
+        return next != null;
+    }
+
+    private boolean fill(InputStream in) throws IOException {
+        if (referenced) {
+            return append(in);
+        }
+        input.compact();
+        try {
+            if (!input.hasRemaining()) {
+                grow();
+            }
+            int read = in.read(input.array(),
+                               input.arrayOffset() + input.position(),
+                               input.remaining());
+            if (read < 0) {
+                return false;
+            }
+            input.position(input.position() + read);
+            return true;
+        } finally {
+            input.flip();
+        }
+    }
+
+    private void grow() throws IOException {
+        checkCapacity();
+        ByteBuffer larger = pool.acquireHeap(input.capacity() * 2);
+        input.flip();
+        larger.put(input);
+        pool.release(input);
+        input = larger;
+    }
+
+    /**
+     * Reads behind the buffered bytes without moving them, as decoded
+     * requests may still reference the buffer. If the buffer is full, the
+     * remaining bytes are moved to a new buffer and the old one is left to
+     * the requests.
+     */
+    private boolean append(InputStream in) throws IOException {
+        if (input.limit() == input.capacity()) {
+            int size = input.capacity();
+            if (input.remaining() == size) {
+                checkCapacity();
+                size *= 2;
+            }
+            ByteBuffer fresh = pool.acquireHeap(size);
+            fresh.put(input);
+            fresh.flip();
+            input = fresh;
+            referenced = false;
+        }
+        int limit = input.limit();
+        int read = in.read(input.array(), input.arrayOffset() + limit,
+                           input.capacity() - limit);
+        if (read < 0) {
+            return false;
+        }
+        input.limit(limit + read);
+        return true;
+    }
+
+    private void checkCapacity() throws IOException {
+        if (input.capacity() >= MAX_BUFFER_SIZE) {
+            throw new IOException("Request exceeds " + MAX_BUFFER_SIZE +
+                                  " bytes");
+        }
+    }
+
+    @Override
+    public void encode(O response, OutputStream out) throws IOException {
+        ByteBuffer buffer = pool.acquireHeap(INITIAL_BUFFER_SIZE);
+        try {
+            while (!coder.encode(response, buffer)) {
+                if (buffer.capacity() >= MAX_BUFFER_SIZE) {
+                    throw new IOException("Response exceeds " +
+                                          MAX_BUFFER_SIZE + " bytes");
+                }
+                ByteBuffer larger = pool.acquireHeap(buffer.capacity() * 2);
+                pool.release(buffer);
+                buffer = larger;
+            }
+            buffer.flip();
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Returns the input buffer to the pool, discarding any buffered input.
+     * A buffer that may still be referenced by requests is left to them.
+     */
+    @Override
+    public void close() {
+        if (input != null) {
+            if (!referenced) {
+                pool.release(input);
+            }
+            input = null;
+            next = null;
+        }
+    }
+}
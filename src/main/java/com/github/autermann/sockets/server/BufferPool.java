@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Pool of reusable {@link ByteBuffer}s. Buffers are grouped in power of two
+ * size classes from 256 bytes to 1 MiB; larger requests are allocated without
+ * pooling. Every size class retains a bounded number of released buffers, so
+ * connection churn reuses buffers instead of allocating new ones.
+ * <p/>
+ * Whether {@link #acquire(int)} returns direct or heap buffers is configurable.
+ * Direct buffers avoid a copy when reading from or writing to channels, while
+ * stream based I/O always requires heap buffers ({@link #acquireHeap(int)}).
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class BufferPool {
+    public static final int DEFAULT_MAX_BUFFERS_PER_CLASS = 256;
+    private static final int MIN_SIZE_SHIFT = 8;
+    private static final int MAX_SIZE_SHIFT = 20;
+    private final boolean direct;
+    private final List<BlockingQueue<ByteBuffer>> heapBuffers;
+    private final List<BlockingQueue<ByteBuffer>> directBuffers;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    /**
+     * Creates a new pool of heap buffers.
+     */
+    public BufferPool() {
+        this(false, DEFAULT_MAX_BUFFERS_PER_CLASS);
+    }
+
+    /**
+     * @param direct             if {@link #acquire(int)} should return direct
+     *                           buffers
+     * @param maxBuffersPerClass the maximum number of idle buffers retained
+     *                           per size class
+     */
+    public BufferPool(boolean direct, int maxBuffersPerClass) {
+        checkArgument(maxBuffersPerClass > 0);
+        this.direct = direct;
+        this.heapBuffers = createSizeClasses(maxBuffersPerClass);
+        this.directBuffers = createSizeClasses(maxBuffersPerClass);
+    }
+
+    private static List<BlockingQueue<ByteBuffer>> createSizeClasses(int max) {
+        ImmutableList.Builder<BlockingQueue<ByteBuffer>> b = ImmutableList
+                .builder();
+        for (int shift = MIN_SIZE_SHIFT; shift <= MAX_SIZE_SHIFT; ++shift) {
+            b.add(new ArrayBlockingQueue<ByteBuffer>(max));
+        }
+        return b.build();
+    }
+
+    /**
+     * @return if {@link #acquire(int)} returns direct buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Acquires a cleared buffer with at least the specified capacity. The
+     * buffer is direct if this pool is configured to use direct buffers.
+     *
+     * @param capacity the minimum capacity
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquire(int capacity) {
+        return acquire(capacity, direct);
+    }
+
+    /**
+     * Acquires a cleared heap buffer with at least the specified capacity.
+     *
+     * @param capacity the minimum capacity
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquireHeap(int capacity) {
+        return acquire(capacity, false);
+    }
+
+    private ByteBuffer acquire(int capacity, boolean directBuffer) {
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass < 0) {
+            allocations.incrementAndGet();
+            return allocate(capacity, directBuffer);
+        }
+        ByteBuffer buffer = sizeClasses(directBuffer).get(sizeClass).poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return allocate(1 << (sizeClass + MIN_SIZE_SHIFT), directBuffer);
+        }
+        reuses.incrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Only buffers obtained from this pool
+     * should be released, and only once; the buffer must not be used
+     * afterwards.
+     *
+     * @param buffer the buffer (may be {@code null})
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass >= 0 &&
+            buffer.capacity() == 1 << (sizeClass + MIN_SIZE_SHIFT)) {
+            buffer.clear();
+            sizeClasses(buffer.isDirect()).get(sizeClass).offer(buffer);
+        }
+    }
+
+    /**
+     * @return the number of buffers allocated by this pool
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * @return the number of times a pooled buffer was reused
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    private List<BlockingQueue<ByteBuffer>> sizeClasses(boolean directBuffer) {
+        return directBuffer ? directBuffers : heapBuffers;
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean directBuffer) {
+        return directBuffer ? ByteBuffer.allocateDirect(capacity)
+               : ByteBuffer.allocate(capacity);
+    }
+
+    private static int sizeClass(int capacity) {
+        checkArgument(capacity >= 0);
+        if (capacity <= 1 << MIN_SIZE_SHIFT) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SIZE_SHIFT ? -1 : shift - MIN_SIZE_SHIFT;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("direct", isDirect())
+                .add("allocations", getAllocations())
+                .add("reuses", getReuses())
+                .toString();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.autermann.sockets.metrics.Counter;
+
+/**
+ * Blocking {@link InputStream} on top of a non-blocking {@link SocketChannel}.
+ * If no data is available the calling thread waits for the channel to become
+ * readable using a temporary selector of the {@link SelectorEngine}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class ChannelInputStream extends InputStream {
+    private final SocketChannel channel;
+    private final SelectorEngine engine;
+    private final BufferPool pool;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private final ByteBuffer buffer;
+    private final IdleMonitor monitor;
+    private final Counter bytesRead;
+    private volatile long total = 0;
+
+    /**
+     * @param channel    the channel
+     * @param engine     the engine to await readability with
+     * @param pool       the pool providing the buffer
+     * @param bufferSize the size of the buffer
+     * @param monitor    the monitor to report blocking reads to (may be
+     *                   {@code null})
+     * @param bytesRead  the counter of received bytes
+     */
+    ChannelInputStream(SocketChannel channel, SelectorEngine engine,
+                       BufferPool pool, int bufferSize, IdleMonitor monitor,
+                       Counter bytesRead) {
+        this.bytesRead = bytesRead;
+        this.channel = channel;
+        this.engine = engine;
+        this.monitor = monitor;
+        this.pool = pool;
+        this.buffer = pool.acquire(bufferSize);
+        this.buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkPositionIndexes(off, off + len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the number of bytes read from the channel
+     */
+    long getBytesRead() {
+        return total;
+    }
+
+    /**
+     * Returns the buffer to the pool. Must only be called once no thread is
+     * reading from this stream anymore.
+     */
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads whatever is available from the channel without blocking.
+     *
+     * @return the number of buffered bytes, or {@code -1} if the end of the
+     *         stream was reached
+     *
+     * @throws IOException if the read failed
+     */
+    int fillNonBlocking() throws IOException {
+        if (buffer.hasRemaining()) {
+            return buffer.remaining();
+        }
+        buffer.clear();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } finally {
+            buffer.flip();
+        }
+        if (read > 0) {
+            bytesRead.add(read);
+            total += read;
+        }
+        return read;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        while ((read = fillNonBlocking()) == 0) {
+            if (monitor == null) {
+                engine.await(channel, SelectionKey.OP_READ);
+            } else {
+                monitor.readStarted();
+                try {
+                    engine.await(channel, SelectionKey.OP_READ);
+                } finally {
+                    monitor.readFinished();
+                }
+            }
+        }
+        return read > 0;
+    }
+}
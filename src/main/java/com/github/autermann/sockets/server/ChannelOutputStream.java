@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking {@link OutputStream} on top of a non-blocking
+ * {@link SocketChannel}. Like the stream of a plain socket it is unbuffered.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class ChannelOutputStream extends OutputStream {
+    private final SocketChannel channel;
+    private final SelectorEngine engine;
+    private final IdleMonitor monitor;
+
+    /**
+     * @param channel the channel
+     * @param engine  the engine to await writability with
+     * @param monitor the monitor to report blocking writes to (may be
+     *                {@code null})
+     */
+    ChannelOutputStream(SocketChannel channel, SelectorEngine engine,
+                        IdleMonitor monitor) {
+        this.channel = channel;
+        this.engine = engine;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkPositionIndexes(off, off + len, b.length);
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer, avoiding the copy into a
+     * temporary direct buffer if {@code buffer} is direct.
+     *
+     * @param buffer the buffer to write
+     *
+     * @throws IOException if the write failed
+     */
+    void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    /**
+     * Transfers a region of a file directly to the channel, using
+     * {@code sendfile} where the operating system supports it.
+     *
+     * @param file     the file
+     * @param position the position of the region
+     * @param count    the maximum number of bytes to transfer
+     *
+     * @return the number of bytes transferred, less than {@code count} if the
+     *         end of the file was reached
+     *
+     * @throws IOException if the transfer failed
+     */
+    long transferFrom(FileChannel file, long position, long count)
+            throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long n = file.transferTo(position + transferred,
+                                     count - transferred, channel);
+            if (n > 0) {
+                transferred += n;
+            } else if (position + transferred >= file.size()) {
+                break;
+            } else {
+                awaitWritable();
+            }
+        }
+        return transferred;
+    }
+
+    private void awaitWritable() throws IOException {
+        if (monitor == null) {
+            engine.await(channel, SelectionKey.OP_WRITE);
+        } else {
+            monitor.writeStarted();
+            try {
+                engine.await(channel, SelectionKey.OP_WRITE);
+            } finally {
+                monitor.writeFinished();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
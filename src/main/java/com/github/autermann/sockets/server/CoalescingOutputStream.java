@@ -0,0 +1,292 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output stream of a connection that coalesces small writes. Data is buffered
+ * until the buffer is full or the stream is flushed. A flush is deferred as
+ * long as the next request is already waiting on the input side, so that the
+ * responses of pipelined requests leave in a single write; a deferred flush
+ * is executed after at most the configured delay. The shared scheduler only
+ * hands the deferred flush to another executor, so that a slow client does
+ * not hold up the deferred flushes of other connections.
+ * <p/>
+ * With a buffer size of {@code 0} writes and flushes are passed through
+ * directly and only counted. Otherwise the buffer is taken from a
+ * {@link BufferPool} and returned once the stream is closed or discarded.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class CoalescingOutputStream extends OutputStream {
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    private final OutputStream out;
+    private final InputStream in;
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final int bufferSize;
+    private final long delay;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final WriteStatistics statistics;
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                executor.execute(deferredFlush);
+            } catch (RejectedExecutionException e) {
+                deferredFlush.run();
+            }
+        }
+    };
+    private final Runnable deferredFlush = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CoalescingOutputStream.this) {
+                flushScheduled = false;
+                if (closed) {
+                    return;
+                }
+                try {
+                    flushNow();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+    };
+    private WritableByteChannel channel;
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+    private volatile long bytesWritten = 0;
+    private IOException failure;
+
+    /**
+     * @param out        the stream to write to
+     * @param in         the input stream of the same connection
+     * @param pool       the pool to take the buffer from
+     * @param bufferSize the size of the buffer; a full buffer is written
+     *                   immediately
+     * @param delay      the maximum delay of a deferred flush in nanoseconds,
+     *                   {@code 0} to never defer flushes
+     * @param scheduler  the scheduler for deferred flushes
+     * @param executor   the executor running deferred flushes, which may
+     *                   block while writing
+     * @param statistics the statistics to update
+     */
+    CoalescingOutputStream(OutputStream out, InputStream in, BufferPool pool,
+                           int bufferSize, long delay,
+                           ScheduledExecutorService scheduler,
+                           Executor executor, WriteStatistics statistics) {
+        this.out = out;
+        this.in = in;
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+        this.buffer = bufferSize == 0 ? null : pool.acquire(bufferSize);
+        this.delay = delay;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.statistics = statistics;
+        clearBuffer();
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        checkState();
+        if (buffer == null) {
+            out.write(b);
+            onWrite(1);
+        } else {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len)
+            throws IOException {
+        checkPositionIndexes(off, off + len, b.length);
+        checkState();
+        if (len >= bufferSize) {
+            drain();
+            out.write(b, off, len);
+            onWrite(len);
+        } else {
+            if (len > buffer.remaining()) {
+                drain();
+            }
+            buffer.put(b, off, len);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        checkState();
+        if (delay > 0 && buffer != null && buffer.position() > 0 &&
+            in.available() > 0) {
+            if (!flushScheduled) {
+                scheduleFlush();
+            }
+        } else {
+            flushNow();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (failure == null) {
+                flushNow();
+            }
+        } finally {
+            discard();
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a region of a file after the buffered data. If the connection is
+     * backed by a {@link java.nio.channels.SocketChannel} the region is
+     * transferred without copying it to user space; otherwise (e.g. for TLS
+     * connections) it is copied through a pooled buffer.
+     *
+     * @param file     the file
+     * @param position the position of the region
+     * @param count    the maximum number of bytes to transfer
+     *
+     * @return the number of bytes transferred, less than {@code count} if the
+     *         end of the file was reached
+     *
+     * @throws IOException if the transfer failed
+     */
+    synchronized long transferFrom(FileChannel file, long position,
+                                   long count) throws IOException {
+        checkState();
+        drain();
+        long transferred;
+        if (out instanceof ChannelOutputStream) {
+            transferred = ((ChannelOutputStream) out)
+                    .transferFrom(file, position, count);
+        } else {
+            ByteBuffer copyBuffer = pool.acquireHeap(TRANSFER_BUFFER_SIZE);
+            try {
+                transferred = FileTransfer.copy(file, position, count,
+                                                copyBuffer, out);
+            } finally {
+                pool.release(copyBuffer);
+            }
+        }
+        onWrite(transferred);
+        return transferred;
+    }
+
+    /**
+     * Closes this stream without writing buffered data and returns the buffer
+     * to the pool. The underlying stream is not closed.
+     */
+    synchronized void discard() {
+        if (!closed) {
+            closed = true;
+            pool.release(buffer);
+        }
+    }
+
+    private void scheduleFlush() throws IOException {
+        try {
+            scheduler.schedule(scheduledFlush, delay, TimeUnit.NANOSECONDS);
+            flushScheduled = true;
+        } catch (RejectedExecutionException e) {
+            flushNow();
+        }
+    }
+
+    private void flushNow() throws IOException {
+        drain();
+        out.flush();
+        statistics.onFlush();
+    }
+
+    private void drain() throws IOException {
+        if (buffer != null && buffer.position() > 0) {
+            int length = buffer.position();
+            buffer.flip();
+            try {
+                if (out instanceof ChannelOutputStream) {
+                    ((ChannelOutputStream) out).write(buffer);
+                } else if (buffer.hasArray()) {
+                    out.write(buffer.array(), buffer.arrayOffset(),
+                              buffer.limit());
+                } else {
+                    if (channel == null) {
+                        channel = Channels.newChannel(out);
+                    }
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } finally {
+                clearBuffer();
+            }
+            onWrite(length);
+        }
+    }
+
+    private void clearBuffer() {
+        if (buffer != null) {
+            buffer.clear();
+            buffer.limit(bufferSize);
+        }
+    }
+
+    private void onWrite(long bytes) {
+        bytesWritten += bytes;
+        statistics.onWrite(bytes);
+    }
+
+    /**
+     * @return the number of bytes written to the underlying stream
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void checkState() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
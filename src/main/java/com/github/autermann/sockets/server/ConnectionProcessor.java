@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Processes an accepted connection one unit of work at a time. A processor is
+ * created for every connection and invoked until it signals that the
+ * connection should be closed. Once the connection is closed the processor is
+ * closed by the thread that invoked it, releasing per connection resources.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+interface ConnectionProcessor extends Closeable {
+    /**
+     * Processes the next unit of work (e.g. a single request) available on
+     * the connection.
+     *
+     * @param overloaded if the connection waited too long for the worker
+     *                   invoking the processor, so that the next request
+     *                   should be shed
+     *
+     * @return {@code true} if the connection should be kept open
+     *
+     * @throws IOException if the connection failed
+     */
+    boolean process(boolean overloaded) throws IOException;
+
+    /**
+     * @return if the processor buffered a complete request of the connection
+     *         that was not processed yet, so that it has to be invoked again
+     *         before waiting for further input
+     *
+     * @throws IOException if the buffered input is malformed
+     */
+    boolean hasBufferedInput() throws IOException;
+}
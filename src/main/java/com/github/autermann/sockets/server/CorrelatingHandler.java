@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.github.autermann.sockets.Correlated;
+
+/**
+ * Adapts a handler to {@link Correlated} messages: the response is tagged
+ * with the correlation id of its request.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ *
+ * @see SocketServerBuilder#withOutOfOrderResponses()
+ */
+public class CorrelatingHandler<I, O>
+        implements RequestSocketServerHandler<Correlated<I>, Correlated<O>> {
+    private final RequestSocketServerHandler<I, O> handler;
+
+    /**
+     * @param handler the handler of the untagged messages
+     */
+    public CorrelatingHandler(RequestSocketServerHandler<I, O> handler) {
+        this.handler = checkNotNull(handler);
+    }
+
+    public RequestSocketServerHandler<I, O> getHandler() {
+        return handler;
+    }
+
+    @Override
+    public Correlated<O> handle(Correlated<I> request) {
+        return request.reply(handler.handle(request.getMessage()));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.journal.CloseReason;
+import com.github.autermann.sockets.metrics.Counter;
+import com.github.autermann.sockets.metrics.Gauge;
+import com.github.autermann.sockets.metrics.MetricRegistry;
+
+/**
+ * A listening address of a server. All endpoints of a server share its
+ * worker threads, buffer pool and connection limit, but have their own
+ * socket factory and connection metrics. The metrics are also registered in
+ * the metrics of the server, prefixed with {@code endpoint.<name>.}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @see SocketServerBuilder#withEndpoint(String, InetAddress, int,
+ * com.github.autermann.sockets.ssl.SSLConfiguration)
+ */
+public final class Endpoint {
+    /**
+     * The name of the endpoint configured by
+     * {@link SocketServerBuilder#atPort(int)}.
+     */
+    public static final String DEFAULT = "default";
+    private final String name;
+    private final InetAddress address;
+    private final int port;
+    private final ServerSocketFactory socketFactory;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Counter accepted;
+    private final Counter closed;
+    private final Counter errors;
+    private final Counter bytesRead;
+    private final Counter bytesWritten;
+
+    Endpoint(String name, InetAddress address, int port,
+             ServerSocketFactory socketFactory, MetricRegistry registry) {
+        this.name = checkNotNull(name);
+        this.address = address;
+        this.port = port;
+        this.socketFactory = checkNotNull(socketFactory);
+        String prefix = "endpoint." + name + ".";
+        this.accepted = registry.counter(prefix + "connections.accepted");
+        this.closed = registry.counter(prefix + "connections.closed");
+        this.errors = registry.counter(prefix + "errors");
+        this.bytesRead = registry.counter(prefix + "bytes.read");
+        this.bytesWritten = registry.counter(prefix + "bytes.written");
+        registry.register(prefix + "connections.active", new Gauge() {
+            @Override
+            public long getValue() {
+                return getActiveConnections();
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the local address, or {@code null} for all interfaces
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerSocketFactory getSocketFactory() {
+        return socketFactory;
+    }
+
+    public long getAcceptedConnections() {
+        return accepted.get();
+    }
+
+    public long getClosedConnections() {
+        return closed.get();
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    /**
+     * @return the number of connections closed due to an error
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the number of bytes read from closed connections
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return the number of bytes written to closed connections
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @param options the options of the server
+     *
+     * @return the options to bind the endpoint with
+     */
+    SocketOptions getSocketOptions(SocketOptions options) {
+        if (address == null) {
+            return options;
+        }
+        return SocketOptions.builder(options).withBindAddress(address).build();
+    }
+
+    void connectionAccepted() {
+        accepted.increment();
+        active.incrementAndGet();
+    }
+
+    void connectionClosed(long read, long written, CloseReason reason) {
+        active.decrementAndGet();
+        closed.increment();
+        bytesRead.add(read);
+        bytesWritten.add(written);
+        if (reason == CloseReason.ERROR) {
+            errors.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + (address == null ? "*" : address.getHostAddress()) +
+               ":" + port + "]";
+    }
+}
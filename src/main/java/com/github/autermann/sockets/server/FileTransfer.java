@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.io.Closer;
+
+/**
+ * Sends files from a {@link StreamingSocketServerHandler} without copying
+ * them through a {@code byte[]} of the handler. If the output stream belongs
+ * to a connection backed by a {@link java.nio.channels.SocketChannel}, as all
+ * connections of the non-blocking engine are, the file is transferred using
+ * {@link FileChannel#transferTo} ({@code sendfile} on most platforms). Otherwise, e.g. for TLS connections,
+ * the file is copied through a pooled buffer of the server.
+ * <p/>
+ * Data written to the stream before is sent first; the stream is not flushed.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class FileTransfer {
+    private static final int BUFFER_SIZE = 8192;
+
+    private FileTransfer() {
+    }
+
+    /**
+     * Sends a complete file.
+     *
+     * @param file the file
+     * @param out  the output stream of the connection
+     *
+     * @return the number of bytes sent
+     *
+     * @throws IOException if the file could not be read or the connection
+     *                     failed
+     */
+    public static long transfer(File file, OutputStream out)
+            throws IOException {
+        Closer closer = Closer.create();
+        try {
+            FileChannel channel = closer.register(new FileInputStream(file))
+                    .getChannel();
+            return transfer(channel, 0, channel.size(), out);
+        } catch (Throwable t) {
+            throw closer.rethrow(t);
+        } finally {
+            closer.close();
+        }
+    }
+
+    /**
+     * Sends a region of a file. The position of the file channel is not
+     * modified.
+     *
+     * @param file     the file
+     * @param position the position of the region
+     * @param count    the maximum number of bytes to send
+     * @param out      the output stream of the connection
+     *
+     * @return the number of bytes sent, less than {@code count} if the end of
+     *         the file was reached
+     *
+     * @throws IOException if the file could not be read or the connection
+     *                     failed
+     */
+    public static long transfer(FileChannel file, long position, long count,
+                                OutputStream out) throws IOException {
+        checkNotNull(file);
+        checkNotNull(out);
+        checkArgument(position >= 0);
+        checkArgument(count >= 0);
+        if (out instanceof CoalescingOutputStream) {
+            return ((CoalescingOutputStream) out)
+                    .transferFrom(file, position, count);
+        }
+        return copy(file, position, count, ByteBuffer.allocate(BUFFER_SIZE),
+                    out);
+    }
+
+    /**
+     * Copies a region of a file to a stream.
+     *
+     * @param file     the file
+     * @param position the position of the region
+     * @param count    the maximum number of bytes to copy
+     * @param buffer   the heap buffer to copy through
+     * @param out      the stream
+     *
+     * @return the number of bytes copied
+     *
+     * @throws IOException if the copy failed
+     */
+    static long copy(FileChannel file, long position, long count,
+                     ByteBuffer buffer, OutputStream out) throws IOException {
+        long copied = 0;
+        while (copied < count) {
+            buffer.clear();
+            if (count - copied < buffer.capacity()) {
+                buffer.limit((int) (count - copied));
+            }
+            int read = file.read(buffer, position + copied);
+            if (read < 0) {
+                break;
+            }
+            out.write(buffer.array(), buffer.arrayOffset(), read);
+            copied += read;
+        }
+        return copied;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer for large numbers of mostly cancelled timeouts, e.g. the idle
+ * timeouts and request deadlines of all connections of a server. Timeouts are
+ * kept in a circular array of buckets that a single thread advances once per
+ * tick, so scheduling and cancelling are constant time operations and a
+ * timeout fires at most one tick late.
+ * <p/>
+ * Tasks are run on the timer thread and have to be short.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class HashedWheelTimer implements Runnable {
+    private static final Logger log = LoggerFactory
+            .getLogger(HashedWheelTimer.class);
+    static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int DEFAULT_WHEEL_SIZE = 512;
+    private final long tick;
+    private final int mask;
+    private final Timeout[] wheel;
+    private final Queue<Timeout> scheduled
+            = new ConcurrentLinkedQueue<Timeout>();
+    private final long startTime;
+    private long currentTick = 0;
+    private volatile boolean stopped = false;
+    private Thread thread;
+
+    HashedWheelTimer() {
+        this(DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tick      the duration of a tick in nanoseconds
+     * @param wheelSize the number of buckets; rounded up to a power of two
+     */
+    HashedWheelTimer(long tick, int wheelSize) {
+        checkArgument(tick > 0);
+        checkArgument(wheelSize > 0 && wheelSize <= 1 << 30);
+        this.tick = tick;
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.wheel = new Timeout[size];
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Starts the timer thread.
+     *
+     * @param name the name of the thread
+     */
+    synchronized void start(String name) {
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the timer. Pending timeouts are discarded.
+     */
+    void stop() {
+        stopped = true;
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param task  the task
+     * @param delay the delay in nanoseconds
+     *
+     * @return the timeout that can be used to cancel the task
+     */
+    Timeout schedule(Runnable task, long delay) {
+        Timeout timeout = new Timeout(checkNotNull(task),
+                                      System.nanoTime() + Math.max(0, delay));
+        scheduled.offer(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            long deadline = startTime + (currentTick + 1) * tick;
+            long now;
+            while ((now = System.nanoTime()) - deadline < 0) {
+                LockSupport.parkNanos(this, deadline - now);
+                if (stopped) {
+                    return;
+                }
+            }
+            transferScheduled();
+            expire(currentTick, now);
+            ++currentTick;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(currentTick, (timeout.deadline - startTime +
+                                                tick - 1) / tick);
+            timeout.rounds = (ticks - currentTick) / wheel.length;
+            int bucket = (int) (ticks & mask);
+            timeout.next = wheel[bucket];
+            wheel[bucket] = timeout;
+        }
+    }
+
+    private void expire(long currentTick, long now) {
+        int bucket = (int) (currentTick & mask);
+        Timeout previous = null;
+        Timeout timeout = wheel[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            boolean remove = timeout.cancelled;
+            if (!remove && timeout.rounds-- <= 0) {
+                remove = true;
+                timeout.fire();
+            }
+            if (remove) {
+                if (previous == null) {
+                    wheel[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+            } else {
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled = false;
+        /* only accessed by the timer thread */
+        private long rounds;
+        private Timeout next;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task. Has no effect if the task already ran.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void fire() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("Error running timeout task " + task, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Closes a connection that waits too long for incoming data or for a write to
+ * complete. The connection reports when it starts and stops waiting; a single
+ * timeout per connection checks these timestamps and reschedules itself
+ * until a wait exceeded its limit, so reads and writes do not touch the
+ * timer. While requests of a pipelining connection are handled, the read
+ * timeout is suspended: the connection then waits for the next request in
+ * parallel, but the handling time does not count.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class IdleMonitor implements Runnable {
+    private static final Logger log = LoggerFactory
+            .getLogger(IdleMonitor.class);
+    private static final long NOT_WAITING = Long.MIN_VALUE;
+    private final HashedWheelTimer timer;
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final Closeable connection;
+    private volatile long readingSince = NOT_WAITING;
+    private volatile long writingSince = NOT_WAITING;
+    private volatile long handledUntil = NOT_WAITING;
+    private final AtomicInteger handling = new AtomicInteger();
+    private volatile boolean closed = false;
+    private volatile boolean expired = false;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    /**
+     * @param timer        the timer
+     * @param readTimeout  the maximum time to wait for data in nanoseconds,
+     *                     or {@code 0} to wait forever
+     * @param writeTimeout the maximum time a write may block in nanoseconds,
+     *                     or {@code 0} to wait forever
+     * @param connection   the connection to close
+     */
+    IdleMonitor(HashedWheelTimer timer, long readTimeout, long writeTimeout,
+                Closeable connection) {
+        this.timer = checkNotNull(timer);
+        this.readTimeout = readTimeout;
+        this.writeTimeout = writeTimeout;
+        this.connection = checkNotNull(connection);
+    }
+
+    void start() {
+        schedule(Math.min(remaining(NOT_WAITING, readTimeout, 0),
+                          remaining(NOT_WAITING, writeTimeout, 0)));
+    }
+
+    void readStarted() {
+        readingSince = System.nanoTime();
+    }
+
+    void readFinished() {
+        readingSince = NOT_WAITING;
+    }
+
+    /**
+     * Suspends the read timeout until the request is handled.
+     */
+    void handlingStarted() {
+        handling.incrementAndGet();
+    }
+
+    /**
+     * Resumes the read timeout once no request is handled anymore, counting
+     * from now.
+     */
+    void handlingFinished() {
+        handledUntil = System.nanoTime();
+        handling.decrementAndGet();
+    }
+
+    void writeStarted() {
+        writingSince = System.nanoTime();
+    }
+
+    void writeFinished() {
+        writingSince = NOT_WAITING;
+    }
+
+    /**
+     * Stops monitoring the connection.
+     */
+    void stop() {
+        closed = true;
+        HashedWheelTimer.Timeout t = timeout;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+    /**
+     * @return if the connection was closed by this monitor
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * @param in the input stream of the connection
+     *
+     * @return a stream reporting blocking reads to this monitor
+     */
+    InputStream monitor(InputStream in) {
+        return new MonitoredInputStream(in);
+    }
+
+    /**
+     * @param out the output stream of the connection
+     *
+     * @return a stream reporting blocking writes to this monitor
+     */
+    OutputStream monitor(OutputStream out) {
+        return new MonitoredOutputStream(out);
+    }
+
+    @Override
+    public void run() {
+        if (closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        long read = handling.get() > 0
+                    ? remaining(NOT_WAITING, readTimeout, now)
+                    : remaining(latest(readingSince, handledUntil),
+                                readTimeout, now);
+        long write = remaining(writingSince, writeTimeout, now);
+        if (read <= 0 || write <= 0) {
+            log.info("Closing connection after {} timeout",
+                     read <= 0 ? "read" : "write");
+            expired = true;
+            stop();
+            try {
+                Closeables.close(connection, true);
+            } catch (IOException e) {
+                // already swallowed
+            }
+        } else {
+            schedule(Math.min(read, write));
+        }
+    }
+
+    private void schedule(long delay) {
+        if (delay != Long.MAX_VALUE && !closed) {
+            timeout = timer.schedule(this, delay);
+        }
+    }
+
+    /**
+     * @param since    the start of the current read, or
+     *                 {@link #NOT_WAITING}
+     * @param resumed  the end of the last handled request, or
+     *                 {@link #NOT_WAITING}
+     *
+     * @return the time the read timeout counts from
+     */
+    private static long latest(long since, long resumed) {
+        if (since == NOT_WAITING || resumed == NOT_WAITING) {
+            return since;
+        }
+        return resumed - since > 0 ? resumed : since;
+    }
+
+    private static long remaining(long since, long limit, long now) {
+        if (limit <= 0) {
+            return Long.MAX_VALUE;
+        } else if (since == NOT_WAITING) {
+            return limit;
+        } else {
+            return since + limit - now;
+        }
+    }
+
+    private class MonitoredInputStream extends FilterInputStream {
+        MonitoredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            readStarted();
+            try {
+                return super.read();
+            } finally {
+                readFinished();
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            readStarted();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                readFinished();
+            }
+        }
+    }
+
+    private class MonitoredOutputStream extends FilterOutputStream {
+        MonitoredOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeStarted();
+            try {
+                out.write(b);
+            } finally {
+                writeFinished();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeStarted();
+            try {
+                out.write(b, off, len);
+            } finally {
+                writeFinished();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeStarted();
+            try {
+                out.flush();
+            } finally {
+                writeFinished();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CoDel style detection of standing queues. The server is considered
+ * overloaded if the minimum time requests waited for a worker (their sojourn
+ * time) stayed above the target for a whole interval; short bursts thus do
+ * not trigger shedding. While overloaded, requests that waited longer than
+ * twice the target are shed.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class LoadShedder {
+    private final long target;
+    private final long interval;
+    private final AtomicLong shed = new AtomicLong();
+    private long intervalEnd;
+    private long minSojourn = Long.MAX_VALUE;
+    private boolean overloaded = false;
+
+    /**
+     * @param target   the target sojourn time in nanoseconds
+     * @param interval the interval in nanoseconds
+     */
+    LoadShedder(long target, long interval) {
+        checkArgument(target > 0);
+        checkArgument(interval > 0);
+        this.target = target;
+        this.interval = interval;
+        this.intervalEnd = System.nanoTime() + interval;
+    }
+
+    /**
+     * Records the sojourn time of a request.
+     *
+     * @param dispatchTime the {@link System#nanoTime()} at which the request
+     *                     was queued
+     *
+     * @return if the request should be shed
+     */
+    boolean shouldShed(long dispatchTime) {
+        long now = System.nanoTime();
+        long sojourn = now - dispatchTime;
+        boolean shedRequest;
+        synchronized (this) {
+            minSojourn = Math.min(minSojourn, sojourn);
+            if (now - intervalEnd > 0) {
+                overloaded = minSojourn > target;
+                minSojourn = sojourn;
+                intervalEnd = now + interval;
+            }
+            shedRequest = overloaded && sojourn > 2 * target;
+        }
+        if (shedRequest) {
+            shed.incrementAndGet();
+        }
+        return shedRequest;
+    }
+
+    long getShedCount() {
+        return shed.get();
+    }
+
+    /**
+     * @param <I>     the request type
+     * @param <O>     the response type
+     * @param handler the request handler
+     *
+     * @return the handler as an {@link OverloadResponder}, or {@code null} if
+     *         it does not implement the interface
+     */
+    @SuppressWarnings("unchecked")
+    static <I, O> OverloadResponder<I, O> getResponder(Object handler) {
+        if (handler instanceof OverloadResponder) {
+            return (OverloadResponder<I, O>) handler;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+/**
+ * Optional interface of request handlers that answer requests shed under
+ * overload with a dedicated response (e.g. a "retry later" message), which is
+ * encoded by the coder like any other response. Requests shed by servers
+ * whose handler does not implement this interface close the connection.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ *
+ * @see SocketServerBuilder#withLoadShedding(long, long, java.util.concurrent.TimeUnit)
+ */
+public interface OverloadResponder<I, O> {
+    /**
+     * Creates the response to a request that is shed. Has to be cheap, as it
+     * is called while the server is overloaded.
+     *
+     * @param request the shed request
+     *
+     * @return the response
+     */
+    O overloaded(I request);
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.github.autermann.sockets.metrics.JfrEvents;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Processes pipelined requests of a connection. While earlier requests are
+ * handled asynchronously the processor keeps decoding the following requests,
+ * up to a fixed number of outstanding requests. Completed responses are
+ * encoded on a completion executor, so threads completing the futures never
+ * block on the socket. They are written in request order once the response
+ * that is next in line is complete, and the stream is flushed once no
+ * further response is ready.
+ * If responses are unordered, every response is written as soon as it is
+ * complete; the protocol then has to correlate responses and requests, e.g.
+ * using {@link com.github.autermann.sockets.Correlated} messages.
+ * <p/>
+ * Synchronous handlers are run on an {@link Executor} (see
+ * {@link #forHandler}). As decoding and encoding happen on different threads
+ * the coder has to support concurrent calls to {@code decode} and
+ * {@code encode}. If requests are handled in parallel, the handler has to be
+ * thread safe.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class PipelinedRequestProcessor<I, O> implements ConnectionProcessor {
+    private final RequestSocketServerCoder<I, O> coder;
+    private final AsyncRequestSocketServerHandler<I, O> handler;
+    private final InputStream in;
+    private final OutputStream out;
+    private final int depth;
+    private final boolean ordered;
+    private final Semaphore outstanding;
+    private final ServerMetrics metrics;
+    private final HashedWheelTimer timer;
+    private final long requestTimeout;
+    private final IdleMonitor monitor;
+    private final Executor completionExecutor;
+    private final Map<Long, O> completed = Maps.newHashMap();
+    private long nextRequest = 0;
+    private long nextResponse = 0;
+    private volatile Throwable failure;
+
+    /**
+     * @param coder          the coder of the connection
+     * @param handler        the handler of the connection
+     * @param in             the input stream of the connection
+     * @param out            the output stream of the connection
+     * @param depth          the maximum number of outstanding requests
+     * @param ordered        if responses are written in request order
+     * @param metrics        the metrics to update
+     * @param timer          the timer enforcing request deadlines (may be
+     *                       {@code null} if there is no deadline)
+     * @param requestTimeout the request deadline in nanoseconds, or
+     *                       {@code 0}; responses not completed in time are
+     *                       cancelled and the connection is closed
+     * @param monitor        the idle monitor of the connection, told about
+     *                       outstanding requests (may be {@code null})
+     * @param executor       the executor completed responses are encoded
+     *                       and written on
+     */
+    PipelinedRequestProcessor(RequestSocketServerCoder<I, O> coder,
+                              AsyncRequestSocketServerHandler<I, O> handler,
+                              InputStream in, OutputStream out, int depth,
+                              boolean ordered, ServerMetrics metrics,
+                              HashedWheelTimer timer, long requestTimeout,
+                              IdleMonitor monitor, Executor executor) {
+        checkArgument(depth > 0);
+        this.coder = checkNotNull(coder);
+        this.handler = checkNotNull(handler);
+        this.in = in;
+        this.out = out;
+        this.depth = depth;
+        this.ordered = ordered;
+        this.outstanding = new Semaphore(depth);
+        this.metrics = checkNotNull(metrics);
+        this.timer = timer;
+        this.requestTimeout = requestTimeout;
+        this.monitor = monitor;
+        this.completionExecutor = checkNotNull(executor);
+        checkArgument(requestTimeout <= 0 || timer != null);
+    }
+
+    /**
+     * Creates a processor for a synchronous handler that handles the
+     * requests on an executor.
+     *
+     * @param coder          the coder of the connection
+     * @param handler        the handler of the connection
+     * @param in             the input stream of the connection
+     * @param out            the output stream of the connection
+     * @param executor       the executor to handle requests on
+     * @param depth          the maximum number of outstanding requests
+     * @param parallel       if requests may be handled in parallel
+     * @param ordered        if responses are written in request order
+     * @param metrics        the metrics to update
+     * @param loadShedder    the load shedder applied to requests waiting for
+     *                       the executor (may be {@code null})
+     * @param timer          the timer enforcing request deadlines
+     * @param requestTimeout the request deadline in nanoseconds, or
+     *                       {@code 0}
+     * @param monitor        the idle monitor of the connection (may be
+     *                       {@code null})
+     *
+     * @return the processor
+     */
+    static <I, O> PipelinedRequestProcessor<I, O> forHandler(
+            RequestSocketServerCoder<I, O> coder,
+            RequestSocketServerHandler<I, O> handler,
+            InputStream in, OutputStream out, Executor executor, int depth,
+            boolean parallel, boolean ordered, ServerMetrics metrics,
+            LoadShedder loadShedder, HashedWheelTimer timer,
+            long requestTimeout, IdleMonitor monitor) {
+        AsyncRequestSocketServerHandler<I, O> async
+                = new ExecutingHandler<I, O>(handler, parallel
+                                             ? checkNotNull(executor)
+                                             : new SerialExecutor(executor),
+                                             loadShedder, metrics);
+        // the handler tasks already run on threads of the server
+        Executor completionExecutor = MoreExecutors.sameThreadExecutor();
+        return new PipelinedRequestProcessor<I, O>(coder, async, in, out,
+                                                   depth, ordered, metrics,
+                                                   timer, requestTimeout,
+                                                   monitor,
+                                                   completionExecutor);
+    }
+
+    @Override
+    public boolean process(boolean overloaded) throws IOException {
+        long start = -1;
+        Object event = null;
+        if (in.available() > 0) {
+            start = System.nanoTime();
+            event = JfrEvents.beginDecode();
+        }
+        if (BufferCoderAdapter.awaitsInput(coder, in)) {
+            // wait for the rest of the request without blocking
+            return true;
+        }
+        I request = coder.decode(in);
+        if (request == null) {
+            acquire(depth);
+            checkFailure();
+            return false;
+        }
+        if (start >= 0) {
+            metrics.getDecodeLatency().recordSince(start);
+            JfrEvents.endDecode(event);
+        }
+        metrics.getRequests().increment();
+        acquire(1);
+        checkFailure();
+        if (monitor != null) {
+            // the time until the response is written is no idle time
+            monitor.handlingStarted();
+        }
+        final ListenableFuture<O> response;
+        long submitted = System.nanoTime();
+        try {
+            response = checkNotNull(handler.handle(request));
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Could not dispatch request", e);
+        } catch (RuntimeException e) {
+            throw new IOException("Could not handle request", e);
+        }
+        HashedWheelTimer.Timeout deadline = null;
+        if (requestTimeout > 0) {
+            deadline = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    response.cancel(true);
+                }
+            }, requestTimeout);
+        }
+        Futures.addCallback(response, new ResponseCallback(nextRequest++,
+                                                           submitted,
+                                                           deadline),
+                            completionExecutor);
+        return true;
+    }
+
+    @Override
+    public boolean hasBufferedInput() throws IOException {
+        return BufferCoderAdapter.hasBufferedRequest(coder);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (coder instanceof Closeable) {
+            ((Closeable) coder).close();
+        }
+    }
+
+    private void acquire(int permits) throws InterruptedIOException {
+        try {
+            outstanding.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            Throwables.propagateIfInstanceOf(t, IOException.class);
+            throw Throwables.propagate(t);
+        }
+    }
+
+    private void complete(long request, O response) {
+        synchronized (completed) {
+            try {
+                if (!ordered) {
+                    encode(response);
+                } else {
+                    completed.put(request, response);
+                    if (request != nextResponse) {
+                        return;
+                    }
+                    while (completed.containsKey(nextResponse)) {
+                        encode(completed.remove(nextResponse));
+                        ++nextResponse;
+                    }
+                }
+                out.flush();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void encode(O response) throws IOException {
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginEncode();
+        coder.encode(response, out);
+        JfrEvents.endEncode(event);
+        metrics.getEncodeLatency().recordSince(start);
+        metrics.getWriteStatistics().onResponse();
+        if (monitor != null) {
+            monitor.handlingFinished();
+        }
+        outstanding.release();
+    }
+
+    private void fail(Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+        // unblock the decoding thread
+        try {
+            Closeables.close(in, true);
+        } catch (IOException e) {
+            // already swallowed
+        }
+        outstanding.release(depth);
+    }
+
+    private class ResponseCallback implements FutureCallback<O> {
+        private final long id;
+        private final long submitted;
+        private final HashedWheelTimer.Timeout deadline;
+
+        ResponseCallback(long id, long submitted,
+                         HashedWheelTimer.Timeout deadline) {
+            this.id = id;
+            this.submitted = submitted;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void onSuccess(O response) {
+            metrics.getHandleLatency().recordSince(submitted);
+            if (deadline != null) {
+                deadline.cancel();
+            }
+            complete(id, response);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            if (deadline != null) {
+                deadline.cancel();
+            }
+            if (t instanceof CancellationException) {
+                fail(new IOException("Request was cancelled or exceeded " +
+                                     "its deadline", t));
+            } else {
+                fail(t);
+            }
+        }
+    }
+
+    /**
+     * Adapts a synchronous handler by running it on an executor.
+     */
+    private static class ExecutingHandler<I, O>
+            implements AsyncRequestSocketServerHandler<I, O> {
+        private final RequestSocketServerHandler<I, O> handler;
+        private final Executor executor;
+        private final LoadShedder loadShedder;
+        private final ServerMetrics metrics;
+
+        ExecutingHandler(RequestSocketServerHandler<I, O> handler,
+                         Executor executor, LoadShedder loadShedder,
+                         ServerMetrics metrics) {
+            this.handler = checkNotNull(handler);
+            this.executor = executor;
+            this.loadShedder = loadShedder;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ListenableFuture<O> handle(final I request) {
+            final long dispatchTime = System.nanoTime();
+            ListenableFutureTask<O> task = ListenableFutureTask
+                    .create(new Callable<O>() {
+                @Override
+                public O call() throws IOException {
+                    metrics.getQueueWait().recordSince(dispatchTime);
+                    if (loadShedder != null &&
+                        loadShedder.shouldShed(dispatchTime)) {
+                        OverloadResponder<I, O> responder = LoadShedder
+                                .getResponder(handler);
+                        if (responder == null) {
+                            throw new IOException(
+                                    "Request shed due to overload");
+                        }
+                        return responder.overloaded(request);
+                    }
+                    Object event = JfrEvents.beginHandle();
+                    try {
+                        return handler.handle(request);
+                    } finally {
+                        JfrEvents.endHandle(event);
+                    }
+                }
+            });
+            executor.execute(task);
+            return task;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.autermann.sockets.metrics.Counter;
+
+/**
+ * Buffered input stream of a blocking connection using a buffer of a
+ * {@link BufferPool}. The buffer is not returned to the pool when the stream
+ * is closed, as other threads may close the stream to abort a blocking read;
+ * the owner of the connection has to call {@link #release()} instead.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class PooledInputStream extends InputStream {
+    private final InputStream in;
+    private final BufferPool pool;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+    private final ByteBuffer buffer;
+    private final Counter bytesRead;
+    private volatile long total = 0;
+
+    PooledInputStream(InputStream in, BufferPool pool, int bufferSize,
+                      Counter bytesRead) {
+        this.in = in;
+        this.pool = pool;
+        this.bytesRead = bytesRead;
+        this.buffer = pool.acquireHeap(bufferSize);
+        this.buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkPositionIndexes(off, off + len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining() && len >= buffer.capacity()) {
+            // no need to copy large reads through the buffer
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer.remaining() + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return the number of bytes read from the underlying stream
+     */
+    long getBytesRead() {
+        return total;
+    }
+
+    /**
+     * Returns the buffer to the pool. Must only be called once no thread is
+     * reading from this stream anymore.
+     */
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(buffer);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        while (!buffer.hasRemaining()) {
+            buffer.clear();
+            int read;
+            try {
+                read = in.read(buffer.array(), buffer.arrayOffset(),
+                               buffer.capacity());
+            } catch (IOException e) {
+                buffer.limit(0);
+                throw e;
+            }
+            if (read < 0) {
+                buffer.limit(0);
+                return false;
+            }
+            buffer.limit(read);
+            count(read);
+        }
+        return true;
+    }
+
+    private void count(int read) {
+        bytesRead.add(read);
+        total += read;
+    }
+}
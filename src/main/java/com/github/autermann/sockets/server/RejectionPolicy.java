@@ -0,0 +1,44 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+/**
+ * Policy for connections a {@link StreamingSocketServer} can not admit, as
+ * the maximum number of connections is reached or no further connection can
+ * be queued for a worker thread.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @see SocketServerBuilder#withMaxConnections(int)
+ * @see SocketServerBuilder#withMaxPendingConnections(int)
+ */
+public enum RejectionPolicy {
+    /**
+     * Closes the connection immediately.
+     */
+    CLOSE,
+    /**
+     * Writes a configurable response (e.g. a "busy" frame of the protocol)
+     * before closing the connection.
+     *
+     * @see SocketServerBuilder#withBusyResponse(byte[])
+     */
+    BUSY_RESPONSE,
+    /**
+     * Stops accepting connections until capacity is available again, so that
+     * new connections wait in the backlog of the operating system.
+     */
+    STOP_ACCEPTING
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Deadline of a request handled synchronously. If the request is not
+ * finished in time, the handling thread is interrupted and the connection is
+ * closed.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class RequestDeadline implements Runnable {
+    private static final Logger log = LoggerFactory
+            .getLogger(RequestDeadline.class);
+    private final Thread thread;
+    private final Closeable connection;
+    private final HashedWheelTimer.Timeout timeout;
+    private boolean finished = false;
+    private boolean expired = false;
+
+    private RequestDeadline(HashedWheelTimer timer, long timeout,
+                            Closeable connection) {
+        this.thread = Thread.currentThread();
+        this.connection = checkNotNull(connection);
+        this.timeout = timer.schedule(this, timeout);
+    }
+
+    @Override
+    public synchronized void run() {
+        if (!finished) {
+            finished = true;
+            expired = true;
+            log.info("Request exceeded its deadline, closing connection");
+            // close first, so that the interrupted request can not respond
+            try {
+                Closeables.close(connection, true);
+            } catch (IOException e) {
+                // already swallowed
+            }
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Finishes the request. Has to be called by the thread that started it.
+     *
+     * @return if the request finished before its deadline
+     */
+    boolean finish() {
+        timeout.cancel();
+        boolean inTime;
+        synchronized (this) {
+            finished = true;
+            inTime = !expired;
+        }
+        if (!inTime) {
+            // the interrupt was meant for the request only
+            Thread.interrupted();
+        }
+        return inTime;
+    }
+
+    /**
+     * Starts the deadline of a request handled by the current thread.
+     *
+     * @param timer      the timer
+     * @param timeout    the timeout in nanoseconds
+     * @param connection the connection to close if the deadline expires
+     *
+     * @return the deadline
+     */
+    static RequestDeadline start(HashedWheelTimer timer, long timeout,
+                                 Closeable connection) {
+        return new RequestDeadline(timer, timeout, connection);
+    }
+}
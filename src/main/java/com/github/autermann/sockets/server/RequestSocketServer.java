@@ -17,14 +17,17 @@ package com.github.autermann.sockets.server;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.List;
-import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import com.github.autermann.sockets.metrics.Gauge;
+import com.github.autermann.sockets.metrics.JfrEvents;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.Futures;
 
 /**
  * TODO JavaDoc
@@ -32,14 +35,118 @@ import com.google.common.base.Suppliers;
  * @author Christian Autermann <autermann@uni-muenster.de>
  */
 public class RequestSocketServer<I, O> extends StreamingSocketServer {
+    private static final int DEFAULT_ASYNC_PIPELINE_DEPTH = 16;
+    private final Supplier<RequestSocketServerCoder<I, O>> coderFactory;
+    private final Supplier<RequestSocketServerHandler<I, O>> requestHandlerFactory;
+    private final AsyncRequestSocketServerHandler<I, O> asyncRequestHandler;
+    private final int pipelineDepth;
+    private final boolean parallelPipelining;
+    private final boolean orderedResponses;
+    private final LoadShedder loadShedder;
 
-    RequestSocketServer(ServerSocketFactory serverSocketFactory,
+    RequestSocketServer(SocketServerBuilder builder,
                         Supplier<RequestSocketServerCoder<I, O>> coderFactory,
-                        Supplier<RequestSocketServerHandler<I, O>> handlerFactory,
-                        Executor executor, List<Runnable> shutdownHooks,
-                        int port) {
-        super(serverSocketFactory, createStreamingHandlerFactory(coderFactory, handlerFactory),
-              executor, shutdownHooks, port);
+                        Supplier<RequestSocketServerHandler<I, O>> handlerFactory) {
+        this(builder, coderFactory, handlerFactory, null);
+    }
+
+    RequestSocketServer(SocketServerBuilder builder,
+                        Supplier<RequestSocketServerCoder<I, O>> coderFactory,
+                        AsyncRequestSocketServerHandler<I, O> handler) {
+        this(builder, coderFactory, Suppliers
+                .<RequestSocketServerHandler<I, O>>ofInstance(
+                        new BlockingHandler<I, O>(handler)), handler);
+    }
+
+    private RequestSocketServer(
+            SocketServerBuilder builder,
+            Supplier<RequestSocketServerCoder<I, O>> coderFactory,
+            Supplier<RequestSocketServerHandler<I, O>> handlerFactory,
+            AsyncRequestSocketServerHandler<I, O> asyncHandler) {
+        super(builder, createStreamingHandlerFactory(coderFactory, handlerFactory));
+        this.coderFactory = coderFactory;
+        this.requestHandlerFactory = handlerFactory;
+        this.asyncRequestHandler = asyncHandler;
+        this.pipelineDepth = builder.getPipelineDepth();
+        this.parallelPipelining = builder.isParallelPipelining();
+        this.orderedResponses = builder.isOrderedResponses();
+        this.loadShedder = builder.getSheddingTarget() > 0
+                           ? new LoadShedder(builder.getSheddingTarget(),
+                                             builder.getSheddingInterval())
+                           : null;
+        getMetrics().getRegistry().register("requests.shed", new Gauge() {
+            @Override
+            public long getValue() {
+                return getShedRequestCount();
+            }
+        });
+    }
+
+    /**
+     * @return the maximum number of outstanding requests per connection, or
+     *         {@code 1} if pipelining is disabled; servers with an
+     *         {@link AsyncRequestSocketServerHandler} always pipeline requests
+     */
+    public int getPipelineDepth() {
+        if (pipelineDepth > 0) {
+            return pipelineDepth;
+        }
+        return isAsync() ? DEFAULT_ASYNC_PIPELINE_DEPTH : 1;
+    }
+
+    /**
+     * @return if pipelined responses are written in request order
+     *
+     * @see SocketServerBuilder#withOutOfOrderResponses()
+     */
+    public boolean isOrderedResponses() {
+        return orderedResponses;
+    }
+
+    /**
+     * @return if this server uses an {@link AsyncRequestSocketServerHandler}
+     */
+    public boolean isAsync() {
+        return asyncRequestHandler != null;
+    }
+
+    /**
+     * @return the number of requests shed due to overload
+     *
+     * @see SocketServerBuilder#withLoadShedding(long, long, TimeUnit)
+     */
+    public long getShedRequestCount() {
+        return loadShedder == null ? 0 : loadShedder.getShedCount();
+    }
+
+    @Override
+    boolean isOverloaded(long dispatchTime) {
+        // pipelined requests are shed when their handler task is picked up
+        return loadShedder != null && !isAsync() && pipelineDepth <= 0 &&
+               loadShedder.shouldShed(dispatchTime);
+    }
+
+    @Override
+    ConnectionProcessor createProcessor(InputStream in, OutputStream out,
+                                        IdleMonitor monitor) {
+        if (isAsync()) {
+            return new PipelinedRequestProcessor<I, O>(
+                    coderFactory.get(), asyncRequestHandler, in, out,
+                    getPipelineDepth(), orderedResponses, getMetrics(),
+                    getTimer(), getRequestTimeoutNanos(), monitor,
+                    new SerialExecutor(getHandlerExecutor()));
+        }
+        if (pipelineDepth > 0) {
+            return PipelinedRequestProcessor.forHandler(
+                    coderFactory.get(), requestHandlerFactory.get(), in, out,
+                    getHandlerExecutor(), pipelineDepth, parallelPipelining,
+                    orderedResponses, getMetrics(), loadShedder, getTimer(),
+                    getRequestTimeoutNanos(), monitor);
+        }
+        return new RequestProcessor<I, O>(coderFactory.get(),
+                                          requestHandlerFactory.get(),
+                                          in, out, getMetrics(), getTimer(),
+                                          getRequestTimeoutNanos());
     }
 
     private static <I, O> Supplier<StreamingSocketServerHandler> createStreamingHandlerFactory(
@@ -63,13 +170,130 @@ public class RequestSocketServer<I, O> extends StreamingSocketServer {
         @Override
         public void handle(InputStream in, OutputStream out)
                 throws IOException {
-            RequestSocketServerCoder<I, O> coder = coderFactory.get();
-            RequestSocketServerHandler<I, O> handler = handlerFactory.get();
-            I request;
-            while ((request = coder.decode(in)) != null) {
-                O response = handler.handle(request);
-                coder.encode(response, out);
-                out.flush();
+            RequestProcessor<I, O> processor = new RequestProcessor<I, O>(
+                    coderFactory.get(), handlerFactory.get(), in, out,
+                    new ServerMetrics(), null, 0);
+            try {
+                while (processor.process(false)) {
+                }
+            } finally {
+                processor.close();
+            }
+        }
+    }
+
+    /**
+     * Waits for the response of an asynchronous handler.
+     */
+    private static class BlockingHandler<I, O>
+            implements RequestSocketServerHandler<I, O> {
+        private final AsyncRequestSocketServerHandler<I, O> handler;
+
+        BlockingHandler(AsyncRequestSocketServerHandler<I, O> handler) {
+            this.handler = checkNotNull(handler);
+        }
+
+        @Override
+        public O handle(I request) {
+            return Futures.getUnchecked(handler.handle(request));
+        }
+    }
+
+    private static class RequestProcessor<I, O> implements ConnectionProcessor {
+        private final RequestSocketServerCoder<I, O> coder;
+        private final RequestSocketServerHandler<I, O> handler;
+        private final InputStream in;
+        private final OutputStream out;
+        private final ServerMetrics metrics;
+        private final HashedWheelTimer timer;
+        private final long requestTimeout;
+
+        RequestProcessor(RequestSocketServerCoder<I, O> coder,
+                         RequestSocketServerHandler<I, O> handler,
+                         InputStream in, OutputStream out,
+                         ServerMetrics metrics, HashedWheelTimer timer,
+                         long requestTimeout) {
+            this.coder = checkNotNull(coder);
+            this.handler = checkNotNull(handler);
+            this.in = in;
+            this.out = out;
+            this.metrics = metrics;
+            this.timer = timer;
+            this.requestTimeout = requestTimeout;
+        }
+
+        @Override
+        public boolean process(boolean overloaded) throws IOException {
+            long start = -1;
+            Object event = null;
+            if (in.available() > 0) {
+                start = System.nanoTime();
+                event = JfrEvents.beginDecode();
+            }
+            if (BufferCoderAdapter.awaitsInput(coder, in)) {
+                // wait for the rest of the request without blocking
+                return true;
+            }
+            I request = coder.decode(in);
+            if (request == null) {
+                return false;
+            }
+            if (start >= 0) {
+                metrics.getDecodeLatency().recordSince(start);
+                JfrEvents.endDecode(event);
+            }
+            metrics.getRequests().increment();
+            RequestDeadline deadline = requestTimeout > 0
+                                       ? RequestDeadline.start(timer,
+                                                               requestTimeout,
+                                                               in)
+                                       : null;
+            try {
+                return process(request, overloaded);
+            } finally {
+                if (deadline != null && !deadline.finish()) {
+                    // replaces the failure caused by closing the connection
+                    throw new IOException("Request exceeded its deadline");
+                }
+            }
+        }
+
+        private boolean process(I request, boolean overloaded)
+                throws IOException {
+            O response;
+            if (overloaded) {
+                OverloadResponder<I, O> responder = LoadShedder
+                        .getResponder(handler);
+                if (responder == null) {
+                    return false;
+                }
+                response = responder.overloaded(request);
+            } else {
+                long start = System.nanoTime();
+                Object event = JfrEvents.beginHandle();
+                response = handler.handle(request);
+                JfrEvents.endHandle(event);
+                metrics.getHandleLatency().recordSince(start);
+            }
+            long start = System.nanoTime();
+            Object event = JfrEvents.beginEncode();
+            coder.encode(response, out);
+            JfrEvents.endEncode(event);
+            metrics.getEncodeLatency().recordSince(start);
+            metrics.getWriteStatistics().onResponse();
+            out.flush();
+            return true;
+        }
+
+        @Override
+        public boolean hasBufferedInput() throws IOException {
+            return BufferCoderAdapter.hasBufferedRequest(coder);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (coder instanceof Closeable) {
+                ((Closeable) coder).close();
             }
         }
     }
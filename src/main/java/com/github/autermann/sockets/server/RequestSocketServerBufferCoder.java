@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Coder that decodes requests from and encodes responses into
+ * {@link ByteBuffer}s instead of streams. As a decoder never blocks waiting
+ * for input it can parse frames in place and slice payloads without copying
+ * them.
+ * <p/>
+ * Implementations should be stateless; the connection specific state is kept
+ * in the buffers. Use a {@link BufferCoderAdapter} to pass a buffer coder
+ * where a {@link RequestSocketServerCoder} is expected.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @param <I> the request type
+ * @param <O> the response type
+ */
+public interface RequestSocketServerBufferCoder<I, O> {
+    /**
+     * Decodes the next request from the remaining bytes of {@code in}. If the
+     * buffer does not contain a complete request, {@code null} is returned
+     * and the decoder will be invoked again once more bytes are available;
+     * the position of the buffer is reset in this case.
+     * <p/>
+     * A request may reference the buffer (e.g. by a slice), but only until it
+     * has been handled: the buffer is reused for the following requests.
+     * Servers built by {@link SocketServerBuilder} retain the buffers of
+     * pipelined requests (see {@link BufferCoderAdapter}).
+     *
+     * @param in the buffer to decode from
+     *
+     * @return the request or {@code null} if more bytes are needed
+     *
+     * @throws IOException if the input is malformed
+     */
+    I decode(ByteBuffer in) throws IOException;
+
+    /**
+     * Encodes the response into {@code out}. If the remaining space of the
+     * buffer is too small, {@code false} is returned and the encoder will be
+     * invoked again with a larger, empty buffer.
+     *
+     * @param response the response to encode
+     * @param out      the buffer to encode to
+     *
+     * @return if the response was completely encoded
+     *
+     * @throws IOException if the response could not be encoded
+     */
+    boolean encode(O response, ByteBuffer out) throws IOException;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Access to the {@code SO_REUSEPORT} socket option. The option is only
+ * exposed by Java 9 and later; this class is the fallback for older runtimes.
+ * The actual implementation is located in the multi-release part of the jar
+ * ({@code src/main/java9}).
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+final class ReusePort {
+    private ReusePort() {
+    }
+
+    /**
+     * @return if the running JVM and platform support {@code SO_REUSEPORT}
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    static void enable(ServerSocket socket) throws IOException {
+        throw new SocketException("SO_REUSEPORT requires Java 9");
+    }
+
+    static void enable(ServerSocketChannel channel) throws IOException {
+        throw new SocketException("SO_REUSEPORT requires Java 9");
+    }
+}
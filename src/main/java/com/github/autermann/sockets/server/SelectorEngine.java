@@ -0,0 +1,501 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.autermann.sockets.journal.CloseReason;
+import com.github.autermann.sockets.journal.ConnectionJournal;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Non-blocking connection engine of a {@link StreamingSocketServer}. Accepted
+ * connections are distributed over a small number of selector threads that
+ * watch them for incoming data. A connection is only dispatched to the worker
+ * {@link Executor} once data is available; while a connection is idle it does
+ * not occupy a worker thread.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class SelectorEngine {
+    private static final Logger log = LoggerFactory
+            .getLogger(SelectorEngine.class);
+    private static final int IDLE = 0;
+    private static final int ACTIVE = 1;
+    private static final int CLOSING = 2;
+    private static final int CLOSED = 3;
+    private final StreamingSocketServer server;
+    private final List<SelectorLoop> loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Set<ChannelConnection> connections = Sets
+            .newConcurrentHashSet();
+    private final Queue<Selector> spareSelectors
+            = new ConcurrentLinkedQueue<Selector>();
+    private final Set<Selector> waitSelectors = Sets.newConcurrentHashSet();
+    private volatile boolean closed = false;
+    private volatile boolean draining = false;
+
+    SelectorEngine(StreamingSocketServer server, int threads) {
+        checkArgument(threads > 0);
+        this.server = checkNotNull(server);
+        this.loops = Lists.newArrayListWithCapacity(threads);
+        for (int i = 0; i < threads; ++i) {
+            this.loops.add(new SelectorLoop());
+        }
+    }
+
+    void start() throws IOException {
+        int i = 0;
+        for (SelectorLoop loop : loops) {
+            loop.open();
+            Thread t = new Thread(loop, "socket-server-selector-" + i++);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Hands a freshly accepted channel over to one of the selector threads.
+     *
+     * @param channel  the channel
+     * @param executor the executor processing the requests of the channel
+     * @param endpoint the endpoint that accepted the channel
+     *
+     * @throws IOException if the channel can not be switched to non-blocking
+     *                     mode
+     */
+    void register(SocketChannel channel, Executor executor,
+                  Endpoint endpoint) throws IOException {
+        try {
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        int idx = Math.abs(next.getAndIncrement() % loops.size());
+        SelectorLoop loop = loops.get(idx);
+        ChannelConnection con = new ChannelConnection(channel, loop,
+                                                     checkNotNull(executor),
+                                                     checkNotNull(endpoint));
+        connections.add(con);
+        if (draining) {
+            con.drain();
+        }
+        loop.execute(con.register);
+    }
+
+    /**
+     * Blocks the calling thread until the channel is ready for one of the
+     * specified operations.
+     *
+     * @param channel the channel
+     * @param ops     the interest set
+     *
+     * @throws IOException if the channel or the engine was closed
+     */
+    void await(SelectableChannel channel, int ops) throws IOException {
+        Selector selector = takeSelector();
+        try {
+            SelectionKey key = channel.register(selector, ops);
+            try {
+                selector.select();
+            } finally {
+                key.cancel();
+                selector.selectNow();
+            }
+        } catch (ClosedSelectorException e) {
+            throw new ClosedChannelException();
+        } finally {
+            releaseSelector(selector);
+        }
+        if (closed || !channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private Selector takeSelector() throws IOException {
+        Selector selector = spareSelectors.poll();
+        if (selector == null) {
+            selector = Selector.open();
+            waitSelectors.add(selector);
+        }
+        return selector;
+    }
+
+    private void releaseSelector(Selector selector) {
+        if (closed) {
+            close(selector);
+        } else {
+            spareSelectors.offer(selector);
+        }
+    }
+
+    /**
+     * Shuts down the input side of all connections. Idle connections become
+     * readable and are closed by their selector thread; active connections
+     * are closed once their processor reaches the end of the input.
+     */
+    void drain() {
+        draining = true;
+        for (ChannelConnection con : connections) {
+            con.drain();
+        }
+    }
+
+    void close() {
+        closed = true;
+        for (SelectorLoop loop : loops) {
+            loop.close();
+        }
+        for (ChannelConnection con : connections) {
+            con.close(CloseReason.SHUTDOWN);
+        }
+        for (Selector selector : waitSelectors) {
+            selector.wakeup();
+        }
+        Selector selector;
+        while ((selector = spareSelectors.poll()) != null) {
+            close(selector);
+        }
+    }
+
+    private void close(Selector selector) {
+        waitSelectors.remove(selector);
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Error closing selector", e);
+        }
+    }
+
+    private class SelectorLoop implements Runnable {
+        private final Queue<Runnable> tasks
+                = new ConcurrentLinkedQueue<Runnable>();
+        private Selector selector;
+
+        void open() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.offer(task);
+            selector.wakeup();
+        }
+
+        void close() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.error("Error closing selector", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> iter = selector.selectedKeys()
+                            .iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            ((ChannelConnection) key.attachment()).onReadable();
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    log.error("Error selecting channels", e);
+                }
+            }
+        }
+    }
+
+    private class ChannelConnection implements Runnable {
+        private final SocketChannel channel;
+        private final SelectorLoop loop;
+        private final Executor executor;
+        private final Endpoint endpoint;
+        private final ChannelInputStream in;
+        private final CoalescingOutputStream out;
+        private final IdleMonitor monitor;
+        /**
+         * Opened on the selector thread, as looking up the address of the
+         * client does not belong on the accepting thread. Guarded by the
+         * connection.
+         */
+        private ConnectionJournal.Connection journaled;
+        private SelectionKey key;
+        /**
+         * The owner of the input buffer and the processor: while the
+         * connection is {@link #ACTIVE} they are used by the selector or a
+         * worker thread, which releases them if the connection was closed in
+         * the meantime. Otherwise the closing thread releases them.
+         */
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private long dispatchedAt;
+        private ConnectionProcessor processor;
+        private final Runnable register = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ChannelConnection.this) {
+                    // unless already closed
+                    if (connections.contains(ChannelConnection.this)) {
+                        journaled = server.connectionOpened(channel.socket());
+                    }
+                }
+                try {
+                    key = channel.register(loop.selector,
+                                           SelectionKey.OP_READ,
+                                           ChannelConnection.this);
+                    if (monitor != null) {
+                        monitor.readStarted();
+                        monitor.start();
+                    }
+                } catch (ClosedChannelException e) {
+                    close(CloseReason.CLOSED);
+                }
+            }
+        };
+        private final Runnable rearm = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    key.interestOps(SelectionKey.OP_READ);
+                } catch (CancelledKeyException e) {
+                    // closed concurrently
+                }
+            }
+        };
+
+        ChannelConnection(SocketChannel channel, SelectorLoop loop,
+                          Executor executor, Endpoint endpoint) {
+            this.channel = channel;
+            this.loop = loop;
+            this.executor = executor;
+            this.endpoint = endpoint;
+            this.monitor = server.createIdleMonitor(new Closeable() {
+                @Override
+                public void close() {
+                    ChannelConnection.this.close(CloseReason.TIMEOUT);
+                }
+            });
+            this.in = new ChannelInputStream(channel, SelectorEngine.this,
+                                             server.getBufferPool(),
+                                             StreamingSocketServer.BUFFER_SIZE,
+                                             monitor, server.getMetrics()
+                                             .getBytesRead());
+            this.out = server.createOutputStream(
+                    in, new ChannelOutputStream(channel, SelectorEngine.this,
+                                                monitor));
+        }
+
+        /**
+         * Called by the selector thread. Reads the available data and
+         * dispatches the connection to a worker thread. The end of the stream
+         * is dispatched as well once the connection has a processor, which
+         * closes the connection after all outstanding responses are written.
+         */
+        void onReadable() {
+            if (!state.compareAndSet(IDLE, ACTIVE)) {
+                return;
+            }
+            if (monitor != null) {
+                monitor.readFinished();
+            }
+            try {
+                key.interestOps(0);
+                int read = in.fillNonBlocking();
+                if (read < 0 && processor == null) {
+                    close(CloseReason.CLOSED);
+                    deactivate();
+                } else if (read == 0) {
+                    if (deactivate()) {
+                        if (monitor != null) {
+                            monitor.readStarted();
+                        }
+                        rearm.run();
+                    }
+                } else {
+                    // at the end of the stream the processor still has to
+                    // complete the responses of pipelined requests
+                    dispatchedAt = System.nanoTime();
+                    executor.execute(this);
+                }
+            } catch (CancelledKeyException e) {
+                // closed concurrently
+                deactivate();
+            } catch (IOException e) {
+                server.getMetrics().getErrors().increment();
+                log.error("Couldn't read from channel: " + e.getMessage(), e);
+                close(CloseReason.ERROR);
+                deactivate();
+            } catch (RejectedExecutionException e) {
+                server.getMetrics().getErrors().increment();
+                log.error("Couldn't dispatch connection: " + e.getMessage(), e);
+                close(CloseReason.ERROR);
+                deactivate();
+            }
+        }
+
+        /**
+         * Called by a worker thread. Processes all buffered requests and hands
+         * the connection back to the selector thread.
+         */
+        @Override
+        public void run() {
+            boolean open = false;
+            CloseReason reason = CloseReason.CLOSED;
+            server.getMetrics().getQueueWait().recordSince(dispatchedAt);
+            boolean overloaded = server.isOverloaded(dispatchedAt);
+            try {
+                if (processor == null) {
+                    processor = server.createProcessor(in, out, monitor);
+                }
+                do {
+                    open = processor.process(overloaded);
+                    overloaded = false;
+                } while (open && (in.available() > 0 ||
+                                  processor.hasBufferedInput()));
+                if (!open) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                open = false;
+                if (closed) {
+                    reason = CloseReason.SHUTDOWN;
+                } else if (monitor != null && monitor.isExpired()) {
+                    reason = CloseReason.TIMEOUT;
+                } else {
+                    reason = CloseReason.ERROR;
+                    server.getMetrics().getErrors().increment();
+                    log.error("Couldn't handle input/output streams: " +
+                              e.getMessage(), e);
+                }
+            } catch (RuntimeException e) {
+                open = false;
+                reason = CloseReason.ERROR;
+                server.getMetrics().getErrors().increment();
+                log.error("Couldn't process connection: " + e.getMessage(), e);
+            }
+            if (!open) {
+                close(reason);
+                deactivate();
+            } else if (deactivate()) {
+                if (monitor != null) {
+                    monitor.readStarted();
+                }
+                loop.execute(rearm);
+            }
+        }
+
+        void drain() {
+            StreamingSocketServer.shutdownInput(channel.socket());
+        }
+
+        void close(CloseReason reason) {
+            if (monitor != null) {
+                monitor.stop();
+            }
+            if (connections.remove(this)) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.error("Couldn't close channel: " + e.getMessage(), e);
+                }
+                ConnectionJournal.Connection opened;
+                synchronized (this) {
+                    opened = journaled;
+                }
+                server.connectionClosed(endpoint, opened, in.getBytesRead(),
+                                        out.getBytesWritten(), reason);
+            }
+            out.discard();
+            while (true) {
+                int current = state.get();
+                if (current == IDLE) {
+                    if (state.compareAndSet(IDLE, CLOSED)) {
+                        release();
+                        return;
+                    }
+                } else if (current == ACTIVE) {
+                    // released by the owner once it is done
+                    if (state.compareAndSet(ACTIVE, CLOSING)) {
+                        return;
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Called by the owner of an active connection once it no longer uses
+         * the input buffer or the processor.
+         *
+         * @return {@code false} if the connection was closed in the meantime,
+         *         in which case its resources are released
+         */
+        private boolean deactivate() {
+            if (state.compareAndSet(ACTIVE, IDLE)) {
+                return true;
+            }
+            state.set(CLOSED);
+            release();
+            return false;
+        }
+
+        private void release() {
+            in.release();
+            if (processor != null) {
+                try {
+                    processor.close();
+                } catch (IOException e) {
+                    log.error("Couldn't close processor: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
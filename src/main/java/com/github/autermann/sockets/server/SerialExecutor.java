@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes tasks one after another in submission order on a delegate
+ * {@link Executor}. No thread of the delegate is occupied while the queue is
+ * empty.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+class SerialExecutor implements Executor {
+    private static final Logger log = LoggerFactory
+            .getLogger(SerialExecutor.class);
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private boolean running = false;
+
+    SerialExecutor(Executor delegate) {
+        this.delegate = checkNotNull(delegate);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        checkNotNull(task);
+        synchronized (tasks) {
+            tasks.offer(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        try {
+            delegate.execute(drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (tasks) {
+                tasks.clear();
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Error executing task " + task, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import com.github.autermann.sockets.metrics.Counter;
+import com.github.autermann.sockets.metrics.Gauge;
+import com.github.autermann.sockets.metrics.Histogram;
+import com.github.autermann.sockets.metrics.MetricRegistry;
+
+/**
+ * Metrics of a {@link StreamingSocketServer}. All metrics are always
+ * recorded; recording does not allocate. Latencies are in nanoseconds.
+ * <p/>
+ * The decode latency only includes requests whose first bytes were already
+ * buffered when decoding started, so that it does not include the time the
+ * client took to send the next request.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ServerMetrics {
+    private final MetricRegistry registry = new MetricRegistry();
+    private final WriteStatistics writeStatistics = new WriteStatistics();
+    private final Counter accepted = registry.counter("connections.accepted");
+    private final Counter closed = registry.counter("connections.closed");
+    private final Counter bytesRead = registry.counter("bytes.read");
+    private final Counter requests = registry.counter("requests");
+    private final Counter errors = registry.counter("errors");
+    private final Histogram queueWait = registry.histogram("latency.queue");
+    private final Histogram decode = registry.histogram("latency.decode");
+    private final Histogram handle = registry.histogram("latency.handle");
+    private final Histogram encode = registry.histogram("latency.encode");
+
+    ServerMetrics() {
+        registry.register("bytes.written", new Gauge() {
+            @Override
+            public long getValue() {
+                return writeStatistics.getBytesWritten();
+            }
+        });
+        registry.register("responses", new Gauge() {
+            @Override
+            public long getValue() {
+                return writeStatistics.getResponses();
+            }
+        });
+        registry.register("writes", new Gauge() {
+            @Override
+            public long getValue() {
+                return writeStatistics.getWrites();
+            }
+        });
+        registry.register("flushes", new Gauge() {
+            @Override
+            public long getValue() {
+                return writeStatistics.getFlushes();
+            }
+        });
+    }
+
+    /**
+     * @return the registry containing all metrics of the server
+     */
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public WriteStatistics getWriteStatistics() {
+        return writeStatistics;
+    }
+
+    /**
+     * @return the number of admitted connections
+     */
+    public Counter getAcceptedConnections() {
+        return accepted;
+    }
+
+    /**
+     * @return the number of closed connections
+     */
+    public Counter getClosedConnections() {
+        return closed;
+    }
+
+    public Counter getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of requests decoded by a {@link RequestSocketServer}
+     */
+    public Counter getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return the number of connections that failed
+     */
+    public Counter getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the time connections and pipelined requests waited for a
+     *         worker thread
+     */
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    public Histogram getDecodeLatency() {
+        return decode;
+    }
+
+    /**
+     * @return the time spent in the handler; for pipelined and asynchronous
+     *         requests the time until the response future completed
+     */
+    public Histogram getHandleLatency() {
+        return handle;
+    }
+
+    public Histogram getEncodeLatency() {
+        return encode;
+    }
+
+    @Override
+    public String toString() {
+        return registry.toString();
+    }
+}
@@ -15,10 +15,16 @@
  */
 package com.github.autermann.sockets.server;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.SocketException;
 
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.UnixDomainSockets;
+
 /**
  * TODO JavaDoc
  *
@@ -28,12 +34,206 @@ public abstract class ServerSocketFactory {
     public abstract ServerSocket createSocket(int port)
             throws IOException, SocketException;
 
+    /**
+     * Creates a server socket bound to the specified port with the specified
+     * options applied before binding. Factories that do not override this
+     * method ignore the options of the listening socket; accepted sockets are
+     * configured by the server regardless.
+     *
+     * @param port    the port
+     * @param options the socket options
+     *
+     * @return the bound server socket
+     *
+     * @throws IOException if the socket could not be created
+     */
+    public ServerSocket createSocket(int port, SocketOptions options)
+            throws IOException, SocketException {
+        return createSocket(port);
+    }
+
+    /**
+     * @return if this factory is able to create sockets using
+     *         {@link #createReusePortSocket(int)}
+     */
+    public boolean isReusePortSupported() {
+        return false;
+    }
+
+    /**
+     * Creates a server socket with {@code SO_REUSEPORT} enabled, so that
+     * multiple sockets can be bound to the same port.
+     *
+     * @param port the port
+     *
+     * @return the bound server socket
+     *
+     * @throws IOException                   if the socket could not be
+     *                                       created
+     * @throws UnsupportedOperationException if this factory does not support
+     *                                       {@code SO_REUSEPORT}
+     * @see #isReusePortSupported()
+     */
+    public ServerSocket createReusePortSocket(int port)
+            throws IOException, SocketException {
+        throw new UnsupportedOperationException("SO_REUSEPORT is not supported");
+    }
+
+    /**
+     * Creates a server socket with {@code SO_REUSEPORT} enabled and the
+     * specified options applied before binding.
+     *
+     * @param port    the port
+     * @param options the socket options
+     *
+     * @return the bound server socket
+     *
+     * @throws IOException                   if the socket could not be
+     *                                       created
+     * @throws UnsupportedOperationException if this factory does not support
+     *                                       {@code SO_REUSEPORT}
+     * @see #createSocket(int, SocketOptions)
+     */
+    public ServerSocket createReusePortSocket(int port, SocketOptions options)
+            throws IOException, SocketException {
+        return createReusePortSocket(port);
+    }
+
+    /**
+     * @return if the running JVM supports {@code SO_REUSEPORT}
+     */
+    protected static boolean isReusePortAvailable() {
+        return ReusePort.isSupported();
+    }
+
+    /**
+     * Enables {@code SO_REUSEPORT} on the unbound socket and binds it to the
+     * specified port. The socket is closed if this fails.
+     *
+     * @param <T>    the socket type
+     * @param socket the unbound socket
+     * @param port   the port
+     *
+     * @return the socket
+     *
+     * @throws IOException if the option could not be set or the socket could
+     *                     not be bound
+     */
+    protected static <T extends ServerSocket> T bindWithReusePort(T socket,
+                                                                  int port)
+            throws IOException {
+        return bindWithReusePort(socket, port, SocketOptions.defaults());
+    }
+
+    /**
+     * Enables {@code SO_REUSEPORT} on the unbound socket, applies the options
+     * and binds it to the specified port. The socket is closed if this fails.
+     *
+     * @param <T>     the socket type
+     * @param socket  the unbound socket
+     * @param port    the port
+     * @param options the socket options
+     *
+     * @return the socket
+     *
+     * @throws IOException if an option could not be set or the socket could
+     *                     not be bound
+     */
+    protected static <T extends ServerSocket> T bindWithReusePort(
+            T socket, int port, SocketOptions options) throws IOException {
+        try {
+            ReusePort.enable(socket);
+            options.bind(socket, port);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies the options to the unbound socket and binds it to the
+     * specified port. The socket is closed if this fails.
+     *
+     * @param <T>     the socket type
+     * @param socket  the unbound socket
+     * @param port    the port
+     * @param options the socket options
+     *
+     * @return the socket
+     *
+     * @throws IOException if an option could not be set or the socket could
+     *                     not be bound
+     */
+    protected static <T extends ServerSocket> T bind(T socket, int port,
+                                                     SocketOptions options)
+            throws IOException {
+        try {
+            options.bind(socket, port);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a factory binding server sockets to a Unix domain socket file
+     * instead of a TCP port. The port passed to the factory is ignored.
+     *
+     * @param path the socket file
+     *
+     * @return the factory
+     *
+     * @see UnixDomainSockets
+     */
+    public static ServerSocketFactory forUnixDomainSocket(final File path) {
+        checkNotNull(path);
+        return new ServerSocketFactory() {
+            @Override
+            public ServerSocket createSocket(int port)
+                    throws IOException, SocketException {
+                return createSocket(port, SocketOptions.defaults());
+            }
+
+            @Override
+            public ServerSocket createSocket(int port, SocketOptions options)
+                    throws IOException, SocketException {
+                return UnixDomainSockets.bind(path, options);
+            }
+        };
+    }
+
     public static ServerSocketFactory getDefault() {
         return new ServerSocketFactory() {
             @Override
             public ServerSocket createSocket(int port)
                     throws IOException, SocketException {
-                return new ServerSocket(port);
+                return createSocket(port, SocketOptions.defaults());
+            }
+
+            @Override
+            public ServerSocket createSocket(int port, SocketOptions options)
+                    throws IOException, SocketException {
+                return bind(new ServerSocket(), port, options);
+            }
+
+            @Override
+            public boolean isReusePortSupported() {
+                return isReusePortAvailable();
+            }
+
+            @Override
+            public ServerSocket createReusePortSocket(int port)
+                    throws IOException, SocketException {
+                return createReusePortSocket(port, SocketOptions.defaults());
+            }
+
+            @Override
+            public ServerSocket createReusePortSocket(int port,
+                                                      SocketOptions options)
+                    throws IOException, SocketException {
+                return bindWithReusePort(new ServerSocket(), port, options);
             }
         };
     }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+/**
+ * Outcome of a graceful shutdown of a {@link StreamingSocketServer}.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ * @see StreamingSocketServer#stop(long, java.util.concurrent.TimeUnit)
+ */
+public final class ShutdownResult {
+    private final int drained;
+    private final int forciblyClosed;
+
+    ShutdownResult(int drained, int forciblyClosed) {
+        this.drained = drained;
+        this.forciblyClosed = forciblyClosed;
+    }
+
+    /**
+     * @return the number of connections that were closed after finishing
+     *         their current request
+     */
+    public int getDrainedConnections() {
+        return drained;
+    }
+
+    /**
+     * @return the number of connections that were still busy at the deadline
+     *         and had to be closed
+     */
+    public int getForciblyClosedConnections() {
+        return forciblyClosed;
+    }
+
+    /**
+     * @return if all connections were drained in time
+     */
+    public boolean isComplete() {
+        return forciblyClosed == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownResult{drained=" + drained +
+               ", forciblyClosed=" + forciblyClosed + "}";
+    }
+}
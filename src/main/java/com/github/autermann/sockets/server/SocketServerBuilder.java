@@ -18,18 +18,34 @@ package com.github.autermann.sockets.server;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.File;
+import java.net.InetAddress;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.UnixDomainSockets;
+import com.github.autermann.sockets.journal.ConnectionEventSink;
+import com.github.autermann.sockets.journal.ConnectionJournal;
+import com.github.autermann.sockets.journal.LoggingEventSink;
+import com.github.autermann.sockets.metrics.MetricRegistry;
+import com.github.autermann.sockets.metrics.MetricsReporter;
 import com.github.autermann.sockets.ssl.SSLConfiguration;
 import com.github.autermann.sockets.ssl.SSLServerSocketFactory;
 import com.github.autermann.utils.NamedAndGroupedThreadFactory;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 /**
@@ -40,24 +56,98 @@ import com.google.common.collect.Lists;
 public class SocketServerBuilder {
 
     private static final AtomicInteger serverCount = new AtomicInteger(0);
+    private static final int DEFAULT_COALESCING_THRESHOLD = 8192;
+    private static final long DEFAULT_COALESCING_DELAY_MS = 1;
+    private static final long DEFAULT_SHEDDING_TARGET_MS = 5;
+    private static final long DEFAULT_SHEDDING_INTERVAL_MS = 100;
     private ServerSocketFactory serverSocketFactory;
+    private File unixDomainSocket;
+    private SocketOptions socketOptions = SocketOptions.defaults();
     private int port = -1;
     private int threads = -1;
+    private int selectorThreads = -1;
+    private boolean virtualThreads = false;
+    private int acceptors = 1;
+    private int pipelineDepth = -1;
+    private boolean parallelPipelining = false;
+    private boolean orderedResponses = true;
+    private int coalescingThreshold = 0;
+    private long coalescingDelay = 0;
+    private BufferPool bufferPool;
+    private int maxConnections = Integer.MAX_VALUE;
+    private int maxPendingConnections = -1;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.CLOSE;
+    private byte[] busyResponse;
+    private long sheddingTarget = 0;
+    private long sheddingInterval = 0;
+    private long readTimeout = 0;
+    private long writeTimeout = 0;
+    private long requestTimeout = 0;
+    private String jmxName;
+    private MetricsReporter metricsReporter;
+    private long reportingPeriod;
+    private ConnectionEventSink journalSink = new LoggingEventSink();
+    private int journalCapacity = ConnectionJournal.DEFAULT_CAPACITY;
+    private int journalSampleRate = 1;
     private Executor executor;
+    private List<Executor> executors;
+    private boolean ownsExecutors;
     private ThreadFactory threadFactory;
     private final List<Runnable> shutdownHooks = Lists.newLinkedList();
+    private final List<EndpointSpec> endpoints = Lists.newLinkedList();
 
     private SocketServerBuilder() {
     }
 
     public SocketServerBuilder withSocketFactory(ServerSocketFactory f) {
         this.serverSocketFactory = Preconditions.checkNotNull(f);
+        this.unixDomainSocket = null;
+        return this;
+    }
+
+    /**
+     * Sets the options applied to the listening sockets and to every accepted
+     * connection, e.g. {@link SocketOptions#lowLatency()}.
+     *
+     * @param options the socket options
+     *
+     * @return this
+     */
+    public SocketServerBuilder withSocketOptions(SocketOptions options) {
+        this.socketOptions = Preconditions.checkNotNull(options);
+        return this;
+    }
+
+    /**
+     * Listens on a Unix domain socket file instead of a TCP port, for clients
+     * on the same host. The file must not exist and is deleted when the
+     * server is stopped. Requires Java 16 and can not be combined with
+     * non-blocking I/O; setting a socket factory or SSL configuration
+     * afterwards replaces the Unix domain socket.
+     *
+     * @param path the socket file
+     *
+     * @return this
+     *
+     * @throws UnsupportedOperationException if the running JVM does not
+     *                                       support Unix domain sockets
+     * @see UnixDomainSockets
+     */
+    public SocketServerBuilder withUnixDomainSocket(File path) {
+        if (!UnixDomainSockets.isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Unix domain sockets require Java 16");
+        }
+        this.serverSocketFactory = ServerSocketFactory
+                .forUnixDomainSocket(path);
+        this.unixDomainSocket = path;
         return this;
     }
 
     public SocketServerBuilder withSSL(SSLConfiguration config) {
         if (config == null) {
             this.serverSocketFactory = null;
+            this.unixDomainSocket = null;
             return this;
         } else {
             return withSocketFactory(new SSLServerSocketFactory(config));
@@ -70,21 +160,537 @@ public class SocketServerBuilder {
         return this;
     }
 
+    /**
+     * Adds a plain TCP endpoint listening on all interfaces.
+     *
+     * @param name the name of the endpoint
+     * @param port the port
+     *
+     * @return this
+     *
+     * @see #withEndpoint(String, InetAddress, int, SSLConfiguration)
+     */
+    public SocketServerBuilder withEndpoint(String name, int port) {
+        return withEndpoint(name, null, port, null);
+    }
+
+    /**
+     * Adds an additional address the server listens on, e.g. a plain port
+     * for the local network and an SSL port bound to a public interface.
+     * All endpoints share the worker threads, buffer pool and connection
+     * limit of the server; every endpoint gets the configured number of
+     * acceptors and its own metrics. The endpoint configured by
+     * {@link #atPort(int)}, {@link #withSSL(SSLConfiguration)} and
+     * {@link #withSocketFactory(ServerSocketFactory)} is named
+     * {@value Endpoint#DEFAULT} and is optional if other endpoints are
+     * added. SSL endpoints can not be combined with non-blocking I/O.
+     *
+     * @param name    the unique name of the endpoint
+     * @param address the local address, or {@code null} for all interfaces
+     * @param port    the port
+     * @param ssl     the SSL configuration, or {@code null} for plain TCP
+     *
+     * @return this
+     *
+     * @see StreamingSocketServer#getEndpoints()
+     */
+    public SocketServerBuilder withEndpoint(String name, InetAddress address,
+                                            int port, SSLConfiguration ssl) {
+        checkNotNull(name);
+        Preconditions.checkArgument(port > 0);
+        Preconditions.checkArgument(!name.equals(Endpoint.DEFAULT),
+                                    "Reserved endpoint name: %s", name);
+        for (EndpointSpec endpoint : endpoints) {
+            Preconditions.checkArgument(!endpoint.name.equals(name),
+                                        "Duplicate endpoint: %s", name);
+        }
+        this.endpoints.add(new EndpointSpec(name, address, port,
+                                            ssl == null ? null
+                                            : new SSLServerSocketFactory(ssl)));
+        return this;
+    }
+
     public SocketServerBuilder withExecutor(Executor executor) {
         this.executor = Preconditions.checkNotNull(executor);
+        this.executors = null;
         return this;
     }
 
     public SocketServerBuilder withThreadFactory(ThreadFactory threadFactory) {
         this.threadFactory = threadFactory;
+        this.virtualThreads = false;
         this.executor = null;
+        this.executors = null;
         return this;
     }
 
     public SocketServerBuilder withFixedThreads(int threads) {
         Preconditions.checkArgument(threads > 0);
         this.threads = threads;
+        this.virtualThreads = false;
+        this.executor = null;
+        this.executors = null;
+        return this;
+    }
+
+    /**
+     * Runs every connection on a new virtual thread. This keeps the blocking
+     * programming model of {@link StreamingSocketServerHandler} while scaling
+     * to a large number of concurrent connections. Requires Java 21 or later.
+     *
+     * @return this
+     *
+     * @throws IllegalStateException if the JVM does not support virtual
+     *                               threads
+     */
+    public SocketServerBuilder withVirtualThreads() {
+        checkState(VirtualThreads.isSupported(),
+                   "Virtual threads require Java 21");
+        this.virtualThreads = true;
+        this.threads = -1;
+        this.threadFactory = null;
         this.executor = null;
+        this.executors = null;
+        return this;
+    }
+
+    /**
+     * Multiplexes the connections over the number of available processors
+     * instead of dedicating a worker thread to every connection.
+     *
+     * @return this
+     *
+     * @see #withNonBlockingIO(int)
+     */
+    public SocketServerBuilder withNonBlockingIO() {
+        return withNonBlockingIO(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Multiplexes the connections over the specified number of selector
+     * threads. A connection is only dispatched to the executor once data
+     * arrives, so idle connections do not occupy a worker thread. As a
+     * {@link StreamingSocketServerHandler} processes a connection in a single
+     * invocation this mainly benefits a {@link RequestSocketServer}, which
+     * releases the worker thread after every request.
+     * <p/>
+     * Non-blocking I/O can not be combined with a custom
+     * {@link ServerSocketFactory} (including SSL).
+     *
+     * @param selectorThreads the number of selector threads
+     *
+     * @return this
+     */
+    public SocketServerBuilder withNonBlockingIO(int selectorThreads) {
+        Preconditions.checkArgument(selectorThreads > 0);
+        this.selectorThreads = selectorThreads;
+        return this;
+    }
+
+    /**
+     * Accepts connections using multiple threads. If the
+     * {@link ServerSocketFactory} supports {@code SO_REUSEPORT} every acceptor
+     * binds its own listening socket and the kernel balances incoming
+     * connections between them, otherwise the acceptors share a single
+     * listening socket. Unless an executor is supplied using
+     * {@link #withExecutor(Executor)} every acceptor gets its own worker pool;
+     * the threads passed to {@link #withFixedThreads(int)} are split between
+     * them.
+     *
+     * @param acceptors the number of acceptor threads
+     *
+     * @return this
+     */
+    public SocketServerBuilder withAcceptors(int acceptors) {
+        Preconditions.checkArgument(acceptors > 0);
+        this.acceptors = acceptors;
+        this.executors = null;
+        return this;
+    }
+
+    /**
+     * Enables pipelined request processing for a {@link RequestSocketServer}.
+     * While a request is handled the server keeps decoding the following
+     * requests of the connection, up to {@code depth} outstanding requests.
+     * Requests are handled one after another and the responses are written in
+     * request order.
+     * <p/>
+     * As every connection occupies a thread for decoding, the requests are
+     * handled on a separate executor of the server. It uses as many threads
+     * as passed to {@link #withFixedThreads(int)}, virtual threads if
+     * {@link #withVirtualThreads()} is used, or a cached thread pool
+     * otherwise. The coder has to support concurrent calls to {@code decode}
+     * and {@code encode}.
+     *
+     * @param depth the maximum number of outstanding requests per connection
+     *
+     * @return this
+     */
+    public SocketServerBuilder withPipelining(int depth) {
+        return withPipelining(depth, false);
+    }
+
+    /**
+     * Enables pipelined request processing for a {@link RequestSocketServer}.
+     * If {@code parallel} is {@code true} the outstanding requests of a
+     * connection are handled in parallel on the executor, which requires a
+     * thread safe {@link RequestSocketServerHandler}. Responses are always
+     * written in request order.
+     *
+     * @param depth    the maximum number of outstanding requests per
+     *                 connection
+     * @param parallel if requests may be handled in parallel
+     *
+     * @return this
+     *
+     * @see #withPipelining(int)
+     */
+    public SocketServerBuilder withPipelining(int depth, boolean parallel) {
+        Preconditions.checkArgument(depth > 0);
+        this.pipelineDepth = depth;
+        this.parallelPipelining = parallel;
+        return this;
+    }
+
+    /**
+     * Writes the responses of pipelined requests as soon as they are
+     * complete instead of in request order, so that a slow request does not
+     * delay the responses to the following ones. Only applies to servers
+     * pipelining requests in parallel or using an
+     * {@link AsyncRequestSocketServerHandler}. Clients have to match
+     * responses to requests themselves, e.g. by sending
+     * {@link com.github.autermann.sockets.Correlated} messages through a
+     * {@link com.github.autermann.sockets.framing.FrameCodec#asCorrelatedServerCoder()
+     * correlated coder} and a {@link CorrelatingHandler}.
+     *
+     * @return this
+     *
+     * @see com.github.autermann.sockets.client.SocketClientBuilder#buildMultiplexed
+     */
+    public SocketServerBuilder withOutOfOrderResponses() {
+        this.orderedResponses = false;
+        return this;
+    }
+
+    /**
+     * Enables write coalescing with a threshold of 8 KiB and a maximum delay
+     * of 1 ms.
+     *
+     * @return this
+     *
+     * @see #withWriteCoalescing(int, long, TimeUnit)
+     */
+    public SocketServerBuilder withWriteCoalescing() {
+        return withWriteCoalescing(DEFAULT_COALESCING_THRESHOLD,
+                                   DEFAULT_COALESCING_DELAY_MS,
+                                   TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Buffers the output of every connection instead of passing each write
+     * directly to the socket. The buffer is written when it reaches the
+     * threshold or when the stream is flushed. A flush is deferred while the
+     * next request is already available on the input side, so that responses
+     * to pipelined requests are sent together, but for at most the specified
+     * delay.
+     *
+     * @param threshold the buffer size in bytes
+     * @param maxDelay  the maximum delay of a deferred flush, {@code 0} to
+     *                  never defer flushes
+     * @param unit      the unit of {@code maxDelay}
+     *
+     * @return this
+     *
+     * @see StreamingSocketServer#getWriteStatistics()
+     */
+    public SocketServerBuilder withWriteCoalescing(int threshold,
+                                                   long maxDelay,
+                                                   TimeUnit unit) {
+        Preconditions.checkArgument(threshold > 0);
+        Preconditions.checkArgument(maxDelay >= 0);
+        this.coalescingThreshold = threshold;
+        this.coalescingDelay = unit.toNanos(maxDelay);
+        return this;
+    }
+
+    /**
+     * Sets the pool the I/O buffers of the connections are taken from. By
+     * default every server uses its own pool of heap buffers. A pool of
+     * direct buffers only benefits the non-blocking engine; the streams of
+     * blocking connections always use heap buffers.
+     *
+     * @param pool the pool, may be shared between servers
+     *
+     * @return this
+     *
+     * @see #withNonBlockingIO()
+     */
+    public SocketServerBuilder withBufferPool(BufferPool pool) {
+        this.bufferPool = Preconditions.checkNotNull(pool);
+        return this;
+    }
+
+    /**
+     * Limits the number of concurrent connections. Connections exceeding the
+     * limit are handled according to the {@link RejectionPolicy}. Without a
+     * limit and without {@link #withFixedThreads(int)} every connection of
+     * the blocking engine creates a new thread.
+     *
+     * @param max the maximum number of concurrent connections
+     *
+     * @return this
+     *
+     * @see StreamingSocketServer#getConnectionCount()
+     * @see StreamingSocketServer#getRejectedConnectionCount()
+     */
+    public SocketServerBuilder withMaxConnections(int max) {
+        Preconditions.checkArgument(max > 0);
+        this.maxConnections = max;
+        return this;
+    }
+
+    /**
+     * Bounds the number of accepted connections waiting for a thread of a
+     * pool created by {@link #withFixedThreads(int)}; by default the queue is
+     * unbounded. Connections exceeding the bound are handled according to the
+     * {@link RejectionPolicy}. Only supported by the blocking engine with a
+     * fixed thread pool; building a server with a custom executor, virtual
+     * threads or a cached thread pool fails.
+     *
+     * @param max the maximum number of waiting connections
+     *
+     * @return this
+     */
+    public SocketServerBuilder withMaxPendingConnections(int max) {
+        Preconditions.checkArgument(max > 0);
+        this.maxPendingConnections = max;
+        return this;
+    }
+
+    /**
+     * Sets the policy for connections exceeding the limits. Defaults to
+     * {@link RejectionPolicy#CLOSE}.
+     *
+     * @param policy the policy
+     *
+     * @return this
+     *
+     * @see #withMaxConnections(int)
+     * @see #withMaxPendingConnections(int)
+     */
+    public SocketServerBuilder withRejectionPolicy(RejectionPolicy policy) {
+        this.rejectionPolicy = checkNotNull(policy);
+        return this;
+    }
+
+    /**
+     * Rejects connections by writing the specified response before closing
+     * them. The response should be small, as it is written by the thread
+     * accepting connections: it is only written as far as it fits into the
+     * send buffer of the connection, without waiting for the client. SSL
+     * connections are closed without a response, as writing it would
+     * require a handshake.
+     *
+     * @param response the response
+     *
+     * @return this
+     *
+     * @see RejectionPolicy#BUSY_RESPONSE
+     */
+    public SocketServerBuilder withBusyResponse(byte[] response) {
+        this.busyResponse = checkNotNull(response).clone();
+        return withRejectionPolicy(RejectionPolicy.BUSY_RESPONSE);
+    }
+
+    /**
+     * Enables load shedding with a target of 5 ms and an interval of 100 ms.
+     *
+     * @return this
+     *
+     * @see #withLoadShedding(long, long, TimeUnit)
+     */
+    public SocketServerBuilder withLoadShedding() {
+        return withLoadShedding(DEFAULT_SHEDDING_TARGET_MS,
+                                DEFAULT_SHEDDING_INTERVAL_MS,
+                                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sheds requests of a {@link RequestSocketServer} that waited too long
+     * for a worker thread, in the style of the CoDel queue management
+     * algorithm: if the time requests wait did not drop below the target
+     * during a whole interval, requests that waited longer than twice the
+     * target are not handled. They are answered by the handler if it
+     * implements {@link OverloadResponder}, otherwise their connection is
+     * closed. Short bursts are absorbed, while a standing queue is drained
+     * before the waiting clients give up.
+     * <p/>
+     * The waiting time is measured for pipelined requests dispatched to the
+     * executor and for connections waiting for a thread, from the dispatch
+     * until a worker picks them up; the time spent on the handshake or
+     * reading the request does not count.
+     *
+     * @param target   the acceptable waiting time
+     * @param interval the interval the waiting time has to stay above the
+     *                 target before requests are shed; should be about the
+     *                 round trip time of the clients
+     * @param unit     the unit of {@code target} and {@code interval}
+     *
+     * @return this
+     *
+     * @see RequestSocketServer#getShedRequestCount()
+     */
+    public SocketServerBuilder withLoadShedding(long target, long interval,
+                                                TimeUnit unit) {
+        Preconditions.checkArgument(target > 0);
+        Preconditions.checkArgument(interval > 0);
+        this.sheddingTarget = unit.toNanos(target);
+        this.sheddingInterval = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * Closes connections that wait longer than the specified time for
+     * incoming data, e.g. abandoned clients that would otherwise occupy a
+     * thread (or, with non-blocking I/O, a buffer) forever. The time spent
+     * handling a request does not count.
+     * <p/>
+     * All timeouts of a server are enforced by a single timer thread with a
+     * resolution of 10 ms.
+     *
+     * @param timeout the timeout, {@code 0} to wait forever
+     * @param unit    the unit of {@code timeout}
+     *
+     * @return this
+     */
+    public SocketServerBuilder withReadTimeout(long timeout, TimeUnit unit) {
+        Preconditions.checkArgument(timeout >= 0);
+        this.readTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Closes connections whose writes block longer than the specified time,
+     * i.e. clients that stopped reading their responses.
+     *
+     * @param timeout the timeout, {@code 0} to block forever
+     * @param unit    the unit of {@code timeout}
+     *
+     * @return this
+     *
+     * @see #withReadTimeout(long, TimeUnit)
+     */
+    public SocketServerBuilder withWriteTimeout(long timeout, TimeUnit unit) {
+        Preconditions.checkArgument(timeout >= 0);
+        this.writeTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Limits the time between decoding a request of a
+     * {@link RequestSocketServer} and writing its response. If the deadline
+     * expires, the thread handling a synchronous request is interrupted, the
+     * future of a pipelined or asynchronous request is cancelled, and the
+     * connection is closed.
+     *
+     * @param timeout the timeout, {@code 0} for no deadline
+     * @param unit    the unit of {@code timeout}
+     *
+     * @return this
+     *
+     * @see #withReadTimeout(long, TimeUnit)
+     */
+    public SocketServerBuilder withRequestTimeout(long timeout,
+                                                  TimeUnit unit) {
+        Preconditions.checkArgument(timeout >= 0);
+        this.requestTimeout = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Exports the metrics of the server as an MBean named
+     * {@code com.github.autermann.sockets:type=SocketServer,name=<name>}
+     * while it is running.
+     *
+     * @param name the name of the server
+     *
+     * @return this
+     *
+     * @see StreamingSocketServer#getMetrics()
+     */
+    public SocketServerBuilder withJmx(String name) {
+        this.jmxName = checkNotNull(name);
+        return this;
+    }
+
+    /**
+     * Reports the metrics of the server periodically while it is running,
+     * and a last time when it is stopped.
+     *
+     * @param reporter the reporter
+     * @param period   the reporting period
+     * @param unit     the unit of {@code period}
+     *
+     * @return this
+     *
+     * @see StreamingSocketServer#getMetrics()
+     */
+    public SocketServerBuilder withMetricsReporter(MetricsReporter reporter,
+                                                   long period,
+                                                   TimeUnit unit) {
+        Preconditions.checkArgument(period > 0);
+        this.metricsReporter = checkNotNull(reporter);
+        this.reportingPeriod = unit.toNanos(period);
+        return this;
+    }
+
+    /**
+     * Records the opening and closing of every connection in a journal that
+     * is drained asynchronously to the sink. By default, the events are
+     * logged using a {@link LoggingEventSink}.
+     *
+     * @param sink the sink
+     *
+     * @return this
+     *
+     * @see ConnectionJournal
+     */
+    public SocketServerBuilder withConnectionJournal(ConnectionEventSink sink) {
+        return withConnectionJournal(sink, ConnectionJournal.DEFAULT_CAPACITY,
+                                     1);
+    }
+
+    /**
+     * Records the opening and closing of connections in a journal that is
+     * drained asynchronously to the sink.
+     *
+     * @param sink       the sink
+     * @param capacity   the number of events to buffer; further events are
+     *                   dropped until the journal is drained
+     * @param sampleRate record only every {@code sampleRate}-th connection
+     *
+     * @return this
+     *
+     * @see ConnectionJournal
+     */
+    public SocketServerBuilder withConnectionJournal(ConnectionEventSink sink,
+                                                     int capacity,
+                                                     int sampleRate) {
+        Preconditions.checkArgument(capacity > 0);
+        Preconditions.checkArgument(sampleRate > 0);
+        this.journalSink = checkNotNull(sink);
+        this.journalCapacity = capacity;
+        this.journalSampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * Disables the connection journal, so that connections are not logged.
+     *
+     * @return this
+     */
+    public SocketServerBuilder withoutConnectionJournal() {
+        this.journalSink = null;
         return this;
     }
 
@@ -94,23 +700,228 @@ public class SocketServerBuilder {
     }
 
     private void validate() {
-        checkState(port > 0);
-        if (serverSocketFactory == null) {
-            serverSocketFactory = ServerSocketFactory.getDefault();
+        checkState(port > 0 || unixDomainSocket != null ||
+                   !endpoints.isEmpty());
+        checkState(selectorThreads <= 0 || unixDomainSocket == null,
+                   "Non-blocking I/O does not support Unix domain sockets");
+        checkState(selectorThreads <= 0 || serverSocketFactory == null,
+                   "Non-blocking I/O does not support custom socket factories");
+        for (EndpointSpec endpoint : endpoints) {
+            checkState(selectorThreads <= 0 || endpoint.socketFactory == null,
+                       "Non-blocking I/O does not support SSL endpoints");
         }
-        if (threadFactory == null) {
-            threadFactory
-                    = NamedAndGroupedThreadFactory.builder()
-                    .name("socket-server-" + serverCount.getAndIncrement())
-                    .build();
+        checkState(selectorThreads <= 0 || maxPendingConnections <= 0,
+                   "Non-blocking I/O does not support pending connection limits");
+        checkState(maxPendingConnections <= 0 || (threads > 0 &&
+                                                  executor == null &&
+                                                  !virtualThreads),
+                   "Pending connection limits require a fixed thread pool");
+        checkState(rejectionPolicy != RejectionPolicy.BUSY_RESPONSE ||
+                   busyResponse != null, "No busy response configured");
+        if (executor != null) {
+            executors = ImmutableList.of(executor);
+            ownsExecutors = false;
+        } else {
+            // every server gets its own executors, as it shuts them down
+            ImmutableList.Builder<Executor> shards = ImmutableList.builder();
+            String name = "socket-server-" + serverCount.getAndIncrement();
+            for (int i = 0; i < acceptors; ++i) {
+                shards.add(createExecutor(acceptors > 1 ? name + "-" + i : name));
+            }
+            executors = shards.build();
+            ownsExecutors = true;
         }
-        if (executor == null) {
-            executor = threads > 0
-                       ? Executors.newFixedThreadPool(threads, threadFactory)
-                       : Executors.newCachedThreadPool(threadFactory);
+    }
+
+    private Executor createExecutor(String name) {
+        if (virtualThreads) {
+            return VirtualThreads.newExecutor(name);
+        }
+        ThreadFactory tf = threadFactory;
+        if (tf == null) {
+            tf = NamedAndGroupedThreadFactory.builder().name(name).build();
+        }
+        if (threads > 0) {
+            int shardThreads = (threads + acceptors - 1) / acceptors;
+            if (maxPendingConnections <= 0) {
+                return Executors.newFixedThreadPool(shardThreads, tf);
+            }
+            BlockingQueue<Runnable> queue
+                    = new ArrayBlockingQueue<Runnable>(maxPendingConnections);
+            RejectedExecutionHandler rejectionHandler
+                    = rejectionPolicy == RejectionPolicy.STOP_ACCEPTING
+                      ? new WaitPolicy() : new ThreadPoolExecutor.AbortPolicy();
+            return new ThreadPoolExecutor(shardThreads, shardThreads,
+                                          0L, TimeUnit.MILLISECONDS, queue,
+                                          tf, rejectionHandler);
+        } else {
+            return Executors.newCachedThreadPool(tf);
         }
     }
 
+    /**
+     * Creates the executor handling pipelined requests and writing the
+     * responses of asynchronous handlers. It is separate from the executors
+     * processing the connections, as these may be occupied by connections
+     * waiting for input or for outstanding requests.
+     *
+     * @return the executor, owned by the server
+     */
+    Executor createHandlerExecutor() {
+        String name = "socket-server-handler";
+        if (virtualThreads) {
+            return VirtualThreads.newExecutor(name);
+        }
+        ThreadFactory tf = threadFactory;
+        if (tf == null) {
+            tf = NamedAndGroupedThreadFactory.builder().name(name).build();
+        }
+        if (threads > 0) {
+            return Executors.newFixedThreadPool(threads, tf);
+        } else {
+            return Executors.newCachedThreadPool(tf);
+        }
+    }
+
+    /**
+     * @return the configured factory, or the default factory
+     */
+    ServerSocketFactory getServerSocketFactory() {
+        return serverSocketFactory != null ? serverSocketFactory
+               : ServerSocketFactory.getDefault();
+    }
+
+    SocketOptions getSocketOptions() {
+        return socketOptions;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Creates the endpoints of a new server.
+     *
+     * @param registry the metrics of the server
+     *
+     * @return the endpoints, starting with the default endpoint if
+     *         configured
+     */
+    List<Endpoint> createEndpoints(MetricRegistry registry) {
+        ImmutableList.Builder<Endpoint> list = ImmutableList.builder();
+        if (port > 0 || unixDomainSocket != null) {
+            list.add(new Endpoint(Endpoint.DEFAULT, null, port,
+                                  getServerSocketFactory(), registry));
+        }
+        for (EndpointSpec endpoint : endpoints) {
+            list.add(endpoint.create(registry));
+        }
+        return list.build();
+    }
+
+    int getSelectorThreads() {
+        return selectorThreads;
+    }
+
+    int getAcceptors() {
+        return acceptors;
+    }
+
+    List<Executor> getExecutors() {
+        return executors;
+    }
+
+    /**
+     * @return if the executors were created by this builder and are owned by
+     *         the server
+     */
+    boolean ownsExecutors() {
+        return ownsExecutors;
+    }
+
+    int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    boolean isParallelPipelining() {
+        return parallelPipelining;
+    }
+
+    boolean isOrderedResponses() {
+        return orderedResponses;
+    }
+
+    int getCoalescingThreshold() {
+        return coalescingThreshold;
+    }
+
+    long getCoalescingDelay() {
+        return coalescingDelay;
+    }
+
+    int getMaxConnections() {
+        return maxConnections;
+    }
+
+    RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    byte[] getBusyResponse() {
+        return busyResponse;
+    }
+
+    long getReadTimeout() {
+        return readTimeout;
+    }
+
+    long getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    String getJmxName() {
+        return jmxName;
+    }
+
+    MetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    long getReportingPeriod() {
+        return reportingPeriod;
+    }
+
+    ConnectionJournal createConnectionJournal() {
+        if (journalSink == null) {
+            return null;
+        }
+        return new ConnectionJournal(journalSink, journalCapacity,
+                                     journalSampleRate);
+    }
+
+    long getSheddingTarget() {
+        return sheddingTarget;
+    }
+
+    long getSheddingInterval() {
+        return sheddingInterval;
+    }
+
+    BufferPool getBufferPool() {
+        if (bufferPool == null) {
+            bufferPool = new BufferPool();
+        }
+        return bufferPool;
+    }
+
+    List<Runnable> getShutdownHooks() {
+        return shutdownHooks;
+    }
+
     public StreamingSocketServer build(StreamingSocketServerHandler h) {
         return build(Suppliers.ofInstance(checkNotNull(h)));
     }
@@ -119,11 +930,7 @@ public class SocketServerBuilder {
             Supplier<StreamingSocketServerHandler> handlerFactory) {
         checkNotNull(handlerFactory);
         validate();
-        return new StreamingSocketServer(serverSocketFactory,
-                                         handlerFactory,
-                                         executor,
-                                         shutdownHooks,
-                                         port);
+        return new StreamingSocketServer(this, handlerFactory);
     }
 
     public <I, O> RequestSocketServer<I, O> build(
@@ -132,12 +939,8 @@ public class SocketServerBuilder {
         checkNotNull(coderFactory);
         checkNotNull(handlerFactory);
         validate();
-        return new RequestSocketServer<I, O>(serverSocketFactory,
-                                             coderFactory,
-                                             handlerFactory,
-                                             executor,
-                                             shutdownHooks,
-                                             port);
+        return new RequestSocketServer<I, O>(this, coderFactory,
+                                             handlerFactory);
     }
 
     public <I, O> RequestSocketServer<I, O> build(
@@ -159,7 +962,134 @@ public class SocketServerBuilder {
                      Suppliers.ofInstance(checkNotNull(handler)));
     }
 
+    /**
+     * Builds a server using a {@link RequestSocketServerBufferCoder}. Every
+     * connection decodes its requests through its own
+     * {@link BufferCoderAdapter} backed by the buffer pool of the server. If
+     * requests are pipelined, the adapters retain the decoded requests.
+     *
+     * @param <I>            the request type
+     * @param <O>            the response type
+     * @param coder          the coder
+     * @param handlerFactory the factory for request handlers
+     *
+     * @return the server
+     */
+    public <I, O> RequestSocketServer<I, O> build(
+            RequestSocketServerBufferCoder<I, O> coder,
+            Supplier<RequestSocketServerHandler<I, O>> handlerFactory) {
+        checkNotNull(coder);
+        return build(new BufferCoderAdapterFactory<I, O>(coder,
+                                                         getBufferPool(),
+                                                         pipelineDepth > 0),
+                     handlerFactory);
+    }
+
+    public <I, O> RequestSocketServer<I, O> build(
+            RequestSocketServerBufferCoder<I, O> coder,
+            RequestSocketServerHandler<I, O> handler) {
+        return build(coder, Suppliers.ofInstance(checkNotNull(handler)));
+    }
+
+    /**
+     * Builds a server using an {@link AsyncRequestSocketServerHandler}.
+     * Requests are always pipelined, with the depth set by
+     * {@link #withPipelining(int)} or 16 outstanding requests per connection
+     * by default. The handler is shared by all connections.
+     *
+     * @param <I>          the request type
+     * @param <O>          the response type
+     * @param coderFactory the factory for coders
+     * @param handler      the handler
+     *
+     * @return the server
+     */
+    public <I, O> RequestSocketServer<I, O> build(
+            Supplier<RequestSocketServerCoder<I, O>> coderFactory,
+            AsyncRequestSocketServerHandler<I, O> handler) {
+        checkNotNull(coderFactory);
+        checkNotNull(handler);
+        validate();
+        return new RequestSocketServer<I, O>(this, coderFactory, handler);
+    }
+
+    public <I, O> RequestSocketServer<I, O> build(
+            RequestSocketServerCoder<I, O> coder,
+            AsyncRequestSocketServerHandler<I, O> handler) {
+        return build(Suppliers.ofInstance(checkNotNull(coder)), handler);
+    }
+
+    public <I, O> RequestSocketServer<I, O> build(
+            RequestSocketServerBufferCoder<I, O> coder,
+            AsyncRequestSocketServerHandler<I, O> handler) {
+        checkNotNull(coder);
+        return build(new BufferCoderAdapterFactory<I, O>(coder,
+                                                         getBufferPool(),
+                                                         true),
+                     handler);
+    }
+
     public static SocketServerBuilder create() {
         return new SocketServerBuilder();
     }
+
+    private static class BufferCoderAdapterFactory<I, O>
+            implements Supplier<RequestSocketServerCoder<I, O>> {
+        private final RequestSocketServerBufferCoder<I, O> coder;
+        private final BufferPool pool;
+        private final boolean retaining;
+
+        BufferCoderAdapterFactory(RequestSocketServerBufferCoder<I, O> coder,
+                                  BufferPool pool, boolean retaining) {
+            this.coder = coder;
+            this.pool = pool;
+            this.retaining = retaining;
+        }
+
+        @Override
+        public RequestSocketServerCoder<I, O> get() {
+            return new BufferCoderAdapter<I, O>(coder, pool, retaining);
+        }
+    }
+
+    /**
+     * Lets the accepting thread wait for space in the queue, so that further
+     * connections wait in the backlog of the operating system.
+     */
+    private static class WaitPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            try {
+                executor.getQueue().put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
+
+    private static class EndpointSpec {
+        private final String name;
+        private final InetAddress address;
+        private final int port;
+        private final ServerSocketFactory socketFactory;
+
+        EndpointSpec(String name, InetAddress address, int port,
+                     ServerSocketFactory socketFactory) {
+            this.name = name;
+            this.address = address;
+            this.port = port;
+            this.socketFactory = socketFactory;
+        }
+
+        Endpoint create(MetricRegistry registry) {
+            return new Endpoint(name, address, port,
+                                socketFactory == null
+                                ? ServerSocketFactory.getDefault()
+                                : socketFactory, registry);
+        }
+    }
 }
@@ -23,13 +23,37 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.ObjectName;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.journal.CloseReason;
+import com.github.autermann.sockets.journal.ConnectionJournal;
+import com.github.autermann.sockets.metrics.Gauge;
+import com.github.autermann.sockets.metrics.JfrEvents;
+import com.github.autermann.sockets.metrics.JmxMetrics;
+import com.github.autermann.sockets.metrics.MetricsReporter;
+import com.github.autermann.sockets.metrics.ScheduledReporter;
+import com.github.autermann.sockets.ssl.SSLUtils;
+import com.github.autermann.utils.NamedAndGroupedThreadFactory;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
 
 /**
@@ -40,48 +64,321 @@ import com.google.common.io.Closer;
 public class StreamingSocketServer {
     private static final Logger log = LoggerFactory
             .getLogger(StreamingSocketServer.class);
+    static final int BUFFER_SIZE = 8192;
     private final ServerSocketFactory serverSocketFactory;
+    private final SocketOptions socketOptions;
     private final Supplier<StreamingSocketServerHandler> handlerFactory;
     private final int port;
-    private final Executor pool;
+    private final List<Endpoint> endpoints;
+    private final List<Executor> pools;
+    private final Executor handlerExecutor;
     private final List<Runnable> shutdownHooks;
-    private ServerSocket serverSocket;
+    private final int selectorThreads;
+    private final int acceptors;
+    private final int coalescingThreshold;
+    private final long coalescingDelay;
+    private final BufferPool bufferPool;
+    private final AdmissionControl admissionControl;
+    private final long readTimeout;
+    private final long writeTimeout;
+    private final long requestTimeout;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final String jmxName;
+    private final MetricsReporter metricsReporter;
+    private final long reportingPeriod;
+    private final ConnectionJournal journal;
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final boolean ownsExecutors;
+    private final Set<Socket> sockets = Sets.newConcurrentHashSet();
+    private final Object drainLock = new Object();
+    private volatile boolean draining = false;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService flusher;
+    private HashedWheelTimer timer;
+    private ObjectName mbean;
+    private ScheduledReporter scheduledReporter;
+    private List<ServerSocket> serverSockets = ImmutableList.of();
+    private SelectorEngine selectorEngine;
 
-    StreamingSocketServer(ServerSocketFactory serverSocketFactory,
-                          Supplier<StreamingSocketServerHandler> handlerFactory,
-                          Executor executor, List<Runnable> shutdownHooks,
-                          int port) {
-        this.serverSocketFactory = serverSocketFactory;
+    StreamingSocketServer(SocketServerBuilder builder,
+                          Supplier<StreamingSocketServerHandler> handlerFactory) {
+        this.serverSocketFactory = builder.getServerSocketFactory();
+        this.socketOptions = builder.getSocketOptions();
         this.handlerFactory = handlerFactory;
-        this.shutdownHooks = shutdownHooks;
-        this.port = port;
-        this.pool = executor;
+        this.shutdownHooks = builder.getShutdownHooks();
+        this.endpoints = builder.createEndpoints(metrics.getRegistry());
+        this.port = endpoints.get(0).getPort();
+        this.pools = builder.getExecutors();
+        this.ownsExecutors = builder.ownsExecutors();
+        this.handlerExecutor = builder.createHandlerExecutor();
+        this.selectorThreads = builder.getSelectorThreads();
+        this.acceptors = builder.getAcceptors();
+        this.coalescingThreshold = builder.getCoalescingThreshold();
+        this.coalescingDelay = builder.getCoalescingDelay();
+        this.bufferPool = builder.getBufferPool();
+        this.admissionControl = new AdmissionControl(
+                builder.getMaxConnections(), builder.getRejectionPolicy(),
+                builder.getBusyResponse());
+        this.readTimeout = builder.getReadTimeout();
+        this.writeTimeout = builder.getWriteTimeout();
+        this.requestTimeout = builder.getRequestTimeout();
+        this.jmxName = builder.getJmxName();
+        this.metricsReporter = builder.getMetricsReporter();
+        this.reportingPeriod = builder.getReportingPeriod();
+        this.journal = builder.createConnectionJournal();
+        this.metrics.getRegistry().register("connections.active", new Gauge() {
+            @Override
+            public long getValue() {
+                return getConnectionCount();
+            }
+        });
+        this.metrics.getRegistry().register("connections.rejected",
+                                            new Gauge() {
+            @Override
+            public long getValue() {
+                return getRejectedConnectionCount();
+            }
+        });
+        if (this.journal != null) {
+            this.metrics.getRegistry().register("journal.dropped",
+                                                new Gauge() {
+                @Override
+                public long getValue() {
+                    return journal.getDroppedEvents();
+                }
+            });
+        }
     }
 
     public ServerSocket getServerSocket() {
-        return this.serverSocket;
+        return this.serverSockets.isEmpty() ? null : this.serverSockets.get(0);
+    }
+
+    /**
+     * @return the listening sockets of all endpoints; if the server uses
+     *         multiple acceptors with {@code SO_REUSEPORT} there is one
+     *         socket per acceptor
+     */
+    public List<ServerSocket> getServerSockets() {
+        return this.serverSockets;
     }
 
     public ServerSocketFactory getServerSocketFactory() {
         return this.serverSocketFactory;
     }
 
+    public SocketOptions getSocketOptions() {
+        return this.socketOptions;
+    }
+
     public Supplier<StreamingSocketServerHandler> getHandlerFactory() {
         return this.handlerFactory;
     }
 
+    /**
+     * @return the port of the first endpoint
+     */
     public int getPort() {
         return this.port;
     }
 
+    /**
+     * @return the endpoints this server listens on
+     *
+     * @see SocketServerBuilder#withEndpoint(String, java.net.InetAddress, int,
+     * com.github.autermann.sockets.ssl.SSLConfiguration)
+     */
+    public List<Endpoint> getEndpoints() {
+        return this.endpoints;
+    }
+
+    /**
+     * @param name the name of the endpoint
+     *
+     * @return the endpoint, or {@code null} if there is no such endpoint
+     */
+    public Endpoint getEndpoint(String name) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getName().equals(name)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return if this server multiplexes connections over selector threads
+     *         instead of dedicating a thread to every connection
+     */
+    public boolean isNonBlocking() {
+        return this.selectorThreads > 0;
+    }
+
+    /**
+     * @return the number of threads accepting connections
+     */
+    public int getAcceptors() {
+        return this.acceptors;
+    }
+
+    /**
+     * @return the write and flush counters of this server
+     */
+    public WriteStatistics getWriteStatistics() {
+        return this.metrics.getWriteStatistics();
+    }
+
+    /**
+     * @return the metrics of this server
+     *
+     * @see SocketServerBuilder#withJmx(String)
+     * @see SocketServerBuilder#withMetricsReporter(MetricsReporter, long,
+     * TimeUnit)
+     */
+    public ServerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return the pool providing the I/O buffers of the connections
+     */
+    public BufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * @return the maximum number of concurrent connections
+     */
+    public int getMaxConnections() {
+        return this.admissionControl.getMaxConnections();
+    }
+
+    /**
+     * @return the number of currently open connections
+     */
+    public int getConnectionCount() {
+        return this.admissionControl.getConnections();
+    }
+
+    /**
+     * @return the number of connections rejected by the admission control
+     */
+    public long getRejectedConnectionCount() {
+        return this.admissionControl.getRejected();
+    }
+
+    /**
+     * @param unit the unit of the returned timeout
+     *
+     * @return the time a connection may wait for incoming data before it is
+     *         closed, or {@code 0} if it may wait forever
+     */
+    public long getReadTimeout(TimeUnit unit) {
+        return unit.convert(this.readTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit of the returned timeout
+     *
+     * @return the time a write may block before the connection is closed, or
+     *         {@code 0} if it may block forever
+     */
+    public long getWriteTimeout(TimeUnit unit) {
+        return unit.convert(this.writeTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit of the returned timeout
+     *
+     * @return the time a request may take before the connection is closed,
+     *         or {@code 0} if requests have no deadline
+     */
+    public long getRequestTimeout(TimeUnit unit) {
+        return unit.convert(this.requestTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the server immediately, closing all connections.
+     *
+     * @see #stop(long, TimeUnit)
+     */
     public void stop() {
-        try {
-            if (getServerSocket() != null) {
-                getServerSocket().close();
+        stop(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the server gracefully. The server stops accepting connections
+     * and shuts down the input side of every open connection: a
+     * {@link RequestSocketServer} finishes the request it is currently
+     * handling, writes the response and then closes the connection as if the
+     * client had closed it. Connections that are still open when the timeout
+     * expires are closed forcibly. Executors created by the
+     * {@link SocketServerBuilder} are shut down.
+     * <p/>
+     * SSL connections do not support shutting down their input side; they
+     * are only closed once their client closes them or the timeout expires.
+     *
+     * @param timeout the maximum time to wait for connections to drain
+     * @param unit    the unit of {@code timeout}
+     *
+     * @return how many connections were drained and forcibly closed; empty if
+     *         the server was already stopped
+     */
+    public ShutdownResult stop(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!stopped.compareAndSet(false, true)) {
+            return new ShutdownResult(0, 0);
+        }
+        draining = true;
+        for (ServerSocket serverSocket : getServerSockets()) {
+            try {
+                serverSocket.close();
+            } catch (IOException ex) {
+                log.error("Error closing server socket", ex);
+            }
+        }
+        int open = getConnectionCount();
+        if (selectorEngine != null) {
+            selectorEngine.drain();
+        }
+        for (Socket socket : sockets) {
+            shutdownInput(socket);
+        }
+        int forced = awaitConnections(deadline) ? 0 : getConnectionCount();
+        if (selectorEngine != null) {
+            selectorEngine.close();
+        }
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                log.error("Error closing socket", ex);
             }
-        } catch (IOException ex) {
-            log.error("Error closing server socket", ex);
         }
+        if (ownsExecutors) {
+            for (Executor pool : pools) {
+                if (pool instanceof ExecutorService) {
+                    ((ExecutorService) pool).shutdownNow();
+                }
+            }
+        }
+        if (handlerExecutor instanceof ExecutorService) {
+            ((ExecutorService) handlerExecutor).shutdownNow();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            flusher.shutdownNow();
+        }
+        if (timer != null) {
+            timer.stop();
+        }
+        if (scheduledReporter != null) {
+            scheduledReporter.stop();
+        }
+        if (journal != null) {
+            journal.stop();
+        }
+        JmxMetrics.unregister(mbean);
         for (Runnable hook : shutdownHooks) {
             try {
                 hook.run();
@@ -89,80 +386,490 @@ public class StreamingSocketServer {
                 log.error("Error running Shutdown hook " + hook, t);
             }
         }
+        if (open > 0) {
+            log.info("Drained {} connections, closed {} connections",
+                     open - forced, forced);
+        }
+        return new ShutdownResult(Math.max(0, open - forced), forced);
+    }
+
+    private boolean awaitConnections(long deadline) {
+        synchronized (drainLock) {
+            while (getConnectionCount() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Shuts down the input side of a connection, so that it is closed after
+     * its current request.
+     *
+     * @param socket the connection
+     */
+    static void shutdownInput(Socket socket) {
+        try {
+            socket.shutdownInput();
+        } catch (UnsupportedOperationException e) {
+            // SSL sockets, wait for the client or the deadline
+        } catch (IOException e) {
+            // already closed
+        }
     }
 
     public void start(boolean block) throws IOException {
         synchronized (this) {
             checkState(getServerSocket() == null, "Server already started.");
         }
-        this.serverSocket = getServerSocketFactory().createSocket(getPort());
-        log.info("Listening on port {}...", getPort());
+        if (coalescingDelay > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    NamedAndGroupedThreadFactory.builder()
+                    .name("socket-server-flush").build());
+            // a slow client only blocks the thread flushing its connection
+            flusher = Executors.newCachedThreadPool(
+                    NamedAndGroupedThreadFactory.builder()
+                    .name("socket-server-flush-worker").build());
+        }
+        if (readTimeout > 0 || writeTimeout > 0 || requestTimeout > 0) {
+            timer = new HashedWheelTimer();
+            timer.start("socket-server-timer");
+        }
+        if (jmxName != null) {
+            mbean = JmxMetrics.register("SocketServer", jmxName,
+                                        metrics.getRegistry());
+        }
+        if (metricsReporter != null) {
+            scheduledReporter = new ScheduledReporter(
+                    jmxName != null ? jmxName : "socket-server-" + getPort(),
+                    metrics.getRegistry(), metricsReporter, reportingPeriod,
+                    TimeUnit.NANOSECONDS);
+            scheduledReporter.start();
+        }
+        if (journal != null) {
+            journal.start();
+        }
+        List<Acceptor> acceptorTasks = createAcceptors();
+        for (Acceptor acceptor : acceptorTasks.subList(block ? 1 : 0,
+                                                       acceptorTasks.size())) {
+            new Thread(acceptor).start();
+        }
         if (block) {
-            loop();
-        } else {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    loop();
+            acceptorTasks.get(0).run();
+        }
+    }
+
+    private List<Acceptor> createAcceptors() throws IOException {
+        List<ServerSocket> all = Lists.newArrayList();
+        List<Acceptor> acceptorTasks = Lists.newArrayListWithCapacity(
+                acceptors * endpoints.size());
+        try {
+            if (isNonBlocking()) {
+                SelectorEngine engine = new SelectorEngine(this,
+                                                           selectorThreads);
+                engine.start();
+                this.selectorEngine = engine;
+            }
+            for (Endpoint endpoint : endpoints) {
+                List<ServerSocket> sockets = createServerSockets(endpoint);
+                all.addAll(sockets);
+                log.info("Listening on {} ({})...",
+                         sockets.get(0).getLocalSocketAddress(),
+                         endpoint.getName());
+                if (sockets.size() < acceptors) {
+                    log.info("SO_REUSEPORT is not supported, {} acceptors " +
+                             "share a single server socket", acceptors);
+                }
+                for (int i = 0; i < acceptors; ++i) {
+                    // all endpoints share the executors
+                    Executor pool = pools.get(acceptorTasks.size() %
+                                              pools.size());
+                    acceptorTasks.add(new Acceptor(
+                            sockets.get(i % sockets.size()), pool, endpoint));
                 }
-            }).start();
+            }
+        } catch (IOException e) {
+            for (ServerSocket socket : all) {
+                socket.close();
+            }
+            if (selectorEngine != null) {
+                selectorEngine.close();
+            }
+            throw e;
         }
+        this.serverSockets = ImmutableList.copyOf(all);
+        return acceptorTasks;
     }
 
-    private void loop() {
+    private List<ServerSocket> createServerSockets(Endpoint endpoint)
+            throws IOException {
+        List<ServerSocket> sockets = Lists.newArrayListWithCapacity(acceptors);
+        SocketOptions options = endpoint.getSocketOptions(socketOptions);
+        ServerSocketFactory factory = endpoint.getSocketFactory();
         try {
-            while (!getServerSocket().isClosed()) {
-                awaitConnection();
+            if (isNonBlocking()) {
+                int channels = ReusePort.isSupported() ? acceptors : 1;
+                for (int i = 0; i < channels; ++i) {
+                    sockets.add(createServerChannel(endpoint.getPort(), options,
+                                                    channels > 1).socket());
+                }
+            } else if (acceptors > 1 && factory.isReusePortSupported()) {
+                for (int i = 0; i < acceptors; ++i) {
+                    sockets.add(factory.createReusePortSocket(
+                            endpoint.getPort(), options));
+                }
+            } else {
+                sockets.add(factory.createSocket(endpoint.getPort(), options));
+            }
+        } catch (IOException e) {
+            for (ServerSocket socket : sockets) {
+                socket.close();
             }
-        } finally {
-            stop();
+            throw e;
         }
+        return sockets;
     }
 
-    private void awaitConnection() {
+    private ServerSocketChannel createServerChannel(int port,
+                                                    SocketOptions options,
+                                                    boolean reusePort)
+            throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
         try {
-            Socket socket = getServerSocket().accept();
-            log.info("Client {} connected.", socket
-                    .getRemoteSocketAddress());
-            pool.execute(new HandlerTask(socket));
+            if (reusePort) {
+                ReusePort.enable(channel);
+            }
+            options.bind(channel.socket(), port);
+            return channel;
         } catch (IOException e) {
-            // this exception will be thrown a few times during shutdown, hence the check here
-            if (!getServerSocket().isClosed()) {
-                log.error("Could not accept client connection: {}",
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the time a connection waited for a worker. Called once per
+     * dispatch by the worker picking up the connection.
+     *
+     * @param dispatchTime the {@link System#nanoTime()} at which the
+     *                     connection was handed to the executor
+     *
+     * @return if the server is overloaded and the next request of the
+     *         connection should be shed
+     */
+    boolean isOverloaded(long dispatchTime) {
+        return false;
+    }
+
+    /**
+     * Creates the processor for a newly accepted connection. The default
+     * implementation passes the whole connection to a single invocation of a
+     * {@link StreamingSocketServerHandler}.
+     *
+     * @param in      the input stream of the connection
+     * @param out     the output stream of the connection
+     * @param monitor the idle monitor of the connection (may be
+     *                {@code null})
+     *
+     * @return the processor
+     */
+    ConnectionProcessor createProcessor(final InputStream in,
+                                        final OutputStream out,
+                                        IdleMonitor monitor) {
+        final StreamingSocketServerHandler handler = getHandlerFactory().get();
+        return new ConnectionProcessor() {
+            @Override
+            public boolean process(boolean overloaded) throws IOException {
+                handler.handle(in, out);
+                return false;
+            }
+
+            @Override
+            public boolean hasBufferedInput() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Creates and starts the idle monitor of a newly accepted connection.
+     *
+     * @param connection the connection to close once it is idle for too long
+     *
+     * @return the monitor, or {@code null} if idle connections are not
+     *         closed
+     */
+    IdleMonitor createIdleMonitor(Closeable connection) {
+        if (readTimeout <= 0 && writeTimeout <= 0) {
+            return null;
+        }
+        return new IdleMonitor(timer, readTimeout, writeTimeout, connection);
+    }
+
+    /**
+     * @return the executor handling pipelined requests and writing
+     *         asynchronous responses, separate from the executors processing
+     *         the connections
+     */
+    Executor getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    /**
+     * @return the timer enforcing the timeouts of this server, or
+     *         {@code null} if no timeouts are configured
+     */
+    HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * @return the request deadline in nanoseconds, or {@code 0}
+     */
+    long getRequestTimeoutNanos() {
+        return requestTimeout;
+    }
+
+    /**
+     * @return the journal of connection events, or {@code null} if it is
+     *         disabled
+     */
+    public ConnectionJournal getConnectionJournal() {
+        return journal;
+    }
+
+    /**
+     * Records a newly accepted connection in the journal.
+     *
+     * @param socket the connection
+     *
+     * @return the journal handle of the connection, or {@code null}
+     */
+    ConnectionJournal.Connection connectionOpened(Socket socket) {
+        return journal == null ? null : journal.opened(socket);
+    }
+
+    /**
+     * Called once a connection is closed.
+     *
+     * @param endpoint     the endpoint that accepted the connection
+     * @param connection   the journal handle of the connection, or
+     *                     {@code null}
+     * @param bytesRead    the number of bytes read from the connection
+     * @param bytesWritten the number of bytes written to the connection
+     * @param reason       the reason the connection was closed
+     */
+    void connectionClosed(Endpoint endpoint,
+                          ConnectionJournal.Connection connection,
+                          long bytesRead, long bytesWritten,
+                          CloseReason reason) {
+        endpoint.connectionClosed(bytesRead, bytesWritten, reason);
+        if (journal != null) {
+            journal.closed(connection, bytesRead, bytesWritten, reason);
+        }
+        admissionControl.release();
+        metrics.getClosedConnections().increment();
+        if (draining) {
+            synchronized (drainLock) {
+                drainLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wraps the output stream of a newly accepted connection to count and, if
+     * enabled, coalesce writes.
+     *
+     * @param in  the input stream of the connection
+     * @param out the output stream of the connection
+     *
+     * @return the wrapped output stream
+     */
+    CoalescingOutputStream createOutputStream(InputStream in,
+                                              OutputStream out) {
+        return new CoalescingOutputStream(out, in, bufferPool,
+                                          coalescingThreshold,
+                                          coalescingDelay, scheduler, flusher,
+                                          metrics.getWriteStatistics());
+    }
+
+    private class Acceptor implements Runnable {
+        private final ServerSocket serverSocket;
+        private final Executor pool;
+        private final Endpoint endpoint;
+
+        Acceptor(ServerSocket serverSocket, Executor pool, Endpoint endpoint) {
+            this.serverSocket = serverSocket;
+            this.pool = pool;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!serverSocket.isClosed()) {
+                    awaitConnection();
+                }
+            } finally {
+                stop();
+            }
+        }
+
+        private void awaitConnection() {
+            boolean admitted;
+            try {
+                admitted = admissionControl.awaitCapacity(serverSocket);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop();
+                return;
+            }
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (admitted) {
+                    admissionControl.release();
+                }
+                // this exception will be thrown a few times during shutdown, hence the check here
+                if (!serverSocket.isClosed()) {
+                    log.error("Could not accept client connection: {}",
+                              e.getMessage());
+                }
+                return;
+            }
+            // waiting for a client is not recorded, only admitting it
+            Object event = JfrEvents.beginAccept();
+            try {
+                admit(socket, admitted);
+            } finally {
+                JfrEvents.endAccept(event, socket);
+            }
+        }
+
+        private void admit(Socket socket, boolean admitted) {
+            if (!admitted && !admissionControl.tryAdmit()) {
+                admissionControl.reject(socket);
+                return;
+            }
+            try {
+                socketOptions.configure(socket);
+            } catch (SocketException e) {
+                log.warn("Could not set socket options: {}", e.getMessage());
+            }
+            metrics.getAcceptedConnections().increment();
+            endpoint.connectionAccepted();
+            try {
+                if (selectorEngine != null) {
+                    selectorEngine.register(socket.getChannel(), pool,
+                                            endpoint);
+                } else {
+                    sockets.add(socket);
+                    if (draining) {
+                        shutdownInput(socket);
+                    }
+                    pool.execute(new HandlerTask(socket, endpoint));
+                }
+            } catch (IOException e) {
+                metrics.getErrors().increment();
+                log.error("Could not register client connection: {}",
                           e.getMessage());
+                // the connection was never opened, so it is not journaled
+                connectionClosed(endpoint, null, 0, 0, CloseReason.ERROR);
+            } catch (RejectedExecutionException e) {
+                sockets.remove(socket);
+                // the rejected connection is not journaled
+                connectionClosed(endpoint, null, 0, 0, CloseReason.CLOSED);
+                admissionControl.reject(socket);
             }
         }
     }
 
     private class HandlerTask implements Runnable {
         private final Socket socket;
-        private final StreamingSocketServerHandler handler;
+        private final Endpoint endpoint;
+        private final long createdAt;
 
-        HandlerTask(Socket socket) {
+        HandlerTask(Socket socket, Endpoint endpoint) {
             this.socket = socket;
-            this.handler = getHandlerFactory().get();
+            this.endpoint = endpoint;
+            this.createdAt = System.nanoTime();
         }
 
         @Override
         public void run() {
             Closer c = Closer.create();
+            PooledInputStream in = null;
+            CoalescingOutputStream out = null;
+            CloseReason reason = CloseReason.CLOSED;
+            ConnectionJournal.Connection journaled = connectionOpened(socket);
+            ClosableSocket closable = new ClosableSocket(socket);
+            IdleMonitor monitor = createIdleMonitor(closable);
+            metrics.getQueueWait().recordSince(createdAt);
+            // before the handshake and the first read, which do not queue
+            boolean overloaded = isOverloaded(createdAt);
             try {
-                c.register(new ClosableSocket(socket));
-                InputStream in = c.register(socket.getInputStream());
-                OutputStream out = c.register(socket.getOutputStream());
-                handler.handle(in, out);
+                c.register(closable);
+                SSLUtils.handshake(socket);
+                InputStream socketIn = socket.getInputStream();
+                OutputStream socketOut = socket.getOutputStream();
+                if (monitor != null) {
+                    socketIn = monitor.monitor(socketIn);
+                    socketOut = monitor.monitor(socketOut);
+                    monitor.start();
+                }
+                in = c.register(new PooledInputStream(socketIn, bufferPool,
+                                                      BUFFER_SIZE,
+                                                      metrics.getBytesRead()));
+                out = c.register(createOutputStream(in, socketOut));
+                ConnectionProcessor processor = c.register(
+                        createProcessor(in, out, monitor));
+                while (processor.process(overloaded)) {
+                    overloaded = false;
+                }
             } catch (IOException ex) {
-                log.error("Couldn't handle input/output streams: " +
-                          ex.getMessage(), ex);
+                // closing the socket on shutdown or timeout fails the I/O
+                if (stopped.get()) {
+                    reason = CloseReason.SHUTDOWN;
+                } else if (monitor != null && monitor.isExpired()) {
+                    reason = CloseReason.TIMEOUT;
+                } else {
+                    reason = CloseReason.ERROR;
+                    metrics.getErrors().increment();
+                    log.error("Couldn't handle input/output streams: " +
+                              ex.getMessage(), ex);
+                }
             } finally {
+                if (monitor != null) {
+                    monitor.stop();
+                }
                 try {
                     c.close();
                 } catch (IOException e) {
                     log.error("Couldn't close socket: " +
                               e.getMessage(), e);
                 }
-                log.info("Client {} disconnected.", socket
-                    .getRemoteSocketAddress());
+                if (in != null) {
+                    in.release();
+                }
+                sockets.remove(socket);
+                connectionClosed(endpoint, journaled,
+                                 in == null ? 0 : in.getBytesRead(),
+                                 out == null ? 0 : out.getBytesWritten(),
+                                 reason);
             }
         }
 
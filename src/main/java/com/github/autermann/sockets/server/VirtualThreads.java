@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Creates executors that run every task on a new virtual thread. Virtual
+ * threads are only available on Java 21 and later; this class is the fallback
+ * for older runtimes. The actual implementation is located in the
+ * multi-release part of the jar ({@code src/main/java21}).
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return if the running JVM supports virtual threads
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @param name the name prefix of the threads
+     *
+     * @return the executor
+     *
+     * @throws UnsupportedOperationException if virtual threads are not
+     *                                       supported
+     */
+    static Executor newExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21");
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+
+/**
+ * Counters of the output side of a server. The number of writes is the number
+ * of write calls that reached the socket, which roughly corresponds to the
+ * number of system calls (or TLS records) issued.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class WriteStatistics {
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * @return the number of responses written by a
+     *         {@link RequestSocketServer}
+     */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * @return the number of writes to the socket
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    /**
+     * @return the number of flushes that reached the socket
+     */
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * @return the number of bytes written to the socket
+     */
+    public long getBytesWritten() {
+        return bytes.get();
+    }
+
+    public double getWritesPerResponse() {
+        return ratio(getWrites(), getResponses());
+    }
+
+    public double getFlushesPerResponse() {
+        return ratio(getFlushes(), getResponses());
+    }
+
+    void onResponse() {
+        responses.incrementAndGet();
+    }
+
+    void onWrite(long bytes) {
+        writes.incrementAndGet();
+        this.bytes.addAndGet(bytes);
+    }
+
+    void onFlush() {
+        flushes.incrementAndGet();
+    }
+
+    private static double ratio(long count, long responses) {
+        return responses == 0 ? 0 : (double) count / responses;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("responses", getResponses())
+                .add("writes", getWrites())
+                .add("flushes", getFlushes())
+                .add("bytes", getBytesWritten())
+                .toString();
+    }
+}
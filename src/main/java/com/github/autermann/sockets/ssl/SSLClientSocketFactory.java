@@ -22,6 +22,7 @@ import java.security.GeneralSecurityException;
 
 import javax.net.ssl.SSLSocket;
 
+import com.github.autermann.sockets.SocketOptions;
 import com.github.autermann.sockets.client.ClientSocketFactory;
 import com.google.common.base.Preconditions;
 
@@ -40,8 +41,15 @@ public class SSLClientSocketFactory extends ClientSocketFactory {
     @Override
     public SSLSocket createSocket(InetSocketAddress address, int timeout)
             throws IOException, SocketException {
+        return createSocket(address, timeout, SocketOptions.defaults());
+    }
+
+    @Override
+    public SSLSocket createSocket(InetSocketAddress address, int timeout,
+                                  SocketOptions options)
+            throws IOException, SocketException {
         try {
-            return delegate.createSocket(address, timeout);
+            return delegate.createSocket(address, timeout, options);
         } catch (GeneralSecurityException ex) {
             throw new SSLSocketCreationException(ex);
         }
@@ -30,6 +30,7 @@ import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509KeyManager;
 import javax.net.ssl.X509TrustManager;
 
+import com.github.autermann.sockets.SocketOptions;
 import com.google.common.base.Preconditions;
 
 /**
@@ -51,20 +52,37 @@ public class SSLFactory {
             throws GeneralSecurityException, IOException {
         SSLServerSocket socket = (SSLServerSocket) getContext()
                 .getServerSocketFactory().createServerSocket(port);
+        configure(socket);
+        return socket;
+    }
+
+    public SSLServerSocket createUnboundServerSocket()
+            throws GeneralSecurityException, IOException {
+        SSLServerSocket socket = (SSLServerSocket) getContext()
+                .getServerSocketFactory().createServerSocket();
+        configure(socket);
+        return socket;
+    }
+
+    private void configure(SSLServerSocket socket) {
         if (getOptions().isRequireClientAuth()) {
             socket.setNeedClientAuth(true);
         }
         socket.setEnabledProtocols(new String[] {
             SSLConstants.PROTOCOL_TLS_V1 });
-        return socket;
     }
 
     public SSLSocket createSocket(InetSocketAddress address, int timeout)
             throws GeneralSecurityException, IOException {
+        return createSocket(address, timeout, SocketOptions.defaults());
+    }
+
+    public SSLSocket createSocket(InetSocketAddress address, int timeout,
+                                  SocketOptions options)
+            throws GeneralSecurityException, IOException {
         SSLSocket socket = (SSLSocket) getContext()
                 .getSocketFactory().createSocket();
-        socket.connect(address, timeout);
-        return socket;
+        return options.connect(socket, address, timeout);
     }
 
     protected SSLConfiguration getOptions() {
@@ -23,6 +23,7 @@ import java.security.GeneralSecurityException;
 
 import javax.net.ssl.SSLServerSocket;
 
+import com.github.autermann.sockets.SocketOptions;
 import com.github.autermann.sockets.server.ServerSocketFactory;
 
 /**
@@ -49,4 +50,37 @@ public class SSLServerSocketFactory extends ServerSocketFactory {
         }
     }
 
+    @Override
+    public SSLServerSocket createSocket(int port, SocketOptions options)
+            throws IOException, SocketException {
+        try {
+            return bind(delegate.createUnboundServerSocket(), port, options);
+        } catch (GeneralSecurityException ex) {
+            throw new SSLSocketCreationException(ex);
+        }
+    }
+
+    @Override
+    public boolean isReusePortSupported() {
+        return isReusePortAvailable();
+    }
+
+    @Override
+    public SSLServerSocket createReusePortSocket(int port)
+            throws IOException, SocketException {
+        return createReusePortSocket(port, SocketOptions.defaults());
+    }
+
+    @Override
+    public SSLServerSocket createReusePortSocket(int port,
+                                                 SocketOptions options)
+            throws IOException, SocketException {
+        try {
+            return bindWithReusePort(delegate.createUnboundServerSocket(),
+                                     port, options);
+        } catch (GeneralSecurityException ex) {
+            throw new SSLSocketCreationException(ex);
+        }
+    }
+
 }
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.net.Socket;
 import java.security.KeyFactory;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -35,6 +36,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 
+import javax.net.ssl.SSLSocket;
+
 import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
@@ -45,6 +48,7 @@ import org.bouncycastle.util.io.pem.PemReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.autermann.sockets.metrics.JfrEvents;
 import com.github.autermann.utils.Java;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
@@ -188,4 +192,23 @@ public class SSLUtils {
         PrivateKeyInfo privateKeyInfo = new PrivateKeyInfo(algId, instance);
         return createKeyFromDER(privateKeyInfo.toASN1Primitive().getEncoded());
     }
+
+    /**
+     * Completes the TLS handshake of the socket, if it is a {@link SSLSocket}.
+     * Otherwise the handshake would be done implicitly by the first read or
+     * write and could not be told apart from it.
+     *
+     * @param socket the socket
+     *
+     * @throws IOException if the handshake fails
+     */
+    public static void handshake(Socket socket) throws IOException {
+        if (socket instanceof SSLSocket) {
+            SSLSocket sslSocket = (SSLSocket) socket;
+            Object event = JfrEvents.beginHandshake();
+            sslSocket.startHandshake();
+            JfrEvents.endHandshake(event, socket.getRemoteSocketAddress(),
+                                   sslSocket.getSession());
+        }
+    }
 }
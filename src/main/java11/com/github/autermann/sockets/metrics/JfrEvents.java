@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import java.net.Socket;
+import java.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Emits Java Flight Recorder events for the hot paths of servers and
+ * clients. If an event type is not enabled, starting an event is a single
+ * check and does not allocate.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class JfrEvents {
+    private static final String PREFIX = "com.github.autermann.sockets.";
+    private static final EventType ACCEPT
+            = EventType.getEventType(AcceptEvent.class);
+    private static final EventType HANDSHAKE
+            = EventType.getEventType(HandshakeEvent.class);
+    private static final EventType DECODE
+            = EventType.getEventType(DecodeEvent.class);
+    private static final EventType HANDLE
+            = EventType.getEventType(HandleEvent.class);
+    private static final EventType ENCODE
+            = EventType.getEventType(EncodeEvent.class);
+    private static final EventType EXEC
+            = EventType.getEventType(ExecEvent.class);
+
+    private JfrEvents() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    public static Object beginAccept() {
+        return ACCEPT.isEnabled() ? begin(new AcceptEvent()) : null;
+    }
+
+    public static void endAccept(Object event, Socket socket) {
+        if (event != null) {
+            AcceptEvent e = (AcceptEvent) event;
+            e.remoteAddress = socket == null ? null
+                              : toString(socket.getRemoteSocketAddress());
+            end(e);
+        }
+    }
+
+    public static Object beginHandshake() {
+        return HANDSHAKE.isEnabled() ? begin(new HandshakeEvent()) : null;
+    }
+
+    public static void endHandshake(Object event, SocketAddress remote,
+                                    SSLSession session) {
+        if (event != null) {
+            HandshakeEvent e = (HandshakeEvent) event;
+            e.remoteAddress = toString(remote);
+            if (session != null) {
+                e.protocol = session.getProtocol();
+                e.cipherSuite = session.getCipherSuite();
+            }
+            end(e);
+        }
+    }
+
+    public static Object beginDecode() {
+        return DECODE.isEnabled() ? begin(new DecodeEvent()) : null;
+    }
+
+    public static void endDecode(Object event) {
+        end(event);
+    }
+
+    public static Object beginHandle() {
+        return HANDLE.isEnabled() ? begin(new HandleEvent()) : null;
+    }
+
+    public static void endHandle(Object event) {
+        end(event);
+    }
+
+    public static Object beginEncode() {
+        return ENCODE.isEnabled() ? begin(new EncodeEvent()) : null;
+    }
+
+    public static void endEncode(Object event) {
+        end(event);
+    }
+
+    public static Object beginExec() {
+        return EXEC.isEnabled() ? begin(new ExecEvent()) : null;
+    }
+
+    public static void endExec(Object event, SocketAddress remote) {
+        if (event != null) {
+            ExecEvent e = (ExecEvent) event;
+            e.remoteAddress = toString(remote);
+            end(e);
+        }
+    }
+
+    private static Event begin(Event event) {
+        event.begin();
+        return event;
+    }
+
+    private static void end(Object event) {
+        if (event != null) {
+            Event e = (Event) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.commit();
+            }
+        }
+    }
+
+    private static String toString(SocketAddress address) {
+        return address == null ? null : address.toString();
+    }
+
+    @Name(PREFIX + "Accept")
+    @Label("Accept")
+    @Description("Waiting for and admitting a client connection")
+    @Category({ "Sockets", "Server" })
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class AcceptEvent extends Event {
+        @Label("Remote Address")
+        String remoteAddress;
+    }
+
+    @Name(PREFIX + "Handshake")
+    @Label("TLS Handshake")
+    @Category({ "Sockets" })
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class HandshakeEvent extends Event {
+        @Label("Remote Address")
+        String remoteAddress;
+        @Label("Protocol")
+        String protocol;
+        @Label("Cipher Suite")
+        String cipherSuite;
+    }
+
+    @Name(PREFIX + "Decode")
+    @Label("Decode Request")
+    @Category({ "Sockets", "Server" })
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class DecodeEvent extends Event {
+    }
+
+    @Name(PREFIX + "Handle")
+    @Label("Handle Request")
+    @Category({ "Sockets", "Server" })
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class HandleEvent extends Event {
+    }
+
+    @Name(PREFIX + "Encode")
+    @Label("Encode Response")
+    @Category({ "Sockets", "Server" })
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class EncodeEvent extends Event {
+    }
+
+    @Name(PREFIX + "Exec")
+    @Label("Client Exchange")
+    @Description("A request/response exchange of a client")
+    @Category({ "Sockets", "Client" })
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class ExecEvent extends Event {
+        @Label("Remote Address")
+        String remoteAddress;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketImpl;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Set;
+
+/**
+ * Unix domain socket transport for clients on the same host as the server.
+ * The channels are adapted to {@link ServerSocket} and {@link Socket}, so
+ * that the same handlers run over a socket file as over TCP.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public final class UnixDomainSockets {
+    private UnixDomainSockets() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    public static ServerSocket bind(File path, SocketOptions options)
+            throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel
+                .open(StandardProtocolFamily.UNIX);
+        try {
+            configure(channel, options);
+            channel.bind(UnixDomainSocketAddress.of(path.toPath()),
+                         options.getBacklog());
+            return new UnixServerSocket(channel, path);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static Socket connect(File path, SocketOptions options)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            configure(channel, options);
+            channel.connect(UnixDomainSocketAddress.of(path.toPath()));
+            return new UnixSocket(channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void configure(NetworkChannel channel,
+                                  SocketOptions options) throws IOException {
+        if (options.getReceiveBufferSize() > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF,
+                              options.getReceiveBufferSize());
+        }
+        if (options.getSendBufferSize() > 0 &&
+            channel.supportedOptions().contains(StandardSocketOptions.SO_SNDBUF)) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF,
+                              options.getSendBufferSize());
+        }
+    }
+
+    /**
+     * A server socket accepting connections on a socket file.
+     */
+    private static final class UnixServerSocket extends ServerSocket {
+        private final ServerSocketChannel channel;
+        private final File path;
+
+        UnixServerSocket(ServerSocketChannel channel, File path)
+                throws IOException {
+            this.channel = channel;
+            this.path = path;
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            return new UnixSocket(channel.accept());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                channel.close();
+                Files.deleteIfExists(path.toPath());
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !channel.isOpen();
+        }
+
+        @Override
+        public boolean isBound() {
+            return true;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return null;
+        }
+
+        @Override
+        public int getLocalPort() {
+            return -1;
+        }
+
+        @Override
+        public SocketAddress getLocalSocketAddress() {
+            return UnixDomainSocketAddress.of(path.toPath());
+        }
+
+        @Override
+        public ServerSocketChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public String toString() {
+            return "UnixServerSocket[path=" + path + "]";
+        }
+    }
+
+    /**
+     * A connection over a socket file. Options that only apply to TCP, like
+     * {@code TCP_NODELAY} or {@code SO_LINGER}, are ignored.
+     */
+    private static final class UnixSocket extends Socket {
+        private final SocketChannel channel;
+        private final InputStream in;
+        private final OutputStream out;
+
+        UnixSocket(SocketChannel channel) throws SocketException {
+            super((SocketImpl) null);
+            this.channel = channel;
+            this.in = new UnixInputStream(this, channel);
+            this.out = new UnixOutputStream(this, channel);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            checkOpen();
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            checkOpen();
+            return out;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !channel.isOpen();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public boolean isBound() {
+            return true;
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            channel.shutdownInput();
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            channel.shutdownOutput();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            try {
+                return channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public SocketAddress getLocalSocketAddress() {
+            try {
+                return channel.getLocalAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return null;
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public int getPort() {
+            return 0;
+        }
+
+        @Override
+        public int getLocalPort() {
+            return -1;
+        }
+
+        @Override
+        public SocketChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) {
+        }
+
+        @Override
+        public boolean getTcpNoDelay() {
+            return false;
+        }
+
+        @Override
+        public void setKeepAlive(boolean on) {
+        }
+
+        @Override
+        public boolean getKeepAlive() {
+            return false;
+        }
+
+        @Override
+        public void setSoLinger(boolean on, int linger) {
+        }
+
+        @Override
+        public int getSoLinger() {
+            return -1;
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) throws SocketException {
+            if (timeout != 0) {
+                throw new SocketException(
+                        "SO_TIMEOUT is not supported by Unix domain sockets");
+            }
+        }
+
+        @Override
+        public int getSoTimeout() {
+            return 0;
+        }
+
+        @Override
+        public void setReceiveBufferSize(int size) throws SocketException {
+            setOption(StandardSocketOptions.SO_RCVBUF, size);
+        }
+
+        @Override
+        public int getReceiveBufferSize() throws SocketException {
+            return getOption(StandardSocketOptions.SO_RCVBUF);
+        }
+
+        @Override
+        public void setSendBufferSize(int size) throws SocketException {
+            setOption(StandardSocketOptions.SO_SNDBUF, size);
+        }
+
+        @Override
+        public int getSendBufferSize() throws SocketException {
+            return getOption(StandardSocketOptions.SO_SNDBUF);
+        }
+
+        @Override
+        public <T> Socket setOption(SocketOption<T> option, T value)
+                throws SocketException {
+            try {
+                channel.setOption(option, value);
+                return this;
+            } catch (IOException e) {
+                throw toSocketException(e);
+            }
+        }
+
+        @Override
+        public <T> T getOption(SocketOption<T> option)
+                throws SocketException {
+            try {
+                return channel.getOption(option);
+            } catch (IOException e) {
+                throw toSocketException(e);
+            }
+        }
+
+        @Override
+        public Set<SocketOption<?>> supportedOptions() {
+            return channel.supportedOptions();
+        }
+
+        private static SocketException toSocketException(IOException e) {
+            if (e instanceof SocketException) {
+                return (SocketException) e;
+            }
+            SocketException ex = new SocketException(e.getMessage());
+            ex.initCause(e);
+            return ex;
+        }
+
+        private void checkOpen() throws SocketException {
+            if (!channel.isOpen()) {
+                throw new SocketException("Socket is closed");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "UnixSocket[" + channel + "]";
+        }
+    }
+
+    /**
+     * Reads directly from the channel. Unlike
+     * {@link java.nio.channels.Channels#newInputStream}, reading does not
+     * block concurrent writes.
+     */
+    private static final class UnixInputStream extends InputStream {
+        private final Socket socket;
+        private final SocketChannel channel;
+        private final ByteBuffer single = ByteBuffer.allocate(1);
+
+        UnixInputStream(Socket socket, SocketChannel channel) {
+            this.socket = socket;
+            this.channel = channel;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            single.clear();
+            int read;
+            do {
+                read = channel.read(single);
+            } while (read == 0);
+            return read < 0 ? -1 : single.get(0) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Writes directly to the channel, see {@link UnixInputStream}.
+     */
+    private static final class UnixOutputStream extends OutputStream {
+        private final Socket socket;
+        private final SocketChannel channel;
+
+        UnixOutputStream(Socket socket, SocketChannel channel) {
+            this.socket = socket;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
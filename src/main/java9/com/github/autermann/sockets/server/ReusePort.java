@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Access to the {@code SO_REUSEPORT} socket option.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+final class ReusePort {
+    private static final boolean SUPPORTED = checkSupport();
+
+    private ReusePort() {
+    }
+
+    static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    static void enable(ServerSocket socket) throws IOException {
+        socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+    }
+
+    static void enable(ServerSocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+    }
+
+    private static boolean checkSupport() {
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            return channel.supportedOptions()
+                    .contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.client.ClientSocketFactory;
+import com.github.autermann.sockets.server.ServerSocketFactory;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class SocketOptionsTest {
+    private static final InetAddress LOOPBACK = loopback();
+
+    @Test
+    public void testLowLatency() throws Exception {
+        SocketOptions options = SocketOptions
+                .builder(SocketOptions.lowLatency())
+                .withBindAddress(LOOPBACK)
+                .withLinger(2)
+                .build();
+        ServerSocket server = ServerSocketFactory.getDefault()
+                .createSocket(0, options);
+        try {
+            assertThat(server.getInetAddress(), is(LOOPBACK));
+            Socket client = ClientSocketFactory.getDefault().createSocket(
+                    new InetSocketAddress(LOOPBACK, server.getLocalPort()),
+                    1000, options);
+            Socket accepted = server.accept();
+            try {
+                options.configure(accepted);
+                for (Socket socket : new Socket[] { client, accepted }) {
+                    assertThat(socket.getTcpNoDelay(), is(true));
+                    assertThat(socket.getKeepAlive(), is(true));
+                    assertThat(socket.getSoLinger(), is(2));
+                }
+                assertThat(client.getLocalAddress(), is(LOOPBACK));
+            } finally {
+                accepted.close();
+                client.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBulkThroughput() throws Exception {
+        SocketOptions options = SocketOptions.bulkThroughput();
+        ServerSocket server = ServerSocketFactory.getDefault()
+                .createSocket(0, options);
+        try {
+            // the operating system may round or cap the buffer sizes
+            assertThat(server.getReceiveBufferSize(),
+                       is(greaterThanOrEqualTo(64 * 1024)));
+            Socket client = ClientSocketFactory.getDefault().createSocket(
+                    new InetSocketAddress(LOOPBACK, server.getLocalPort()),
+                    1000, options);
+            try {
+                assertThat(client.getTcpNoDelay(), is(false));
+                assertThat(client.getSendBufferSize(),
+                           is(greaterThanOrEqualTo(64 * 1024)));
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testDefaults() throws Exception {
+        SocketOptions options = SocketOptions.defaults();
+        assertThat(options.getTcpNoDelay() == null, is(true));
+        assertThat(options.getReceiveBufferSize(), is(-1));
+        assertThat(options.getBacklog(), is(0));
+        assertThat(options.toString(), is("SocketOptions{}"));
+    }
+
+    private static InetAddress loopback() {
+        try {
+            return InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
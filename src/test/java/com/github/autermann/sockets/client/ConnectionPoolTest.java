@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.framing.FrameCodec;
+import com.github.autermann.sockets.framing.LengthPrefixedFrameCodec;
+import com.github.autermann.sockets.server.Echo;
+import com.github.autermann.sockets.server.LineCodec;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.RequestSocketServerHandler;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ConnectionPoolTest {
+    private static final int THREADS = 32;
+    private static final int REQUESTS = 20;
+    private static final int CONNECTIONS = 4;
+
+    @Test
+    public void testSharedClient() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).build(new LineCodec(), new Echo());
+        server.start(false);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final RequestSocketClient<String, String> client
+                    = SocketClientBuilder.create()
+                    .withAddress(Echo.LOCALHOST, port)
+                    .withConnectionPool(1, CONNECTIONS, 5, TimeUnit.SECONDS)
+                    .build(new LineCodec());
+            assertThat(client.getConnectionPool().getIdleConnections(), is(1));
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < THREADS; ++i) {
+                final String prefix = "thread-" + i + "-";
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        int echoed = 0;
+                        for (int j = 0; j < REQUESTS; ++j) {
+                            if (client.exec(prefix + j).equals(prefix + j)) {
+                                ++echoed;
+                            }
+                        }
+                        return echoed;
+                    }
+                }));
+            }
+            int echoed = 0;
+            for (Future<Integer> result : results) {
+                echoed += result.get();
+            }
+            assertThat(echoed, is(THREADS * REQUESTS));
+            assertThat(client.getMetrics().getOpenedConnections().get(),
+                       is(lessThanOrEqualTo((long) CONNECTIONS)));
+            assertThat(client.getConnectionPool().getWaiters(), is(0));
+            client.close();
+            assertThat(client.getConnectionPool().getConnections(), is(0));
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSharedBufferHandler() throws Exception {
+        int port = LineCodec.freePort();
+        FrameCodec codec = new LengthPrefixedFrameCodec();
+        RequestSocketServer<ByteBuffer, ByteBuffer> server = SocketServerBuilder
+                .create().atPort(port)
+                .build(codec.asServerCoder(), new BufferEcho());
+        server.start(false);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final RequestSocketClient<ByteBuffer, ByteBuffer> client
+                    = SocketClientBuilder.create()
+                    .withAddress(Echo.LOCALHOST, port)
+                    .withConnectionPool(CONNECTIONS)
+                    .build(codec.asClientHandler());
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < THREADS; ++i) {
+                final String prefix = "thread-" + i + "-";
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        int echoed = 0;
+                        for (int j = 0; j < REQUESTS; ++j) {
+                            // large enough to span multiple reads
+                            ByteBuffer request = ByteBuffer.wrap(
+                                    Strings.repeat(prefix + j, 100 * j)
+                                    .getBytes(Charsets.UTF_8));
+                            if (client.exec(request).equals(request)) {
+                                ++echoed;
+                            }
+                        }
+                        return echoed;
+                    }
+                }));
+            }
+            int echoed = 0;
+            for (Future<Integer> result : results) {
+                echoed += result.get();
+            }
+            assertThat(echoed, is(THREADS * REQUESTS));
+            client.close();
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testAcquireTimeout() throws Exception {
+        TestPool pool = new TestPool(1);
+        Object connection = pool.borrow();
+        try {
+            pool.borrow();
+            fail("Expected a timeout");
+        } catch (SocketTimeoutException e) {
+            assertThat(pool.getTimeouts(), is(1));
+        }
+        assertThat(pool.getWaiters(), is(0));
+        pool.giveBack(connection, true);
+        assertThat(pool.borrow(), is(sameInstance(connection)));
+        assertThat(pool.opened.get(), is(1));
+    }
+
+    @Test
+    public void testHandOff() throws Exception {
+        final TestPool pool = new TestPool(1);
+        Object connection = pool.borrow();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> waiter = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    return pool.borrow();
+                }
+            });
+            while (pool.getWaiters() == 0) {
+                Thread.sleep(1);
+            }
+            pool.giveBack(connection, true);
+            assertThat(waiter.get(), is(sameInstance(connection)));
+            assertThat(pool.getIdleConnections(), is(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        TestPool pool = new TestPool(1);
+        Object connection = pool.borrow();
+        pool.giveBack(connection, false);
+        assertThat(pool.getConnections(), is(0));
+        assertThat(pool.closed.get(), is(1));
+        pool.borrow();
+        assertThat(pool.opened.get(), is(2));
+    }
+
+    @Test
+    public void testDuplicateGiveBack() throws Exception {
+        TestPool pool = new TestPool(1);
+        Object connection = pool.borrow();
+        pool.giveBack(connection, false);
+        pool.giveBack(connection, false);
+        assertThat(pool.getConnections(), is(0));
+        assertThat(pool.closed.get(), is(1));
+    }
+
+    private static class BufferEcho
+            implements RequestSocketServerHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer handle(ByteBuffer request) {
+            return request;
+        }
+    }
+
+    private static class TestPool extends ConnectionPool<Object> {
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+
+        TestPool(int maxConnections) {
+            super(0, maxConnections, TimeUnit.MILLISECONDS.toNanos(50));
+        }
+
+        @Override
+        Object open() {
+            opened.incrementAndGet();
+            return new Object();
+        }
+
+        @Override
+        boolean isReusable(Object connection) {
+            return true;
+        }
+
+        @Override
+        void close(Object connection) {
+            closed.incrementAndGet();
+        }
+    }
+}
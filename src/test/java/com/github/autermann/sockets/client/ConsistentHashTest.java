@@ -0,0 +1,186 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.server.Echo;
+import com.github.autermann.sockets.server.LineCodec;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.RequestSocketServerHandler;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ConsistentHashTest {
+    private static final int KEYS = 2000;
+    private static final Function<String, String> KEY
+            = new Function<String, String>() {
+                @Override
+                public String apply(String request) {
+                    int i = request.indexOf(':');
+                    return i < 0 ? null : request.substring(0, i);
+                }
+            };
+
+    @Test
+    public void testLocality() throws Exception {
+        List<RequestSocketServer<String, String>> servers = Lists
+                .newArrayList();
+        List<InetSocketAddress> addresses = Lists.newArrayList();
+        for (int i = 0; i < 3; ++i) {
+            int port = LineCodec.freePort();
+            RequestSocketServer<String, String> server = SocketServerBuilder
+                    .create().atPort(port)
+                    .build(new LineCodec(), new Tagging("server-" + i));
+            server.start(false);
+            servers.add(server);
+            addresses.add(new InetSocketAddress(Echo.LOCALHOST, port));
+        }
+        try {
+            ConsistentHashSocketClient<String, String> client
+                    = SocketClientBuilder.create()
+                    .withAddresses(addresses)
+                    .withConnectionPool(2)
+                    .buildConsistentHash(new LineCodec(), KEY);
+            Map<String, String> serverOfKey = Maps.newHashMap();
+            for (int round = 0; round < 3; ++round) {
+                for (int k = 0; k < 30; ++k) {
+                    String key = "key-" + k;
+                    String response = client.exec(key + ":" + round);
+                    String server = response
+                            .substring(response.indexOf('@') + 1);
+                    if (serverOfKey.containsKey(key)) {
+                        assertThat(server, is(serverOfKey.get(key)));
+                    } else {
+                        serverOfKey.put(key, server);
+                    }
+                }
+            }
+            assertThat(client.exec("no key").startsWith("no key@"), is(true));
+            client.close();
+        } finally {
+            for (RequestSocketServer<String, String> server : servers) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testMinimalRebalancing() throws Exception {
+        ConsistentHashSocketClient<String, String> client = unconnected(4);
+        Map<String, Backend<String, String>> before = route(client);
+        for (Backend<String, String> backend : client.getBackends()) {
+            int keys = 0;
+            for (Backend<String, String> b : before.values()) {
+                if (b == backend) {
+                    ++keys;
+                }
+            }
+            // 25% each with some variance
+            assertThat(keys, is(greaterThan(KEYS / 8)));
+            assertThat(keys, is(lessThan(KEYS / 2)));
+        }
+        Backend<String, String> removed = client.getBackends().get(1);
+        client.removeServer(removed.getAddress());
+        Map<String, Backend<String, String>> after = route(client);
+        for (String key : before.keySet()) {
+            if (before.get(key) != removed) {
+                assertThat(after.get(key), is(sameInstance(before.get(key))));
+            } else {
+                assertThat(after.get(key), is(not(sameInstance(removed))));
+            }
+        }
+        client.addServer(new InetSocketAddress(Echo.LOCALHOST, 1));
+        Backend<String, String> added = client.getBackends().get(3);
+        Map<String, Backend<String, String>> joined = route(client);
+        for (String key : after.keySet()) {
+            if (joined.get(key) != added) {
+                assertThat(joined.get(key), is(sameInstance(after.get(key))));
+            }
+        }
+        client.close();
+    }
+
+    @Test
+    public void testBoundedLoad() throws Exception {
+        ConsistentHashSocketClient<String, String> client = unconnected(2);
+        Backend<String, String> owner = client.select("key:request", null);
+        owner.started();
+        owner.started();
+        // capacity is ceil(1.25 * 3 / 2) = 2
+        assertThat(client.select("key:request", null),
+                   is(not(sameInstance(owner))));
+        owner.succeeded(1);
+        assertThat(client.select("key:request", null),
+                   is(sameInstance(owner)));
+        client.close();
+    }
+
+    private static ConsistentHashSocketClient<String, String> unconnected(
+            int servers) {
+        List<InetSocketAddress> addresses = Lists.newArrayList();
+        for (int i = 0; i < servers; ++i) {
+            // never connected to
+            addresses.add(new InetSocketAddress(Echo.LOCALHOST, 2 + i));
+        }
+        return SocketClientBuilder.create()
+                .withAddresses(addresses)
+                .withConnectionPool(1)
+                .buildConsistentHash(new LineCodec(), KEY);
+    }
+
+    private static Map<String, Backend<String, String>> route(
+            ConsistentHashSocketClient<String, String> client) {
+        Map<String, Backend<String, String>> routes = Maps.newHashMap();
+        for (int k = 0; k < KEYS; ++k) {
+            String request = "key-" + k + ":request";
+            routes.put(request, client.select(request, null));
+        }
+        return routes;
+    }
+
+    private static class Tagging
+            implements RequestSocketServerHandler<String, String> {
+        private final String name;
+
+        Tagging(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String handle(String request) {
+            return request + "@" + name;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.autermann.sockets.framing.FrameCodec;
+import com.github.autermann.sockets.framing.LengthPrefixedFrameCodec;
+import com.github.autermann.sockets.server.Echo;
+import com.github.autermann.sockets.server.LineCodec;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.RequestSocketServerHandler;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class LoadBalancingTest {
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 50;
+    private final List<RequestSocketServer<?, ?>> servers = Lists
+            .newArrayList();
+
+    @After
+    public void stopServers() {
+        for (RequestSocketServer<?, ?> server : servers) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSpread() throws Exception {
+        final LoadBalancingSocketClient<String, String> client
+                = SocketClientBuilder.create()
+                .withAddresses(start(new Echo()), start(new Echo()),
+                               start(new Echo()))
+                .withConnectionPool(THREADS)
+                .buildLoadBalanced(new LineCodec());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < THREADS; ++i) {
+                final String prefix = "thread-" + i + "-";
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        int echoed = 0;
+                        for (int j = 0; j < REQUESTS; ++j) {
+                            if (client.exec(prefix + j).equals(prefix + j)) {
+                                ++echoed;
+                            }
+                        }
+                        return echoed;
+                    }
+                }));
+            }
+            int echoed = 0;
+            for (Future<Integer> result : results) {
+                echoed += result.get();
+            }
+            assertThat(echoed, is(THREADS * REQUESTS));
+        } finally {
+            executor.shutdown();
+        }
+        for (Backend<String, String> backend : client.getBackends()) {
+            assertThat(requests(backend), is(greaterThan(0L)));
+            assertThat(backend.getOutstandingRequests(), is(0));
+        }
+        client.close();
+    }
+
+    @Test
+    public void testBufferHandler() throws Exception {
+        FrameCodec codec = new LengthPrefixedFrameCodec();
+        List<InetSocketAddress> addresses = Lists.newArrayList();
+        for (int i = 0; i < 3; ++i) {
+            int port = LineCodec.freePort();
+            RequestSocketServer<ByteBuffer, ByteBuffer> server
+                    = SocketServerBuilder.create().atPort(port)
+                    .build(codec.asServerCoder(), new BufferEcho());
+            server.start(false);
+            servers.add(server);
+            addresses.add(new InetSocketAddress(Echo.LOCALHOST, port));
+        }
+        final LoadBalancingSocketClient<ByteBuffer, ByteBuffer> client
+                = SocketClientBuilder.create()
+                .withAddresses(addresses)
+                .withConnectionPool(2)
+                .buildLoadBalanced(codec.asClientHandler());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < THREADS; ++i) {
+                final String prefix = "thread-" + i + "-";
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        int echoed = 0;
+                        for (int j = 0; j < REQUESTS; ++j) {
+                            ByteBuffer request = ByteBuffer.wrap(
+                                    Strings.repeat(prefix + j, 100 * j)
+                                    .getBytes(Charsets.UTF_8));
+                            if (client.exec(request).equals(request)) {
+                                ++echoed;
+                            }
+                        }
+                        return echoed;
+                    }
+                }));
+            }
+            int echoed = 0;
+            for (Future<Integer> result : results) {
+                echoed += result.get();
+            }
+            assertThat(echoed, is(THREADS * REQUESTS));
+        } finally {
+            executor.shutdown();
+        }
+        // the other servers keep working
+        client.removeServer(addresses.get(0));
+        ByteBuffer request = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+        assertThat(client.exec(request), is(request));
+        client.close();
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        InetSocketAddress down = new InetSocketAddress(
+                Echo.LOCALHOST, LineCodec.freePort());
+        LoadBalancingSocketClient<String, String> client
+                = SocketClientBuilder.create()
+                .withAddresses(start(new Echo()), down)
+                .withConnectionPool(2)
+                .withEjection(1, 1, TimeUnit.MINUTES)
+                .buildLoadBalanced(new LineCodec());
+        for (int i = 0; i < REQUESTS; ++i) {
+            assertThat(client.exec("request-" + i), is("request-" + i));
+        }
+        Backend<String, String> up = client.getBackends().get(0);
+        Backend<String, String> ejected = client.getBackends().get(1);
+        assertThat(ejected.isEjected(), is(true));
+        assertThat(ejected.getEjections(), is(1));
+        assertThat(up.isEjected(), is(false));
+        assertThat(requests(up), is((long) REQUESTS));
+        client.close();
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        LoadBalancingSocketClient<String, String> client
+                = SocketClientBuilder.create()
+                .withAddresses(start(new Echo()), start(new SlowEcho()))
+                .withConnectionPool(1)
+                .withLoadBalancing(LoadBalancing.EWMA_LATENCY)
+                .buildLoadBalanced(new LineCodec());
+        for (int i = 0; i < REQUESTS; ++i) {
+            assertThat(client.exec("request-" + i), is("request-" + i));
+        }
+        Backend<String, String> fast = client.getBackends().get(0);
+        Backend<String, String> slow = client.getBackends().get(1);
+        assertThat(slow.getLatency(TimeUnit.NANOSECONDS),
+                   is(greaterThan(fast.getLatency(TimeUnit.NANOSECONDS))));
+        assertThat(requests(fast), is(greaterThan(requests(slow))));
+        client.close();
+    }
+
+    private static long requests(Backend<?, ?> backend) {
+        return backend.getClient().getMetrics().getRequests().get();
+    }
+
+    private InetSocketAddress start(
+            RequestSocketServerHandler<String, String> handler)
+            throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).build(new LineCodec(), handler);
+        server.start(false);
+        servers.add(server);
+        return new InetSocketAddress(Echo.LOCALHOST, port);
+    }
+
+    private static class BufferEcho
+            implements RequestSocketServerHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer handle(ByteBuffer request) {
+            return request;
+        }
+    }
+
+    private static class SlowEcho extends Echo {
+        @Override
+        public String handle(String request) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return request;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.Correlated;
+import com.github.autermann.sockets.framing.FrameCodec;
+import com.github.autermann.sockets.framing.LengthPrefixedFrameCodec;
+import com.github.autermann.sockets.server.CorrelatingHandler;
+import com.github.autermann.sockets.server.Echo;
+import com.github.autermann.sockets.server.LineCodec;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.RequestSocketServerHandler;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class PipelinedClientTest {
+    private static final int REQUESTS = 200;
+
+    @Test
+    public void testOrderedPipelining() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withPipelining(16)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            RequestSocketClient<String, String> client = SocketClientBuilder
+                    .create().withAddress(Echo.LOCALHOST, port)
+                    .withPipelining(8).build(new LineCodec());
+            try {
+                List<ListenableFuture<String>> responses = Lists.newArrayList();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    responses.add(client.execAsync("request-" + i));
+                }
+                for (int i = 0; i < REQUESTS; ++i) {
+                    assertThat(responses.get(i).get(), is("request-" + i));
+                }
+                assertThat(client.exec("sync"), is("sync"));
+                assertThat(client.getMetrics().getOpenedConnections().get(),
+                           is(1L));
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withPipelining(16)
+                .build(new LineCodec(), new SlowEcho());
+        server.start(false);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final RequestSocketClient<String, String> client
+                    = SocketClientBuilder.create()
+                    .withAddress(Echo.LOCALHOST, port)
+                    .withPipelining(4).build(new LineCodec());
+            try {
+                for (int i = 0; i < 10; ++i) {
+                    client.execAsync("cancelled-" + i).cancel(true);
+                }
+                Future<String> response = executor
+                        .submit(new Callable<String>() {
+                            @Override
+                            public String call() throws IOException {
+                                return client.exec("sync");
+                            }
+                        });
+                assertThat(response.get(5, TimeUnit.SECONDS), is("sync"));
+            } finally {
+                client.close();
+            }
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testMultiplexedOutOfOrder() throws Exception {
+        int port = LineCodec.freePort();
+        FrameCodec codec = new LengthPrefixedFrameCodec();
+        BlockingHandler handler = new BlockingHandler();
+        RequestSocketServer<Correlated<ByteBuffer>, Correlated<ByteBuffer>> server
+                = SocketServerBuilder.create().atPort(port)
+                .withPipelining(16, true).withOutOfOrderResponses()
+                .build(codec.asCorrelatedServerCoder(),
+                       new CorrelatingHandler<ByteBuffer, ByteBuffer>(handler));
+        server.start(false);
+        try {
+            RequestSocketClient<ByteBuffer, ByteBuffer> client
+                    = SocketClientBuilder.create()
+                    .withAddress(Echo.LOCALHOST, port)
+                    .buildMultiplexed(codec.asCorrelatedClientHandler());
+            try {
+                assertThat(client.isMultiplexed(), is(true));
+                ListenableFuture<ByteBuffer> blocked
+                        = client.execAsync(utf8("block"));
+                for (int i = 0; i < 10; ++i) {
+                    assertThat(client.exec(utf8("request-" + i)),
+                               is(utf8("request-" + i)));
+                }
+                assertThat(blocked.isDone(), is(false));
+                handler.release.countDown();
+                assertThat(blocked.get(), is(utf8("block")));
+            } finally {
+                client.close();
+            }
+        } finally {
+            handler.release.countDown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withPipelining(4)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withPipelining(4).build(new LineCodec());
+        try {
+            assertThat(client.exec("request"), is("request"));
+            server.stop();
+            try {
+                client.execAsync("request").get();
+                fail("Expected a failed request");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(IOException.class)));
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(Charsets.UTF_8));
+    }
+
+    private static class SlowEcho extends Echo {
+        @Override
+        public String handle(String request) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return request;
+        }
+    }
+
+    private static class BlockingHandler
+            implements RequestSocketServerHandler<ByteBuffer, ByteBuffer> {
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public ByteBuffer handle(ByteBuffer request) {
+            if (request.equals(utf8("block"))) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return request;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.autermann.sockets.server.Echo;
+import com.github.autermann.sockets.server.LineCodec;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class StaleConnectionTest {
+    private static final long IDLE_TIMEOUT = 100;
+    private int port;
+    private RequestSocketServer<String, String> server;
+
+    @Before
+    public void startServer() throws IOException {
+        port = LineCodec.freePort();
+        server = SocketServerBuilder.create().atPort(port)
+                .withReadTimeout(IDLE_TIMEOUT, TimeUnit.MILLISECONDS)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withValidationAfterInactivity(0, TimeUnit.MILLISECONDS)
+                .build(new LineCodec());
+        assertThat(client.exec("a"), is("a"));
+        Thread.sleep(IDLE_TIMEOUT * 3);
+        assertThat(client.exec("b"), is("b"));
+        assertThat(client.getMetrics().getStaleConnections().get(), is(1L));
+        assertThat(client.getMetrics().getRetries().get(), is(0L));
+        assertThat(client.getMetrics().getOpenedConnections().get(), is(2L));
+        client.close();
+    }
+
+    @Test
+    public void testPooledValidation() throws Exception {
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withConnectionPool(2)
+                .withValidationAfterInactivity(0, TimeUnit.MILLISECONDS)
+                .build(new LineCodec());
+        assertThat(client.exec("a"), is("a"));
+        Thread.sleep(IDLE_TIMEOUT * 3);
+        assertThat(client.exec("b"), is("b"));
+        assertThat(client.getMetrics().getStaleConnections().get(), is(1L));
+        assertThat(client.getMetrics().getRetries().get(), is(0L));
+        client.close();
+    }
+
+    @Test
+    public void testIdempotentRetry() throws Exception {
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withoutConnectionValidation()
+                .build(new IdempotentLineCodec());
+        assertThat(client.exec("a"), is("a"));
+        Thread.sleep(IDLE_TIMEOUT * 3);
+        assertThat(client.exec("b"), is("b"));
+        assertThat(client.getMetrics().getRetries().get(), is(1L));
+        client.close();
+    }
+
+    @Test
+    public void testFailedRetry() throws Exception {
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withConnectionPool(1)
+                .withoutConnectionValidation()
+                .build(new IdempotentLineCodec());
+        assertThat(client.exec("a"), is("a"));
+        server.stop();
+        Thread.sleep(IDLE_TIMEOUT * 3);
+        try {
+            client.exec("b");
+            fail("Expected the retry to fail");
+        } catch (IOException e) {
+            assertThat(client.getMetrics().getRetries().get(), is(1L));
+        }
+        assertThat(client.getConnectionPool().getConnections(), is(0));
+        client.close();
+    }
+
+    @Test
+    public void testNoRetryAfterSending() throws Exception {
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withoutConnectionValidation()
+                .build(new LineCodec());
+        assertThat(client.exec("a"), is("a"));
+        Thread.sleep(IDLE_TIMEOUT * 3);
+        try {
+            client.exec("b");
+            fail("Expected the request to fail");
+        } catch (IOException e) {
+            assertThat(client.getMetrics().getRetries().get(), is(0L));
+        }
+        assertThat(client.exec("c"), is("c"));
+        client.close();
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        RequestSocketClient<String, String> client = SocketClientBuilder
+                .create().withAddress(Echo.LOCALHOST, port)
+                .withMaxConnectionLifetime(IDLE_TIMEOUT / 4,
+                                           TimeUnit.MILLISECONDS)
+                .build(new LineCodec());
+        assertThat(client.exec("a"), is("a"));
+        assertThat(client.getMetrics().getOpenedConnections().get(), is(1L));
+        Thread.sleep(IDLE_TIMEOUT / 2);
+        assertThat(client.exec("b"), is("b"));
+        assertThat(client.getMetrics().getOpenedConnections().get(), is(2L));
+        client.close();
+    }
+
+    private static class IdempotentLineCodec extends LineCodec
+            implements Idempotency<String> {
+        @Override
+        public boolean isIdempotent(String request) {
+            return true;
+        }
+    }
+}
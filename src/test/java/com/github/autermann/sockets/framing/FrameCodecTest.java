@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.framing;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.Correlated;
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.RequestSocketServerHandler;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+import com.google.common.base.Charsets;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class FrameCodecTest {
+
+    @Test
+    public void testLengthPrefixed() throws IOException {
+        testRoundTrip(new LengthPrefixedFrameCodec(100));
+    }
+
+    @Test
+    public void testVarint() throws IOException {
+        testRoundTrip(new VarintFrameCodec(100000));
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        assertThat(new VarintFrameCodec()
+                .encodeFrame(ByteBuffer.allocate(300), buffer), is(true));
+        // two bytes of header
+        assertThat(buffer.position(), is(302));
+    }
+
+    @Test
+    public void testDelimiter() throws IOException {
+        testRoundTrip(new DelimiterFrameCodec(new byte[] { '\r', '\n' }, 100));
+    }
+
+    @Test
+    public void testCorrelationIds() throws IOException {
+        testCorrelated(new LengthPrefixedFrameCodec(100));
+        testCorrelated(new VarintFrameCodec(100));
+        testCorrelated(new DelimiterFrameCodec(new byte[] { '\n' }, 100));
+    }
+
+    @Test(expected = FrameTooLongException.class)
+    public void testLengthPrefixedTooLong() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(101).flip();
+        new LengthPrefixedFrameCodec(100).decodeFrame(buffer);
+    }
+
+    @Test(expected = FrameTooLongException.class)
+    public void testVarintTooLong() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2);
+        buffer.put((byte) 0xe5).put((byte) 0x00).flip();
+        new VarintFrameCodec(100).decodeFrame(buffer);
+    }
+
+    @Test(expected = FrameTooLongException.class)
+    public void testDelimiterTooLong() throws IOException {
+        DelimiterFrameCodec.lines().encodeFrame(ByteBuffer.allocate(0),
+                                                ByteBuffer.allocate(1));
+        new DelimiterFrameCodec(new byte[] { '\n' }, 10)
+                .decodeFrame(ByteBuffer.wrap(new byte[11]));
+    }
+
+    @Test
+    public void testServerAndClient() throws IOException {
+        FrameCodec codec = new VarintFrameCodec();
+        ServerSocket s = new ServerSocket(0);
+        int port = s.getLocalPort();
+        s.close();
+        RequestSocketServer<ByteBuffer, ByteBuffer> server = SocketServerBuilder
+                .create().atPort(port)
+                .build(codec.asServerCoder(), new Echo());
+        server.start(false);
+        try {
+            RequestSocketClient<ByteBuffer, ByteBuffer> client
+                    = SocketClientBuilder.create()
+                    .withAddress("localhost", port)
+                    .build(codec.asClientHandler());
+            try {
+                for (int i = 0; i < 100; ++i) {
+                    ByteBuffer request = utf8("request " + i);
+                    assertThat(client.exec(request), is(request));
+                }
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void testRoundTrip(FrameCodec codec) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        assertThat(codec.encodeFrame(utf8("first"), buffer), is(true));
+        assertThat(codec.encodeFrame(utf8(""), buffer), is(true));
+        assertThat(codec.encodeFrame(utf8("third"), buffer), is(true));
+        assertThat(codec.encodeFrame(utf8("too large"),
+                                     ByteBuffer.allocate(5)), is(false));
+        buffer.flip();
+        int end = buffer.limit();
+        // feed the frames byte by byte
+        buffer.limit(0);
+        for (String expected : new String[] { "first", "", "third" }) {
+            ByteBuffer frame;
+            while ((frame = codec.decodeFrame(buffer)) == null) {
+                buffer.limit(buffer.limit() + 1);
+            }
+            assertThat(frame, is(utf8(expected)));
+        }
+        assertThat(buffer.limit(), is(end));
+        assertThat(codec.decodeFrame(buffer), is(nullValue()));
+    }
+
+    private void testCorrelated(FrameCodec codec) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        long[] ids = { 0, 10, Long.MAX_VALUE };
+        for (long id : ids) {
+            assertThat(codec.asCorrelatedClientHandler()
+                    .encode(Correlated.of(id, utf8("payload " + id)), buffer),
+                       is(true));
+        }
+        buffer.flip();
+        for (long id : ids) {
+            assertThat(codec.asCorrelatedServerCoder().decode(buffer),
+                       is(Correlated.of(id, utf8("payload " + id))));
+        }
+        assertThat(buffer.hasRemaining(), is(false));
+    }
+
+    private static ByteBuffer utf8(String s) {
+        return ByteBuffer.wrap(s.getBytes(Charsets.UTF_8));
+    }
+
+    private static class Echo
+            implements RequestSocketServerHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer handle(ByteBuffer request) {
+            return request;
+        }
+    }
+}
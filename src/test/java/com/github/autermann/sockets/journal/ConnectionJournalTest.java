@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.journal;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.server.Echo;
+import com.github.autermann.sockets.server.LineCodec;
+import com.github.autermann.sockets.server.RequestSocketServer;
+import com.github.autermann.sockets.server.SocketServerBuilder;
+import com.google.common.collect.Lists;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class ConnectionJournalTest {
+    private static final int CLIENTS = 3;
+    private static final int REQUESTS = 5;
+
+    @Test
+    public void testDrainInOrder() {
+        CollectingSink sink = new CollectingSink();
+        ConnectionJournal journal = new ConnectionJournal(sink, 8, 1);
+        ConnectionJournal.Connection a = journal.opened(new Socket());
+        ConnectionJournal.Connection b = journal.opened(new Socket());
+        journal.closed(b, 10, 20, CloseReason.ERROR);
+        journal.closed(a, 1, 2, CloseReason.CLOSED);
+        assertThat(sink.events.size(), is(0));
+        journal.drain();
+        assertThat(sink.events.size(), is(4));
+        assertThat(sink.flushes, is(1));
+        assertThat(sink.events.get(0).type, is(ConnectionEvent.Type.OPENED));
+        assertThat(sink.events.get(0).id, is(0L));
+        assertThat(sink.events.get(1).id, is(1L));
+        assertThat(sink.events.get(2).id, is(1L));
+        assertThat(sink.events.get(2).reason, is(CloseReason.ERROR));
+        assertThat(sink.events.get(2).bytesRead, is(10L));
+        assertThat(sink.events.get(2).bytesWritten, is(20L));
+        assertThat(sink.events.get(3).id, is(0L));
+        assertThat(sink.events.get(3).reason, is(CloseReason.CLOSED));
+        journal.drain();
+        assertThat(sink.events.size(), is(4));
+        assertThat(sink.flushes, is(1));
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        CollectingSink sink = new CollectingSink();
+        ConnectionJournal journal = new ConnectionJournal(sink, 3, 1);
+        assertThat(journal.getCapacity(), is(4));
+        for (int i = 0; i < 6; ++i) {
+            journal.opened(new Socket());
+        }
+        assertThat(journal.getDroppedEvents(), is(2L));
+        journal.drain();
+        assertThat(sink.events.size(), is(4));
+        assertThat(sink.events.get(3).id, is(3L));
+        // the buffer can be reused after draining
+        for (int i = 0; i < 4; ++i) {
+            journal.opened(new Socket());
+        }
+        journal.drain();
+        assertThat(sink.events.size(), is(8));
+        assertThat(sink.events.get(7).id, is(9L));
+        assertThat(journal.getDroppedEvents(), is(2L));
+    }
+
+    @Test
+    public void testSampling() {
+        CollectingSink sink = new CollectingSink();
+        ConnectionJournal journal = new ConnectionJournal(sink, 16, 3);
+        for (int i = 0; i < 6; ++i) {
+            ConnectionJournal.Connection c = journal.opened(new Socket());
+            assertThat(c == null, is(i % 3 != 0));
+            journal.closed(c, 0, 0, CloseReason.CLOSED);
+        }
+        journal.drain();
+        assertThat(sink.events.size(), is(4));
+        assertThat(sink.events.get(2).id, is(3L));
+        assertThat(sink.events.get(2).reason, is(nullValue()));
+    }
+
+    @Test
+    public void testBlockingServer() throws Exception {
+        testServer(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingServer() throws Exception {
+        testServer(SocketServerBuilder.create().withNonBlockingIO());
+    }
+
+    private void testServer(SocketServerBuilder builder) throws Exception {
+        int port = LineCodec.freePort();
+        CollectingSink sink = new CollectingSink();
+        RequestSocketServer<String, String> server = builder.atPort(port)
+                .withConnectionJournal(sink)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            assertThat(Echo.run(port, CLIENTS, REQUESTS),
+                       is(CLIENTS * REQUESTS));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sink.count(ConnectionEvent.Type.CLOSED) < CLIENTS &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            server.stop();
+        }
+        assertThat(sink.count(ConnectionEvent.Type.OPENED), is(CLIENTS));
+        assertThat(sink.count(ConnectionEvent.Type.CLOSED), is(CLIENTS));
+        long read = 0;
+        for (Event e : sink.snapshot()) {
+            if (e.type == ConnectionEvent.Type.CLOSED) {
+                assertThat(e.reason, is(CloseReason.CLOSED));
+                assertThat(e.remoteAddress, is(notNullValue()));
+                assertThat(e.bytesWritten, is(e.bytesRead));
+                read += e.bytesRead;
+            }
+        }
+        // every request is "<client>-<request>\n"
+        assertThat(read, is(4L * CLIENTS * REQUESTS));
+    }
+
+    private static class Event {
+        private final ConnectionEvent.Type type;
+        private final long id;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final CloseReason reason;
+        private final SocketAddress remoteAddress;
+
+        Event(ConnectionEvent event) {
+            this.type = event.getType();
+            this.id = event.getConnectionId();
+            this.bytesRead = event.getBytesRead();
+            this.bytesWritten = event.getBytesWritten();
+            this.reason = event.getCloseReason();
+            this.remoteAddress = event.getRemoteAddress();
+        }
+    }
+
+    private static class CollectingSink implements ConnectionEventSink {
+        private final List<Event> events = Lists.newArrayList();
+        private int flushes = 0;
+
+        @Override
+        public synchronized void write(ConnectionEvent event) {
+            events.add(new Event(event));
+        }
+
+        @Override
+        public synchronized void flush() {
+            ++flushes;
+        }
+
+        synchronized List<Event> snapshot() {
+            return Lists.newArrayList(events);
+        }
+
+        synchronized int count(ConnectionEvent.Type type) {
+            int count = 0;
+            for (Event e : events) {
+                if (e.type == type) {
+                    ++count;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.metrics;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; ++i) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = Histogram.index(value);
+            assertThat(index, is(lessThanOrEqualTo(Histogram.BUCKETS - 1)));
+            assertThat(Histogram.lowestValue(index),
+                       is(lessThanOrEqualTo(value)));
+            assertThat(Histogram.highestValue(index),
+                       is(greaterThanOrEqualTo(value)));
+        }
+        assertThat(Histogram.index(Long.MAX_VALUE), is(Histogram.BUCKETS - 1));
+        assertThat(Histogram.highestValue(Histogram.BUCKETS - 1),
+                   is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 10000; ++i) {
+            histogram.record(i * 1000);
+        }
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+        assertThat(snapshot.getCount(), is(10000L));
+        assertThat(snapshot.getMin(), is(1000L));
+        assertThat(snapshot.getMax(), is(10000000L));
+        assertThat(snapshot.getMean(), is(5000500.0));
+        assertWithin(snapshot.getValueAtPercentile(50), 5000000);
+        assertWithin(snapshot.getValueAtPercentile(99), 9900000);
+        assertThat(snapshot.getValueAtPercentile(100), is(10000000L));
+    }
+
+    @Test
+    public void testEmpty() {
+        HistogramSnapshot snapshot = new Histogram().getSnapshot();
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getMin(), is(0L));
+        assertThat(snapshot.getValueAtPercentile(99), is(0L));
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        // relative error of a bucket is below 1/32
+        assertThat(actual, is(greaterThanOrEqualTo(expected)));
+        assertThat(actual, is(lessThanOrEqualTo(expected + expected / 32)));
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class AdmissionControlTest {
+    private static final String BUSY = "BUSY";
+
+    @Test
+    public void testBusyResponse() throws IOException {
+        testRejection(SocketServerBuilder.create()
+                .withBusyResponse(bytes(BUSY + "\n")), BUSY);
+    }
+
+    @Test
+    public void testNonBlockingClose() throws IOException {
+        testRejection(SocketServerBuilder.create().withNonBlockingIO(1),
+                      null);
+    }
+
+    @Test
+    public void testUnreadBusyResponse() throws Exception {
+        testUnreadBusyResponse(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingUnreadBusyResponse() throws Exception {
+        testUnreadBusyResponse(SocketServerBuilder.create()
+                .withNonBlockingIO(1));
+    }
+
+    @Test
+    public void testStopAccepting() throws IOException {
+        int port = LineCodec.freePort();
+        StreamingSocketServer server = SocketServerBuilder.create()
+                .atPort(port).withMaxConnections(1)
+                .withRejectionPolicy(RejectionPolicy.STOP_ACCEPTING)
+                .build(new ConversationHandler());
+        server.start(false);
+        try {
+            Socket first = connect(port);
+            Socket second = new Socket(Echo.LOCALHOST, port);
+            try {
+                // waits in the backlog until the first connection is closed
+                send(second, "second");
+                first.close();
+                assertThat(receive(second), is("second"));
+                assertThat(server.getRejectedConnectionCount(), is(0L));
+            } finally {
+                second.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void testRejection(SocketServerBuilder builder, String expected)
+            throws IOException {
+        int port = LineCodec.freePort();
+        StreamingSocketServer server = builder.atPort(port)
+                .withMaxConnections(1)
+                .build(new ConversationHandler());
+        server.start(false);
+        try {
+            Socket first = connect(port);
+            try {
+                assertThat(server.getConnectionCount(), is(1));
+                Socket second = new Socket(Echo.LOCALHOST, port);
+                try {
+                    assertThat(receive(second), is(expected));
+                } finally {
+                    second.close();
+                }
+                assertThat(server.getRejectedConnectionCount(), is(1L));
+            } finally {
+                first.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testPendingConnectionLimit() throws Exception {
+        int port = LineCodec.freePort();
+        StreamingSocketServer server = SocketServerBuilder.create()
+                .atPort(port).withFixedThreads(1).withMaxPendingConnections(1)
+                .build(new ConversationHandler());
+        server.start(false);
+        try {
+            Socket first = connect(port);
+            Socket pending = new Socket(Echo.LOCALHOST, port);
+            Socket rejected = new Socket(Echo.LOCALHOST, port);
+            try {
+                assertThat(rejected.getInputStream().read(), is(-1));
+                assertThat(server.getRejectedConnectionCount(), is(1L));
+                ServerMetrics metrics = server.getMetrics();
+                assertThat(metrics.getAcceptedConnections().get(), is(3L));
+                assertThat(metrics.getClosedConnections().get(), is(1L));
+            } finally {
+                first.close();
+                pending.close();
+                rejected.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPendingConnectionsWithExecutor() throws IOException {
+        SocketServerBuilder.create().atPort(LineCodec.freePort())
+                .withExecutor(MoreExecutors.sameThreadExecutor())
+                .withMaxPendingConnections(1)
+                .build(new ConversationHandler());
+    }
+
+    private void testUnreadBusyResponse(SocketServerBuilder builder)
+            throws Exception {
+        int port = LineCodec.freePort();
+        // larger than any send buffer
+        StreamingSocketServer server = builder.atPort(port)
+                .withMaxConnections(1)
+                .withBusyResponse(new byte[16 * 1024 * 1024])
+                .build(new ConversationHandler());
+        server.start(false);
+        List<Socket> rejected = Lists.newArrayList();
+        try {
+            Socket first = connect(port);
+            try {
+                // clients that never read do not block the accepting thread
+                for (int i = 0; i < 3; ++i) {
+                    rejected.add(new Socket(Echo.LOCALHOST, port));
+                }
+                long deadline = System.currentTimeMillis() + 5000;
+                while (server.getRejectedConnectionCount() < 3 &&
+                       System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertThat(server.getRejectedConnectionCount(), is(3L));
+            } finally {
+                first.close();
+            }
+        } finally {
+            for (Socket socket : rejected) {
+                socket.close();
+            }
+            server.stop();
+        }
+    }
+
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket(Echo.LOCALHOST, port);
+        send(socket, "first");
+        assertThat(receive(socket), is("first"));
+        return socket;
+    }
+
+    private static void send(Socket socket, String message)
+            throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(bytes(message + "\n"));
+        out.flush();
+    }
+
+    private static String receive(Socket socket) throws IOException {
+        return new LineCodec().decode(socket.getInputStream());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charsets.UTF_8);
+    }
+
+    /**
+     * Echoes the first line and keeps the connection open until the client
+     * closes it.
+     */
+    private static class ConversationHandler
+            implements StreamingSocketServerHandler {
+        @Override
+        public void handle(InputStream in, OutputStream out)
+                throws IOException {
+            LineCodec codec = new LineCodec();
+            codec.encode(codec.decode(in), out);
+            out.flush();
+            while (in.read() >= 0) {
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class AsyncRequestSocketServerTest {
+    private static final int REQUESTS = 20;
+    private ScheduledExecutorService downstream;
+
+    @Before
+    public void createDownstream() {
+        downstream = Executors.newScheduledThreadPool(2);
+    }
+
+    @After
+    public void shutdownDownstream() {
+        downstream.shutdownNow();
+    }
+
+    @Test
+    public void testBlocking() throws IOException {
+        // the only thread of the server is busy decoding the connection
+        communicate(SocketServerBuilder.create().withFixedThreads(1));
+    }
+
+    @Test
+    public void testNonBlocking() throws IOException {
+        communicate(SocketServerBuilder.create().withNonBlockingIO(1)
+                .withFixedThreads(1));
+    }
+
+    @Test
+    public void testCompletionDoesNotBlock() throws Exception {
+        final BlockingQueue<SettableFuture<String>> pending
+                = new LinkedBlockingQueue<SettableFuture<String>>();
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port)
+                .build(new LineCodec(),
+                       new AsyncRequestSocketServerHandler<String, String>() {
+                    @Override
+                    public ListenableFuture<String> handle(String request) {
+                        SettableFuture<String> response = SettableFuture
+                                .create();
+                        pending.add(response);
+                        return response;
+                    }
+                });
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                OutputStream out = socket.getOutputStream();
+                out.write("request\n".getBytes(Charsets.UTF_8));
+                out.flush();
+                final SettableFuture<String> response = pending
+                        .poll(10, TimeUnit.SECONDS);
+                assertThat(response, is(notNullValue()));
+                // the client does not read the response
+                final String large = Strings.repeat("x", 8 * 1024 * 1024);
+                Thread completing = new Thread() {
+                    @Override
+                    public void run() {
+                        response.set(large);
+                    }
+                };
+                completing.start();
+                completing.join(5000);
+                assertThat(completing.isAlive(), is(false));
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void communicate(SocketServerBuilder builder) throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder
+                .atPort(port).withPipelining(REQUESTS)
+                .build(new LineCodec(), new DelayedEcho());
+        assertThat(server.isAsync(), is(true));
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                OutputStream out = socket.getOutputStream();
+                StringBuilder requests = new StringBuilder();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    requests.append(i).append('\n');
+                }
+                out.write(requests.toString().getBytes(Charsets.UTF_8));
+                out.flush();
+                InputStream in = socket.getInputStream();
+                LineCodec codec = new LineCodec();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    assertThat(codec.decode(in), is(String.valueOf(i)));
+                }
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Completes later requests earlier.
+     */
+    private class DelayedEcho
+            implements AsyncRequestSocketServerHandler<String, String> {
+        @Override
+        public ListenableFuture<String> handle(final String request) {
+            final SettableFuture<String> response = SettableFuture.create();
+            long delay = 5 * (REQUESTS - Integer.parseInt(request));
+            downstream.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    response.set(request);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return response;
+        }
+    }
+}
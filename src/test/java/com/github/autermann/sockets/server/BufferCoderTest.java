@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.RequestSocketClientBufferHandler;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+import com.google.common.collect.Lists;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class BufferCoderTest {
+    private static final int REQUESTS = 200;
+    private static final int FRAME_SIZE = 100;
+
+    @Test
+    public void testPartialFrames() throws IOException {
+        LengthPrefixedCodec codec = new LengthPrefixedCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        assertThat(codec.encode(ByteBuffer.wrap(new byte[] { 1, 2, 3 }),
+                                buffer), is(true));
+        buffer.flip();
+        buffer.limit(5);
+        assertThat(codec.decode(buffer), is(nullValue()));
+        buffer.limit(7);
+        ByteBuffer frame = codec.decode(buffer);
+        assertThat(frame.remaining(), is(3));
+        assertThat(buffer.hasRemaining(), is(false));
+        assertThat(codec.encode(frame, ByteBuffer.allocate(4)), is(false));
+    }
+
+    @Test
+    public void testRetainedRequests() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(frames);
+        for (int i = 0; i < REQUESTS; ++i) {
+            out.writeInt(FRAME_SIZE);
+            out.write(frame(i));
+        }
+        BufferCoderAdapter<ByteBuffer, ByteBuffer> adapter
+                = new BufferCoderAdapter<ByteBuffer, ByteBuffer>(
+                        new LengthPrefixedCodec(), new BufferPool(), true);
+        InputStream in = new ByteArrayInputStream(frames.toByteArray());
+        List<ByteBuffer> requests = Lists.newArrayList();
+        ByteBuffer request;
+        while ((request = adapter.decode(in)) != null) {
+            requests.add(request);
+        }
+        adapter.close();
+        // the input was buffered in several reads
+        assertThat(REQUESTS * (FRAME_SIZE + 4), is(greaterThan(8192)));
+        assertThat(requests.size(), is(REQUESTS));
+        for (int i = 0; i < REQUESTS; ++i) {
+            assertThat(requests.get(i), is(ByteBuffer.wrap(frame(i))));
+        }
+    }
+
+    @Test
+    public void testPipelined() throws IOException {
+        testPipelined(SocketServerBuilder.create().withPipelining(16, true));
+    }
+
+    @Test
+    public void testNonBlockingPipelined() throws IOException {
+        testPipelined(SocketServerBuilder.create().withNonBlockingIO(1)
+                .withPipelining(16, true));
+    }
+
+    @Test
+    public void testNonBlockingPartialFrame() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<ByteBuffer, ByteBuffer> server = SocketServerBuilder
+                .create().atPort(port).withNonBlockingIO(1).withFixedThreads(1)
+                .build(new LengthPrefixedCodec(), new BufferEcho());
+        server.start(false);
+        try {
+            Socket partial = new Socket(Echo.LOCALHOST, port);
+            Socket complete = new Socket(Echo.LOCALHOST, port);
+            try {
+                partial.setSoTimeout(5000);
+                complete.setSoTimeout(5000);
+                DataOutputStream out = new DataOutputStream(partial
+                        .getOutputStream());
+                out.writeInt(FRAME_SIZE);
+                out.write(frame(1), 0, FRAME_SIZE / 2);
+                out.flush();
+                Thread.sleep(100);
+                // the only worker thread does not wait for the rest
+                assertEcho(complete, 2);
+                out.write(frame(1), FRAME_SIZE / 2, FRAME_SIZE / 2);
+                out.flush();
+                DataInputStream in = new DataInputStream(partial
+                        .getInputStream());
+                byte[] response = new byte[in.readInt()];
+                in.readFully(response);
+                assertThat(response, is(frame(1)));
+            } finally {
+                partial.close();
+                complete.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBlocking() throws IOException {
+        test(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlocking() throws IOException {
+        test(SocketServerBuilder.create().withNonBlockingIO(1));
+    }
+
+    private void test(SocketServerBuilder builder) throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<ByteBuffer, ByteBuffer> server = builder
+                .atPort(port)
+                .build(new LengthPrefixedCodec(), new BufferEcho());
+        server.start(false);
+        try {
+            RequestSocketClient<ByteBuffer, ByteBuffer> client
+                    = SocketClientBuilder.create()
+                    .withAddress(Echo.LOCALHOST, port)
+                    .build(new LengthPrefixedCodec());
+            try {
+                // larger than the initial buffers of the adapters
+                for (int size : new int[] { 1, 100, 20000, 0, 70000 }) {
+                    byte[] payload = new byte[size];
+                    Arrays.fill(payload, (byte) size);
+                    ByteBuffer response = client.exec(ByteBuffer.wrap(payload));
+                    assertThat(response, is(ByteBuffer.wrap(payload)));
+                }
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void testPipelined(SocketServerBuilder builder)
+            throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<ByteBuffer, ByteBuffer> server = builder
+                .atPort(port)
+                .build(new LengthPrefixedCodec(), new SlowBufferEcho());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                // send all requests without waiting for a response
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(socket.getOutputStream()));
+                for (int i = 0; i < REQUESTS; ++i) {
+                    out.writeInt(FRAME_SIZE);
+                    out.write(frame(i));
+                }
+                out.flush();
+                DataInputStream in = new DataInputStream(socket
+                        .getInputStream());
+                for (int i = 0; i < REQUESTS; ++i) {
+                    byte[] response = new byte[in.readInt()];
+                    in.readFully(response);
+                    assertThat(response, is(frame(i)));
+                }
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void assertEcho(Socket socket, int i) throws IOException {
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(FRAME_SIZE);
+        out.write(frame(i));
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        assertThat(response, is(frame(i)));
+    }
+
+    private static byte[] frame(int i) {
+        byte[] frame = new byte[FRAME_SIZE];
+        Arrays.fill(frame, (byte) i);
+        return frame;
+    }
+
+    private static class SlowBufferEcho
+            implements RequestSocketServerHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer handle(ByteBuffer request) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return request;
+        }
+    }
+
+    private static class BufferEcho
+            implements RequestSocketServerHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer handle(ByteBuffer request) {
+            return request;
+        }
+    }
+
+    /**
+     * Frames of a 4 byte length followed by the payload. The server side
+     * decodes the payload as a slice of the input buffer.
+     */
+    private static class LengthPrefixedCodec implements
+            RequestSocketServerBufferCoder<ByteBuffer, ByteBuffer>,
+            RequestSocketClientBufferHandler<ByteBuffer, ByteBuffer> {
+        @Override
+        public ByteBuffer decode(ByteBuffer in) {
+            if (in.remaining() < 4) {
+                return null;
+            }
+            int length = in.getInt(in.position());
+            if (in.remaining() < 4 + length) {
+                return null;
+            }
+            in.position(in.position() + 4);
+            ByteBuffer payload = in.slice();
+            payload.limit(length);
+            in.position(in.position() + length);
+            return payload;
+        }
+
+        @Override
+        public boolean encode(ByteBuffer message, ByteBuffer out) {
+            if (out.remaining() < 4 + message.remaining()) {
+                return false;
+            }
+            out.putInt(message.remaining());
+            out.put(message.duplicate());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares pooled with unpooled connection buffers of the selector engine
+ * under connection churn: every connection sends a single request. Reports
+ * the connection rate, the buffers allocated and the garbage collections
+ * during the run. Not run as part of the tests; run the {@code main} method.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class BufferPoolBenchmark {
+    private static final int CLIENTS = 8;
+    private static final int WARMUP = 500;
+    // per client
+    private static final int CONNECTIONS = 5000;
+    private static final byte[] REQUEST = "0123456789abcdef\n"
+            .getBytes(Charsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        report("unpooled", new UnpooledBufferPool(false));
+        report("pooled", new BufferPool());
+        report("unpooled direct", new UnpooledBufferPool(true));
+        report("pooled direct",
+               new BufferPool(true, BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS));
+    }
+
+    private static void report(String buffers, BufferPool pool)
+            throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withNonBlockingIO()
+                .withBufferPool(pool).withoutConnectionJournal()
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            run(port, WARMUP);
+            long allocations = pool.getAllocations();
+            long collections = collections();
+            long start = System.nanoTime();
+            int connections = run(port, CONNECTIONS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f connections/s, %d buffers " +
+                              "allocated, %d collections%n", buffers,
+                              connections / seconds,
+                              pool.getAllocations() - allocations,
+                              collections() - collections);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static int run(final int port, final int connections)
+            throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < CLIENTS; ++i) {
+                results.add(clients.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        for (int j = 0; j < connections; ++j) {
+                            exchange(port);
+                        }
+                        return connections;
+                    }
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            return total;
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    private static void exchange(int port) throws IOException {
+        Socket socket = new Socket(Echo.LOCALHOST, port);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            new LineCodec().decode(socket.getInputStream());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory
+                .getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Allocates a new buffer for every connection.
+     */
+    private static class UnpooledBufferPool extends BufferPool {
+        UnpooledBufferPool(boolean direct) {
+            super(direct, 1);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+        }
+    }
+}
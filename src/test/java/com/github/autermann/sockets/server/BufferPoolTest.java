@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class BufferPoolTest {
+    private static final int CONNECTIONS = 20;
+
+    @Test
+    public void testSizeClasses() {
+        BufferPool pool = new BufferPool();
+        assertThat(pool.acquire(0).capacity(), is(256));
+        assertThat(pool.acquire(256).capacity(), is(256));
+        assertThat(pool.acquire(257).capacity(), is(512));
+        assertThat(pool.acquire(8192).capacity(), is(8192));
+        assertThat(pool.acquire(2 << 20).capacity(), is(2 << 20));
+    }
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool(true, 1);
+        ByteBuffer buffer = pool.acquire(1000);
+        assertThat(buffer.isDirect(), is(true));
+        buffer.putInt(42);
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire(1024);
+        assertThat(reused, is(sameInstance(buffer)));
+        assertThat(reused.position(), is(0));
+        assertThat(pool.acquireHeap(1024).isDirect(), is(false));
+        assertThat(pool.getAllocations(), is(2L));
+        assertThat(pool.getReuses(), is(1L));
+    }
+
+    @Test
+    public void testBlockingConnectionsReuseBuffers()
+            throws IOException, InterruptedException, ExecutionException {
+        test(SocketServerBuilder.create(), new BufferPool());
+    }
+
+    @Test
+    public void testNonBlockingConnectionsReuseBuffers()
+            throws IOException, InterruptedException, ExecutionException {
+        test(SocketServerBuilder.create().withNonBlockingIO(1),
+             new BufferPool(true, BufferPool.DEFAULT_MAX_BUFFERS_PER_CLASS));
+    }
+
+    private void test(SocketServerBuilder builder, BufferPool pool)
+            throws IOException, InterruptedException, ExecutionException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder
+                .atPort(port)
+                .withWriteCoalescing()
+                .withBufferPool(pool)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            for (int i = 0; i < CONNECTIONS; ++i) {
+                assertThat(Echo.run(port, 1, 5), is(5));
+            }
+        } finally {
+            server.stop();
+        }
+        // every connection uses an input and an output buffer
+        assertThat(pool.getAllocations(), is(lessThan((long) CONNECTIONS)));
+        assertThat(pool.getReuses(), is(greaterThan(0L)));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+import com.google.common.collect.Lists;
+
+/**
+ * Echo workload used by the server tests: a handler returning the request and
+ * a set of concurrent line based clients.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class Echo implements RequestSocketServerHandler<String, String> {
+    public static final String LOCALHOST = "localhost";
+
+    @Override
+    public String handle(String request) {
+        return request;
+    }
+
+    /**
+     * Runs concurrent clients that each send multiple requests over a single
+     * connection.
+     *
+     * @param port     the port of the server
+     * @param clients  the number of concurrent clients
+     * @param requests the number of requests per client
+     *
+     * @return the number of correctly echoed requests
+     *
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              clients
+     * @throws ExecutionException   if a client failed
+     */
+    public static int run(int port, int clients, int requests)
+            throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Integer>> results = Lists.newArrayList();
+            for (int i = 0; i < clients; ++i) {
+                results.add(pool.submit(new Client(port, i, requests)));
+            }
+            int echoed = 0;
+            for (Future<Integer> result : results) {
+                echoed += result.get();
+            }
+            return echoed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class Client implements Callable<Integer> {
+        private final int port;
+        private final int id;
+        private final int requests;
+
+        Client(int port, int id, int requests) {
+            this.port = port;
+            this.id = id;
+            this.requests = requests;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            RequestSocketClient<String, String> client = SocketClientBuilder
+                    .create().withAddress(LOCALHOST, port)
+                    .build(new LineCodec());
+            try {
+                int echoed = 0;
+                for (int i = 0; i < requests; ++i) {
+                    String message = id + "-" + i;
+                    if (client.exec(message).equals(message)) {
+                        ++echoed;
+                    }
+                }
+                return echoed;
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
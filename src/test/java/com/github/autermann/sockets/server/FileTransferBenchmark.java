@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Random;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * Compares sending a file with {@link FileTransfer}, which uses
+ * {@code FileChannel.transferTo} on the selector engine, with copying it
+ * through the output stream of the connection. Reports the throughput of
+ * repeatedly downloading a file. Not run as part of the tests; run the
+ * {@code main} method.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class FileTransferBenchmark {
+    private static final int FILE_SIZE = 64 * 1024 * 1024;
+    private static final int WARMUP = 5;
+    private static final int TRANSFERS = 20;
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("file-transfer", ".bin");
+        try {
+            byte[] content = new byte[FILE_SIZE];
+            new Random(42).nextBytes(content);
+            Files.write(content, file);
+            report("stream copy", new CopyingHandler(file));
+            report("transferTo", new TransferringHandler(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void report(String method,
+                               StreamingSocketServerHandler handler)
+            throws IOException {
+        int port = LineCodec.freePort();
+        StreamingSocketServer server = SocketServerBuilder.create()
+                .atPort(port).withNonBlockingIO().withoutConnectionJournal()
+                .build(handler);
+        server.start(false);
+        try {
+            for (int i = 0; i < WARMUP; ++i) {
+                download(port);
+            }
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < TRANSFERS; ++i) {
+                bytes += download(port);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %.0f MB/s%n", method,
+                              bytes / seconds / (1024 * 1024));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long download(int port) throws IOException {
+        Socket socket = new Socket(Echo.LOCALHOST, port);
+        try {
+            socket.getOutputStream().write('\n');
+            InputStream in = socket.getInputStream();
+            return ByteStreams.copy(in, ByteStreams.nullOutputStream());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static class TransferringHandler
+            implements StreamingSocketServerHandler {
+        private final File file;
+
+        TransferringHandler(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void handle(InputStream in, OutputStream out)
+                throws IOException {
+            in.read();
+            FileTransfer.transfer(file, out);
+            out.flush();
+        }
+    }
+
+    private static class CopyingHandler
+            implements StreamingSocketServerHandler {
+        private final File file;
+
+        CopyingHandler(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void handle(InputStream in, OutputStream out)
+                throws IOException {
+            in.read();
+            Files.copy(file, out);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class FileTransferTest {
+    private static final int FILE_SIZE = 4 * 1024 * 1024 + 17;
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void createFile() throws IOException {
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        file = File.createTempFile("file-transfer", ".bin");
+        Files.write(content, file);
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void testBlocking() throws IOException {
+        test(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlocking() throws IOException {
+        test(SocketServerBuilder.create().withNonBlockingIO(1));
+    }
+
+    @Test
+    public void testNonBlockingWithCoalescing() throws IOException {
+        test(SocketServerBuilder.create().withNonBlockingIO(1)
+                .withWriteCoalescing());
+    }
+
+    private void test(SocketServerBuilder builder) throws IOException {
+        int port = LineCodec.freePort();
+        StreamingSocketServer server = builder.atPort(port)
+                .build(new FileHandler());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                socket.getOutputStream().write('\n');
+                byte[] received = ByteStreams.toByteArray(socket
+                        .getInputStream());
+                assertThat(received.length, is(FILE_SIZE + 2));
+                assertThat(received[0], is((byte) 'a'));
+                assertThat(Arrays.equals(Arrays
+                        .copyOfRange(received, 1, FILE_SIZE + 1), content),
+                           is(true));
+                assertThat(received[FILE_SIZE + 1], is((byte) 'z'));
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private class FileHandler implements StreamingSocketServerHandler {
+        @Override
+        public void handle(InputStream in, OutputStream out)
+                throws IOException {
+            assertThat(in.read(), is((int) '\n'));
+            out.write('a');
+            assertThat(FileTransfer.transfer(file, out), is((long) FILE_SIZE));
+            out.write('z');
+            out.flush();
+        }
+    }
+}
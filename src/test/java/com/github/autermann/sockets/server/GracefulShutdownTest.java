@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class GracefulShutdownTest {
+    private static final long HANDLING_MS = 300;
+
+    @Test
+    public void testBlockingDrain() throws Exception {
+        testDrain(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingDrain() throws Exception {
+        testDrain(SocketServerBuilder.create().withNonBlockingIO(1));
+    }
+
+    @Test
+    public void testPipelinedDrain() throws Exception {
+        testDrain(SocketServerBuilder.create().withPipelining(4));
+    }
+
+    @Test
+    public void testNonBlockingPipelinedDrain() throws Exception {
+        testDrain(SocketServerBuilder.create().withNonBlockingIO(1)
+                .withPipelining(4));
+    }
+
+    @Test
+    public void testForcedClose() throws Exception {
+        int port = LineCodec.freePort();
+        SlowEcho handler = new SlowEcho(HANDLING_MS * 20);
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).build(new LineCodec(), handler);
+        server.start(false);
+        Socket socket = new Socket(Echo.LOCALHOST, port);
+        try {
+            send(socket, "request");
+            handler.awaitRequest();
+            ShutdownResult result = server.stop(HANDLING_MS,
+                                                TimeUnit.MILLISECONDS);
+            assertThat(result.getDrainedConnections(), is(0));
+            assertThat(result.getForciblyClosedConnections(), is(1));
+            assertThat(result.isComplete(), is(false));
+        } finally {
+            socket.close();
+        }
+    }
+
+    private void testDrain(SocketServerBuilder builder) throws Exception {
+        int port = LineCodec.freePort();
+        SlowEcho handler = new SlowEcho(HANDLING_MS);
+        RequestSocketServer<String, String> server = builder.atPort(port)
+                .build(new LineCodec(), handler);
+        server.start(false);
+        Socket busy = new Socket(Echo.LOCALHOST, port);
+        Socket idle = new Socket(Echo.LOCALHOST, port);
+        try {
+            send(busy, "request");
+            handler.awaitRequest();
+            // the idle connection may not be accepted yet
+            long deadline = System.currentTimeMillis() + HANDLING_MS * 10;
+            while (server.getConnectionCount() < 2 &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            ShutdownResult result = server.stop(HANDLING_MS * 10,
+                                                TimeUnit.MILLISECONDS);
+            assertThat(result.getDrainedConnections(), is(2));
+            assertThat(result.getForciblyClosedConnections(), is(0));
+            assertThat(result.isComplete(), is(true));
+            // the response was written before the connection was closed
+            LineCodec codec = new LineCodec();
+            assertThat(codec.decode(busy.getInputStream()), is("request"));
+            assertThat(busy.getInputStream().read(), is(-1));
+            assertThat(idle.getInputStream().read(), is(-1));
+        } finally {
+            busy.close();
+            idle.close();
+        }
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(Charsets.UTF_8));
+        out.flush();
+    }
+
+    private static class SlowEcho
+            implements RequestSocketServerHandler<String, String> {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final long millis;
+
+        SlowEcho(long millis) {
+            this.millis = millis;
+        }
+
+        void awaitRequest() throws InterruptedException {
+            assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        }
+
+        @Override
+        public String handle(String request) {
+            started.countDown();
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return request;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+
+import com.github.autermann.sockets.client.RequestSocketClientHandler;
+import com.google.common.base.Charsets;
+import com.google.common.io.InputSupplier;
+import com.google.common.io.OutputSupplier;
+
+/**
+ * Newline delimited string codec for both sides of a connection. It never
+ * reads beyond the end of a request, so it can be used for multiple requests
+ * on a single connection.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class LineCodec implements RequestSocketServerCoder<String, String>,
+                                  RequestSocketClientHandler<String, String> {
+
+    @Override
+    public String decode(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new EOFException();
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), Charsets.UTF_8);
+    }
+
+    @Override
+    public void encode(String response, OutputStream out) throws IOException {
+        out.write((response + "\n").getBytes(Charsets.UTF_8));
+    }
+
+    @Override
+    public void encode(String request, OutputSupplier<OutputStream> out)
+            throws IOException {
+        OutputStream os = out.getOutput();
+        encode(request, os);
+        os.flush();
+    }
+
+    @Override
+    public String decode(InputSupplier<InputStream> in) throws IOException {
+        String response = decode(in.getInput());
+        if (response == null) {
+            throw new EOFException();
+        }
+        return response;
+    }
+
+    /**
+     * @return a currently unused local port
+     *
+     * @throws IOException if no port could be found
+     */
+    public static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class LoadSheddingTest {
+    private static final int REQUESTS = 40;
+    private static final String OVERLOADED = "overloaded";
+
+    @Test
+    public void testBurstIsNotShed() {
+        LoadShedder shedder = new LoadShedder(TimeUnit.MILLISECONDS
+                .toNanos(1), TimeUnit.SECONDS.toNanos(10));
+        long dispatchTime = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < REQUESTS; ++i) {
+            assertThat(shedder.shouldShed(dispatchTime), is(false));
+        }
+        assertThat(shedder.getShedCount(), is(0L));
+    }
+
+    @Test
+    public void testIdleConnectionsAreNotShed() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withFixedThreads(4)
+                .withLoadShedding(10, 10, TimeUnit.MILLISECONDS)
+                .build(new LineCodec(), new SlowEcho());
+        server.start(false);
+        try {
+            LineCodec codec = new LineCodec();
+            for (int i = 0; i < 5; ++i) {
+                Socket socket = new Socket(Echo.LOCALHOST, port);
+                try {
+                    // the think time of the client is no queueing delay
+                    Thread.sleep(50);
+                    codec.encode(String.valueOf(i), socket.getOutputStream());
+                    assertThat(codec.decode(socket.getInputStream()),
+                               is(String.valueOf(i)));
+                } finally {
+                    socket.close();
+                }
+            }
+            assertThat(server.getShedRequestCount(), is(0L));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testStandingQueueIsShed() throws IOException {
+        int port = LineCodec.freePort();
+        // one thread decodes, the other handles the requests
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withFixedThreads(2)
+                .withPipelining(REQUESTS)
+                .withLoadShedding(2, 20, TimeUnit.MILLISECONDS)
+                .build(new LineCodec(), new SlowEcho());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                OutputStream out = socket.getOutputStream();
+                StringBuilder requests = new StringBuilder();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    requests.append(i).append('\n');
+                }
+                out.write(requests.toString().getBytes(Charsets.UTF_8));
+                out.flush();
+                InputStream in = socket.getInputStream();
+                LineCodec codec = new LineCodec();
+                int overloaded = 0;
+                for (int i = 0; i < REQUESTS; ++i) {
+                    String response = codec.decode(in);
+                    if (response.equals(OVERLOADED + i)) {
+                        ++overloaded;
+                    } else {
+                        assertThat(response, is(String.valueOf(i)));
+                    }
+                }
+                assertThat(overloaded, is(greaterThan(0)));
+                assertThat(server.getShedRequestCount(),
+                           is((long) overloaded));
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static class SlowEcho
+            implements RequestSocketServerHandler<String, String>,
+                       OverloadResponder<String, String> {
+        @Override
+        public String handle(String request) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return request;
+        }
+
+        @Override
+        public String overloaded(String request) {
+            return OVERLOADED + request;
+        }
+    }
+}
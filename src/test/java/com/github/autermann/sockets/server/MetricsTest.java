@@ -0,0 +1,134 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.client.ClientMetrics;
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+import com.github.autermann.sockets.metrics.MetricRegistry;
+import com.github.autermann.sockets.metrics.MetricsReporter;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class MetricsTest {
+    private static final int CLIENTS = 2;
+    private static final int REQUESTS = 10;
+
+    @Test
+    public void testServerMetrics() throws Exception {
+        int port = LineCodec.freePort();
+        final AtomicInteger reports = new AtomicInteger();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withJmx("metrics-test")
+                .withMetricsReporter(new MetricsReporter() {
+                    @Override
+                    public void report(String name, MetricRegistry registry) {
+                        reports.incrementAndGet();
+                    }
+                }, 1, TimeUnit.HOURS)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        ObjectName name = new ObjectName(
+                "com.github.autermann.sockets:type=SocketServer," +
+                "name=\"metrics-test\"");
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertThat(Echo.run(port, CLIENTS, REQUESTS),
+                       is(CLIENTS * REQUESTS));
+            ServerMetrics metrics = server.getMetrics();
+            assertThat(metrics.getAcceptedConnections().get(),
+                       is((long) CLIENTS));
+            assertThat(metrics.getRequests().get(),
+                       is((long) CLIENTS * REQUESTS));
+            // every request is "<client>-<request>\n"
+            assertThat(metrics.getBytesRead().get(),
+                       is(4L * CLIENTS * REQUESTS));
+            assertThat(metrics.getWriteStatistics().getBytesWritten(),
+                       is(greaterThan(0L)));
+            assertThat(metrics.getHandleLatency().getSnapshot().getCount(),
+                       is((long) CLIENTS * REQUESTS));
+            // the last response may reach the client before it is recorded
+            long deadline = System.currentTimeMillis() + 1000;
+            while (metrics.getEncodeLatency().getSnapshot().getCount() <
+                   CLIENTS * REQUESTS &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(metrics.getEncodeLatency().getSnapshot().getCount(),
+                       is((long) CLIENTS * REQUESTS));
+            assertThat(metrics.getQueueWait().getSnapshot().getCount(),
+                       is((long) CLIENTS));
+            assertThat(metrics.getErrors().get(), is(0L));
+            assertThat((Long) mbeans.getAttribute(name, "requests"),
+                       is((long) CLIENTS * REQUESTS));
+            assertThat((Long) mbeans.getAttribute(name, "latency.handle.count"),
+                       is((long) CLIENTS * REQUESTS));
+        } finally {
+            server.stop();
+        }
+        assertThat(mbeans.isRegistered(name), is(false));
+        // the final report
+        assertThat(reports.get(), is(1));
+    }
+
+    @Test
+    public void testClientMetrics() throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            RequestSocketClient<String, String> client = SocketClientBuilder
+                    .create().withAddress(Echo.LOCALHOST, port)
+                    .build(new LineCodec());
+            try {
+                for (int i = 0; i < REQUESTS; ++i) {
+                    client.exec("request");
+                }
+            } finally {
+                client.close();
+            }
+            ClientMetrics metrics = client.getMetrics();
+            assertThat(metrics.getOpenedConnections().get(), is(1L));
+            assertThat(metrics.getClosedConnections().get(), is(1L));
+            assertThat(metrics.getRequests().get(), is((long) REQUESTS));
+            assertThat(metrics.getBytesWritten().get(),
+                       is((long) REQUESTS * "request\n".length()));
+            assertThat(metrics.getBytesRead().get(),
+                       is(metrics.getBytesWritten().get()));
+            assertThat(metrics.getRequestLatency().getSnapshot().getCount(),
+                       is((long) REQUESTS));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class MultiAcceptorSocketServerTest {
+    private static final int ACCEPTORS = 4;
+    private static final int CLIENTS = 40;
+    private static final int REQUESTS = 10;
+
+    @Test
+    public void testBlockingAcceptors() throws Exception {
+        test(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingAcceptors() throws Exception {
+        test(SocketServerBuilder.create().withNonBlockingIO(2));
+    }
+
+    private void test(SocketServerBuilder builder) throws Exception {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder
+                .atPort(port)
+                .withAcceptors(ACCEPTORS)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            if (ServerSocketFactory.isReusePortAvailable()) {
+                assertThat(server.getServerSockets().size(), is(ACCEPTORS));
+            }
+            assertThat(Echo.run(port, CLIENTS, REQUESTS), is(CLIENTS * REQUESTS));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+
+import org.junit.Test;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class MultiEndpointTest {
+    private static final int CLIENTS = 4;
+    private static final int REQUESTS = 10;
+
+    @Test
+    public void testBlockingEndpoints() throws Exception {
+        test(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingEndpoints() throws Exception {
+        test(SocketServerBuilder.create().withNonBlockingIO(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateEndpoint() throws Exception {
+        SocketServerBuilder.create()
+                .withEndpoint("internal", LineCodec.freePort())
+                .withEndpoint("internal", LineCodec.freePort());
+    }
+
+    private void test(SocketServerBuilder builder) throws Exception {
+        int port = LineCodec.freePort();
+        int internalPort = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder
+                .atPort(port)
+                .withEndpoint("internal", InetAddress.getByName("127.0.0.1"),
+                              internalPort, null)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            assertThat(server.getEndpoints().size(), is(2));
+            assertThat(server.getServerSockets().size(), is(2));
+            assertThat(server.getEndpoint("unknown"), is(nullValue()));
+            Endpoint main = server.getEndpoint(Endpoint.DEFAULT);
+            Endpoint internal = server.getEndpoint("internal");
+            assertThat(main, is(notNullValue()));
+            assertThat(internal.getPort(), is(internalPort));
+            assertThat(Echo.run(port, CLIENTS, REQUESTS),
+                       is(CLIENTS * REQUESTS));
+            assertThat(Echo.run(internalPort, 2 * CLIENTS, REQUESTS),
+                       is(2 * CLIENTS * REQUESTS));
+            assertThat(main.getAcceptedConnections(), is((long) CLIENTS));
+            assertThat(internal.getAcceptedConnections(),
+                       is((long) 2 * CLIENTS));
+            assertThat(server.getMetrics().getAcceptedConnections().get(),
+                       is((long) 3 * CLIENTS));
+            awaitClosed(internal, 2 * CLIENTS);
+            assertThat(internal.getActiveConnections(), is(0));
+            assertThat(internal.getErrors(), is(0L));
+            assertThat(internal.getBytesRead() > 0, is(true));
+            assertThat(server.getMetrics().getRegistry().getCounters()
+                    .get("endpoint.internal.connections.accepted").get(),
+                       is((long) 2 * CLIENTS));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void awaitClosed(Endpoint endpoint, long count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (endpoint.getClosedConnections() < count &&
+               System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(endpoint.getClosedConnections(), is(count));
+    }
+}
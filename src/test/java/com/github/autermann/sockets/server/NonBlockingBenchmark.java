@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the thread-per-connection engine with the selector engine: a
+ * number of idle connections is kept open while a few clients send requests
+ * as fast as possible. Reports the threads needed by the server and the
+ * throughput of the active clients. Not run as part of the tests; run the
+ * {@code main} method.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class NonBlockingBenchmark {
+    private static final int IDLE_CONNECTIONS = 500;
+    private static final int CLIENTS = 16;
+    private static final int WARMUP = 1000;
+    private static final int REQUESTS = 20000;
+
+    public static void main(String[] args) throws Exception {
+        report("blocking", SocketServerBuilder.create());
+        report("selector", SocketServerBuilder.create().withNonBlockingIO());
+    }
+
+    private static void report(String engine, SocketServerBuilder builder)
+            throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int before = threads.getThreadCount();
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder.atPort(port)
+                .withoutConnectionJournal()
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        List<Socket> idle = Lists.newArrayList();
+        try {
+            for (int i = 0; i < IDLE_CONNECTIONS; ++i) {
+                idle.add(open(port));
+            }
+            int serverThreads = threads.getThreadCount() - before;
+            Echo.run(port, CLIENTS, WARMUP);
+            long start = System.nanoTime();
+            int echoed = Echo.run(port, CLIENTS, REQUESTS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %d threads for %d idle connections, " +
+                              "%.0f requests/s%n", engine, serverThreads,
+                              IDLE_CONNECTIONS, echoed / seconds);
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+            server.stop();
+        }
+        // let the threads of the server terminate before the next run
+        long deadline = System.currentTimeMillis() + 10000;
+        while (threads.getThreadCount() > before &&
+               System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Opens a connection that is accepted and handled by the server.
+     */
+    private static Socket open(int port) throws IOException {
+        Socket socket = new Socket(Echo.LOCALHOST, port);
+        OutputStream out = socket.getOutputStream();
+        out.write("idle\n".getBytes(Charsets.UTF_8));
+        out.flush();
+        new LineCodec().decode(socket.getInputStream());
+        return socket;
+    }
+}
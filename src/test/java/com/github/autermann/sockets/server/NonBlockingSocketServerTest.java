@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class NonBlockingSocketServerTest {
+    private static final int CLIENTS = 50;
+    private static final int REQUESTS = 20;
+    private RequestSocketServer<String, String> server;
+    private int port;
+
+    @Before
+    public void startServer() throws IOException {
+        port = LineCodec.freePort();
+        server = SocketServerBuilder.create()
+                .atPort(port)
+                .withFixedThreads(4)
+                .withNonBlockingIO(2)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void testMultiplexedConnections() throws Exception {
+        assertThat(Echo.run(port, CLIENTS, REQUESTS), is(CLIENTS * REQUESTS));
+    }
+
+    @Test
+    public void testIsNonBlocking() {
+        assertThat(server.isNonBlocking(), is(true));
+    }
+
+    @Test
+    public void testBuildTwice() throws IOException {
+        SocketServerBuilder builder = SocketServerBuilder.create()
+                .atPort(LineCodec.freePort()).withNonBlockingIO(1);
+        builder.build(new LineCodec(), new Echo());
+        assertThat(builder.build(new LineCodec(), new Echo())
+                .isNonBlocking(), is(true));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class PipelinedRequestSocketServerTest {
+    private static final int REQUESTS = 20;
+
+    @Test
+    public void testSerialPipelining() throws Exception {
+        SlowHandler handler = new SlowHandler();
+        communicate(SocketServerBuilder.create().withPipelining(8), handler);
+        assertThat(handler.getMaxConcurrency(), is(1));
+    }
+
+    @Test
+    public void testParallelPipelining() throws Exception {
+        SlowHandler handler = new SlowHandler();
+        communicate(SocketServerBuilder.create().withPipelining(8, true), handler);
+        assertThat(handler.getMaxConcurrency(), is(greaterThan(1)));
+    }
+
+    @Test
+    public void testNonBlockingParallelPipelining() throws Exception {
+        SlowHandler handler = new SlowHandler();
+        communicate(SocketServerBuilder.create().withNonBlockingIO(1)
+                .withPipelining(8, true), handler);
+        assertThat(handler.getMaxConcurrency(), is(greaterThan(1)));
+    }
+
+    @Test
+    public void testPipeliningWithFixedThreads() throws Exception {
+        // both threads are occupied by the decoding connections
+        communicate(SocketServerBuilder.create().withFixedThreads(2)
+                .withPipelining(4), new SlowHandler(), 2);
+    }
+
+    @Test
+    public void testNonBlockingPipeliningWithFixedThreads() throws Exception {
+        communicate(SocketServerBuilder.create().withNonBlockingIO(1)
+                .withFixedThreads(2).withPipelining(4), new SlowHandler(), 2);
+    }
+
+    private void communicate(SocketServerBuilder builder, SlowHandler handler)
+            throws IOException {
+        communicate(builder, handler, 1);
+    }
+
+    private void communicate(SocketServerBuilder builder, SlowHandler handler,
+                             int clients) throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder
+                .atPort(port).build(new LineCodec(), handler);
+        server.start(false);
+        Socket[] sockets = new Socket[clients];
+        try {
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < REQUESTS; ++i) {
+                requests.append(i).append('\n');
+            }
+            for (int i = 0; i < clients; ++i) {
+                sockets[i] = new Socket(Echo.LOCALHOST, port);
+                sockets[i].setSoTimeout(10000);
+                // send all requests without waiting for a response
+                OutputStream out = sockets[i].getOutputStream();
+                out.write(requests.toString().getBytes(Charsets.UTF_8));
+                out.flush();
+            }
+            for (Socket socket : sockets) {
+                InputStream in = socket.getInputStream();
+                LineCodec codec = new LineCodec();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    assertThat(codec.decode(in), is(String.valueOf(i)));
+                }
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            server.stop();
+        }
+    }
+
+    /**
+     * Handler that takes longer for earlier requests, so that responses
+     * complete out of order if handled in parallel.
+     */
+    private static class SlowHandler
+            implements RequestSocketServerHandler<String, String> {
+        private final AtomicInteger concurrency = new AtomicInteger();
+        private final AtomicInteger maxConcurrency = new AtomicInteger();
+
+        @Override
+        public String handle(String request) {
+            int current = concurrency.incrementAndGet();
+            try {
+                int max;
+                while ((max = maxConcurrency.get()) < current &&
+                       !maxConcurrency.compareAndSet(max, current)) {
+                }
+                Thread.sleep((REQUESTS - Integer.parseInt(request)) * 5);
+                return request;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                concurrency.decrementAndGet();
+            }
+        }
+
+        int getMaxConcurrency() {
+            return maxConcurrency.get();
+        }
+    }
+}
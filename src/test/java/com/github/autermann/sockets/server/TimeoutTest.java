@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class TimeoutTest {
+    private static final long TIMEOUT_MS = 100;
+    private static final long MAX_WAIT_MS = 5000;
+
+    @Test
+    public void testTimer() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer(
+                TimeUnit.MILLISECONDS.toNanos(1), 8);
+        timer.start("test-timer");
+        try {
+            final CountDownLatch latch = new CountDownLatch(2);
+            final AtomicInteger cancelledRuns = new AtomicInteger();
+            Runnable countDown = new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            };
+            long start = System.nanoTime();
+            // more than one revolution of the wheel
+            timer.schedule(countDown, TimeUnit.MILLISECONDS.toNanos(20));
+            timer.schedule(countDown, 0);
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    cancelledRuns.incrementAndGet();
+                }
+            }, TimeUnit.MILLISECONDS.toNanos(5)).cancel();
+            assertThat(latch.await(MAX_WAIT_MS, TimeUnit.MILLISECONDS),
+                       is(true));
+            assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+                    .toNanos(20), is(true));
+            assertThat(cancelledRuns.get(), is(0));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void testBlockingReadTimeout() throws IOException {
+        testReadTimeout(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingReadTimeout() throws IOException {
+        testReadTimeout(SocketServerBuilder.create().withNonBlockingIO(1));
+    }
+
+    @Test
+    public void testBlockingRequestTimeout() throws IOException {
+        testRequestTimeout(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testPipelinedRequestTimeout() throws IOException {
+        testRequestTimeout(SocketServerBuilder.create().withPipelining(4));
+    }
+
+    @Test
+    public void testBlockingPipelinedSlowHandler() throws IOException {
+        testSlowHandler(SocketServerBuilder.create().withPipelining(4), false);
+    }
+
+    @Test
+    public void testNonBlockingPipelinedSlowHandler() throws IOException {
+        testSlowHandler(SocketServerBuilder.create().withPipelining(4)
+                .withNonBlockingIO(1), false);
+    }
+
+    @Test
+    public void testNonBlockingAsyncSlowHandler() throws IOException {
+        testSlowHandler(SocketServerBuilder.create().withNonBlockingIO(1),
+                        true);
+    }
+
+    @Test
+    public void testClientReadTimeout() throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).build(new LineCodec(), new Sleep());
+        server.start(false);
+        try {
+            RequestSocketClient<String, String> client = SocketClientBuilder
+                    .create().withAddress(Echo.LOCALHOST, port)
+                    .withReadTimeout((int) TIMEOUT_MS)
+                    .build(new LineCodec());
+            try {
+                client.exec("request");
+                fail("request did not time out");
+            } catch (SocketTimeoutException e) {
+                // expected
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void testReadTimeout(SocketServerBuilder builder)
+            throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder.atPort(port)
+                .withReadTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                LineCodec codec = new LineCodec();
+                // an active client is not affected
+                for (int i = 0; i < 3; ++i) {
+                    send(socket, "line");
+                    assertThat(codec.decode(socket.getInputStream()),
+                               is("line"));
+                    sleep(TIMEOUT_MS / 2);
+                }
+                assertClosedWithin(socket, MAX_WAIT_MS);
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void testRequestTimeout(SocketServerBuilder builder)
+            throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder.atPort(port)
+                .withRequestTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .build(new LineCodec(), new Sleep());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                send(socket, "request");
+                // the handler sleeps much longer
+                assertClosedWithin(socket, MAX_WAIT_MS / 2);
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void testSlowHandler(SocketServerBuilder builder, boolean async)
+            throws IOException {
+        int port = LineCodec.freePort();
+        builder.atPort(port).withReadTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        RequestSocketServer<String, String> server = async
+                ? builder.build(new LineCodec(), new DelayedEcho())
+                : builder.build(new LineCodec(), new SlowEcho());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                socket.setSoTimeout((int) MAX_WAIT_MS);
+                send(socket, "request");
+                // the time spent in the handler is no idle time
+                assertThat(new LineCodec().decode(socket.getInputStream()),
+                           is("request"));
+                assertClosedWithin(socket, MAX_WAIT_MS);
+            } finally {
+                socket.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void assertClosedWithin(Socket socket, long millis)
+            throws IOException {
+        long start = System.nanoTime();
+        socket.setSoTimeout((int) millis);
+        InputStream in = socket.getInputStream();
+        try {
+            assertThat(in.read(), is(-1));
+        } catch (SocketTimeoutException e) {
+            fail("connection was not closed");
+        } catch (IOException e) {
+            // connection reset
+        }
+        assertThat(System.nanoTime() - start, is(lessThan(TimeUnit.MILLISECONDS
+                .toNanos(millis))));
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write((line + "\n").getBytes(Charsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class SlowEcho
+            implements RequestSocketServerHandler<String, String> {
+        @Override
+        public String handle(String request) {
+            sleep(TIMEOUT_MS * 3);
+            return request;
+        }
+    }
+
+    private static class DelayedEcho
+            implements AsyncRequestSocketServerHandler<String, String> {
+        @Override
+        public ListenableFuture<String> handle(final String request) {
+            final SettableFuture<String> response = SettableFuture.create();
+            new Thread() {
+                @Override
+                public void run() {
+                    TimeoutTest.sleep(TIMEOUT_MS * 3);
+                    response.set(request);
+                }
+            }.start();
+            return response;
+        }
+    }
+
+    private static class Sleep
+            implements RequestSocketServerHandler<String, String> {
+        @Override
+        public String handle(String request) {
+            sleep(MAX_WAIT_MS * 2);
+            return request;
+        }
+    }
+}
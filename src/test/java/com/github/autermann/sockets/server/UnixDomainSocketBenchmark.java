@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.UnixDomainSockets;
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+import com.github.autermann.sockets.metrics.Histogram;
+import com.github.autermann.sockets.metrics.HistogramSnapshot;
+
+/**
+ * Compares the round trip latency of small request/response pairs over TCP
+ * loopback and over a Unix domain socket. Not run as part of the tests; run
+ * the {@code main} method on Java 16 or later.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class UnixDomainSocketBenchmark {
+    private static final int WARMUP = 20000;
+    private static final int REQUESTS = 100000;
+    private static final String MESSAGE = "0123456789abcdef";
+
+    public static void main(String[] args) throws Exception {
+        if (!UnixDomainSockets.isSupported()) {
+            System.err.println("Unix domain sockets require Java 16");
+            return;
+        }
+        int port = LineCodec.freePort();
+        report("tcp", run(SocketServerBuilder.create().atPort(port),
+                          SocketClientBuilder.create()
+                          .withAddress(Echo.LOCALHOST, port)));
+        File path = UnixDomainSocketTest.socketFile();
+        report("uds", run(SocketServerBuilder.create()
+                          .withUnixDomainSocket(path),
+                          SocketClientBuilder.create()
+                          .withUnixDomainSocket(path)));
+    }
+
+    private static HistogramSnapshot run(SocketServerBuilder serverBuilder,
+                                         SocketClientBuilder clientBuilder)
+            throws IOException {
+        RequestSocketServer<String, String> server = serverBuilder
+                .withSocketOptions(SocketOptions.lowLatency())
+                .withoutConnectionJournal()
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            RequestSocketClient<String, String> client = clientBuilder
+                    .withSocketOptions(SocketOptions.lowLatency())
+                    .build(new LineCodec());
+            try {
+                for (int i = 0; i < WARMUP; ++i) {
+                    client.exec(MESSAGE);
+                }
+                Histogram latency = new Histogram();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    long start = System.nanoTime();
+                    client.exec(MESSAGE);
+                    latency.recordSince(start);
+                }
+                return latency.getSnapshot();
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void report(String transport, HistogramSnapshot latency) {
+        System.out.printf("%s: mean %.1f us, p50 %d us, p99 %d us, " +
+                          "p99.9 %d us, max %d us%n", transport,
+                          latency.getMean() / 1000,
+                          micros(latency.getValueAtPercentile(50)),
+                          micros(latency.getValueAtPercentile(99)),
+                          micros(latency.getValueAtPercentile(99.9)),
+                          micros(latency.getMax()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.autermann.sockets.SocketOptions;
+import com.github.autermann.sockets.UnixDomainSockets;
+import com.github.autermann.sockets.client.RequestSocketClient;
+import com.github.autermann.sockets.client.SocketClientBuilder;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class UnixDomainSocketTest {
+    private static final int REQUESTS = 20;
+
+    @Before
+    public void requireSupport() {
+        Assume.assumeTrue(UnixDomainSockets.isSupported());
+    }
+
+    @Test
+    public void testEcho() throws Exception {
+        File path = socketFile();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().withUnixDomainSocket(path)
+                .withSocketOptions(SocketOptions.lowLatency())
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            assertThat(path.exists(), is(true));
+            RequestSocketClient<String, String> client = SocketClientBuilder
+                    .create().withUnixDomainSocket(path)
+                    .withSocketOptions(SocketOptions.lowLatency())
+                    .build(new LineCodec());
+            try {
+                for (int i = 0; i < REQUESTS; ++i) {
+                    assertThat(client.exec("request-" + i),
+                               is("request-" + i));
+                }
+            } finally {
+                client.close();
+            }
+            assertThat(server.getMetrics().getRequests().get(),
+                       is((long) REQUESTS));
+        } finally {
+            server.stop();
+        }
+        assertThat(path.exists(), is(false));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoNonBlockingIO() throws Exception {
+        SocketServerBuilder.create().withUnixDomainSocket(socketFile())
+                .withNonBlockingIO().build(new LineCodec(), new Echo());
+    }
+
+    /**
+     * @return the path of a socket file that does not exist
+     *
+     * @throws IOException if no temporary file can be created
+     */
+    static File socketFile() throws IOException {
+        File file = File.createTempFile("sockets", ".sock");
+        if (!file.delete()) {
+            throw new IOException("Could not delete " + file);
+        }
+        return file;
+    }
+}
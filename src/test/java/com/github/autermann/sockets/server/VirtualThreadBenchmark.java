@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares platform threads with virtual threads for handlers that block on
+ * downstream I/O, simulated by a short sleep: many concurrent clients keep a
+ * connection each. Reports the throughput and the number of platform threads
+ * started by the server. Not run as part of the tests; run the {@code main} method on Java
+ * 21 or later using the multi-release jar.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class VirtualThreadBenchmark {
+    private static final int CLIENTS = 200;
+    private static final int REQUESTS = 300;
+    private static final long DELAY = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            System.err.println("Virtual threads require Java 21");
+            return;
+        }
+        report("platform", SocketServerBuilder.create());
+        report("virtual", SocketServerBuilder.create().withVirtualThreads());
+    }
+
+    private static void report(String threads, SocketServerBuilder builder)
+            throws Exception {
+        ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+        int before = mxBean.getThreadCount();
+        long started = mxBean.getTotalStartedThreadCount();
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder.atPort(port)
+                .withoutConnectionJournal()
+                .build(new LineCodec(), new SleepingEcho());
+        server.start(false);
+        try {
+            long start = System.nanoTime();
+            int echoed = Echo.run(port, CLIENTS, REQUESTS);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            // every client runs on a platform thread of its own
+            long serverThreads = mxBean.getTotalStartedThreadCount() -
+                                 started - CLIENTS;
+            System.out.printf("%s: %.0f requests/s, %d platform threads%n",
+                              threads, echoed / seconds, serverThreads);
+        } finally {
+            server.stop();
+        }
+        // let the threads terminate before the next run
+        long deadline = System.currentTimeMillis() + 10000;
+        while (mxBean.getThreadCount() > before &&
+               System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static class SleepingEcho
+            implements RequestSocketServerHandler<String, String> {
+        @Override
+        public String handle(String request) {
+            try {
+                Thread.sleep(DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return request;
+        }
+    }
+}
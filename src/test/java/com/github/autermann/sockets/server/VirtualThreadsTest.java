@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Runs against the classes of the multi-release jar: on Java 21 connections
+ * are handled by virtual threads, on older runtimes the builder refuses to
+ * use them.
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class VirtualThreadsTest {
+    private static final int CLIENTS = 10;
+    private static final int REQUESTS = 20;
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        int port = LineCodec.freePort();
+        ThreadRecordingEcho handler = new ThreadRecordingEcho();
+        RequestSocketServer<String, String> server = SocketServerBuilder
+                .create().atPort(port).withVirtualThreads()
+                .build(new LineCodec(), handler);
+        server.start(false);
+        try {
+            assertThat(Echo.run(port, CLIENTS, REQUESTS),
+                       is(CLIENTS * REQUESTS));
+        } finally {
+            server.stop();
+        }
+        assertThat(handler.getPlatformThreadRequests(), is(0));
+    }
+
+    @Test
+    public void testFallback() {
+        Assume.assumeTrue(!VirtualThreads.isSupported());
+        assertThat(isVirtual(Thread.currentThread()), is(false));
+        thrown.expect(IllegalStateException.class);
+        SocketServerBuilder.create().withVirtualThreads();
+    }
+
+    /**
+     * @return if the thread is virtual; always {@code false} before Java 21
+     */
+    private static boolean isVirtual(Thread thread) {
+        try {
+            Method isVirtual = Thread.class.getMethod("isVirtual");
+            return (Boolean) isVirtual.invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static class ThreadRecordingEcho extends Echo {
+        private final AtomicInteger platformThreadRequests
+                = new AtomicInteger();
+
+        @Override
+        public String handle(String request) {
+            if (!isVirtual(Thread.currentThread())) {
+                platformThreadRequests.incrementAndGet();
+            }
+            return super.handle(request);
+        }
+
+        int getPlatformThreadRequests() {
+            return platformThreadRequests.get();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Christian Autermann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.autermann.sockets.server;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * TODO JavaDoc
+ *
+ * @author Christian Autermann <autermann@uni-muenster.de>
+ */
+public class WriteCoalescingTest {
+    private static final int REQUESTS = 50;
+
+    @Test
+    public void testBlockingCoalescing() throws IOException {
+        test(SocketServerBuilder.create());
+    }
+
+    @Test
+    public void testNonBlockingCoalescing() throws IOException {
+        test(SocketServerBuilder.create().withNonBlockingIO(1));
+    }
+
+    @Test
+    public void testSlowDeferredFlush() throws Exception {
+        ScheduledExecutorService scheduler = Executors
+                .newSingleThreadScheduledExecutor();
+        ExecutorService flusher = Executors.newCachedThreadPool();
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch flushed = new CountDownLatch(1);
+        try {
+            CoalescingOutputStream blocked = createStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    try {
+                        slow.await();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            }, scheduler, flusher);
+            CoalescingOutputStream other = createStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void flush() {
+                    flushed.countDown();
+                }
+            }, scheduler, flusher);
+            blocked.write(1);
+            blocked.flush();
+            Thread.sleep(50);
+            other.write(1);
+            other.flush();
+            // the deferred flush of the slow connection does not delay others
+            assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            slow.countDown();
+            scheduler.shutdownNow();
+            flusher.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a stream whose flushes are deferred, as the next request is
+     *         always available
+     */
+    private static CoalescingOutputStream createStream(
+            OutputStream out, ScheduledExecutorService scheduler,
+            ExecutorService flusher) {
+        return new CoalescingOutputStream(
+                out, new ByteArrayInputStream(new byte[1]), new BufferPool(),
+                8192, TimeUnit.MILLISECONDS.toNanos(10), scheduler, flusher,
+                new WriteStatistics());
+    }
+
+    private void test(SocketServerBuilder builder) throws IOException {
+        int port = LineCodec.freePort();
+        RequestSocketServer<String, String> server = builder
+                .atPort(port)
+                .withWriteCoalescing(8192, 50, TimeUnit.MILLISECONDS)
+                .build(new LineCodec(), new Echo());
+        server.start(false);
+        try {
+            Socket socket = new Socket(Echo.LOCALHOST, port);
+            try {
+                StringBuilder requests = new StringBuilder();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    requests.append(i).append('\n');
+                }
+                OutputStream out = socket.getOutputStream();
+                out.write(requests.toString().getBytes(Charsets.UTF_8));
+                out.flush();
+                InputStream in = socket.getInputStream();
+                LineCodec codec = new LineCodec();
+                for (int i = 0; i < REQUESTS; ++i) {
+                    assertThat(codec.decode(in), is(String.valueOf(i)));
+                }
+            } finally {
+                socket.close();
+            }
+            WriteStatistics statistics = server.getWriteStatistics();
+            assertThat(statistics.getResponses(), is((long) REQUESTS));
+            assertThat(statistics.getWrites(), is(lessThan((long) REQUESTS / 2)));
+        } finally {
+            server.stop();
+        }
+    }
+}